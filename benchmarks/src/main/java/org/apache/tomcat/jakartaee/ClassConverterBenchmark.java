@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ClassConverter#convertInternal} on a servlet that needs
+ * converting and on a library class that does not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ClassConverterBenchmark {
+
+    /**
+     * The class to convert: {@code servlet} for {@link SampleServlet} or
+     * {@code library} for a large class from Commons Compress with nothing to
+     * convert.
+     */
+    @Param({ "servlet", "library" })
+    public String input;
+
+    private final ClassConverter converter = new ClassConverter();
+    private final ByteArrayOutputStream dest = new ByteArrayOutputStream();
+    private String path;
+    private byte[] classBytes;
+
+    /**
+     * Read the class.
+     *
+     * @throws IOException if the class cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        if (input.equals("servlet")) {
+            path = "org/apache/tomcat/jakartaee/SampleServlet.class";
+        } else {
+            path = "org/apache/commons/compress/archivers/zip/ZipFile.class";
+        }
+        try (InputStream is = ClassConverterBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+            classBytes = IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * Convert the class with the Tomcat profile.
+     *
+     * @return whether the class was converted
+     * @throws IOException if the conversion fails
+     */
+    @Benchmark
+    public boolean convert() throws IOException {
+        dest.reset();
+        return converter.convertInternal(path, new ByteArrayInputStream(classBytes), dest, EESpecProfiles.TOMCAT,
+                null);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link EESpecProfile#convert(String)} for each of the built-in
+ * profiles, on the kind of strings found in class files and resources. Most
+ * of them need no conversion, as in a real application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EESpecProfileBenchmark {
+
+    private static final String[] INPUTS = {
+            "java/lang/String",
+            "java/util/Map$Entry",
+            "(Ljava/lang/String;I)Ljava/util/List;",
+            "org/springframework/web/servlet/DispatcherServlet",
+            "com/example/app/web/CustomerController",
+            "javax/servlet/http/HttpServlet",
+            "(Ljavax/servlet/http/HttpServletRequest;Ljavax/servlet/http/HttpServletResponse;)V",
+            "Ljavax/annotation/PostConstruct;",
+            "javax.persistence.Entity",
+            "javax.sql.DataSource",
+            "javax/xml/parsers/DocumentBuilderFactory",
+            "jakarta/servlet/Filter",
+            "META-INF/services/javax.servlet.ServletContainerInitializer",
+            "<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"4.0\">",
+            "    <listener-class>org.springframework.web.context.ContextLoaderListener</listener-class>",
+            "Failed to process the request, see the log for details" };
+
+    /**
+     * The profile, all of them by default.
+     */
+    @Param
+    public EESpecProfiles profile;
+
+    /**
+     * Convert each input, so the score is the time for all of them.
+     *
+     * @param blackhole consumes the results
+     */
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (String input : INPUTS) {
+            blackhole.consume(profile.convert(input));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link GlobMatcher#matchName(Set, String, boolean)} with the
+ * default excludes of {@link Migration} against the libraries of a typical
+ * web application, along with the {@link GlobSet} that the migration uses
+ * for the same patterns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class GlobMatcherBenchmark {
+
+    // The default excludes of Migration
+    private static final Set<String> PATTERNS = new HashSet<>(Arrays.asList(
+            "commons-codec-*.jar", "commons-lang-*.jar", "httpclient-*.jar", "httpcore-*.jar", "asm-*.jar",
+            "aspectjweaver-*.jar", "bcprov*.jar", "bcpkix*.jar", "closure-compiler-*.jar", "ecj-*.jar",
+            "hystrix-core-*.jar", "hystrix-serialization-*.jar", "jackson-annotations-*.jar", "jackson-core-*.jar",
+            "jackson-module-afterburner-*.jar", "jul-to-slf4j-*.jar", "log4j-to-slf4j-*.jar", "slf4j-api-*.jar",
+            "spring-aop-*.jar", "spring-expression-*.jar", "spring-security-crypto-*.jar",
+            "spring-security-rsa-*.jar"));
+
+    private static final String[] NAMES = {
+            "spring-core-5.3.39.jar", "spring-beans-5.3.39.jar", "spring-context-5.3.39.jar",
+            "spring-aop-5.3.39.jar", "spring-expression-5.3.39.jar", "spring-web-5.3.39.jar",
+            "spring-webmvc-5.3.39.jar", "jackson-core-2.17.2.jar", "jackson-databind-2.17.2.jar",
+            "jackson-annotations-2.17.2.jar", "slf4j-api-1.7.36.jar", "logback-classic-1.2.13.jar",
+            "commons-codec-1.17.1.jar", "commons-io-2.16.1.jar", "hibernate-core-5.6.15.Final.jar",
+            "javax.persistence-api-2.2.jar", "bcprov-jdk18on-1.78.1.jar", "guava-33.2.1-jre.jar",
+            "HelloServlet.class", "index.jsp", "web.xml", "MANIFEST.MF" };
+
+    private final GlobSet globSet = new GlobSet(PATTERNS, true);
+
+    /**
+     * Match each name with {@link GlobMatcher}.
+     *
+     * @return the number of names that match
+     */
+    @Benchmark
+    public int matchName() {
+        int matches = 0;
+        for (String name : NAMES) {
+            if (GlobMatcher.matchName(PATTERNS, name, true)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Match each name with {@link GlobSet}.
+     *
+     * @return the number of names that match
+     */
+    @Benchmark
+    public int globSet() {
+        int matches = 0;
+        for (String name : NAMES) {
+            if (globSet.matches(name, 0, name.length())) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ManifestConverter#convert(String, InputStream, java.io.OutputStream, EESpecProfile)}
+ * on the manifest of an OSGi bundle importing Java EE packages and on a plain
+ * manifest with nothing to convert.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ManifestConverterBenchmark {
+
+    /**
+     * The manifest to convert.
+     */
+    @Param({ "osgi", "plain" })
+    public String input;
+
+    private final ManifestConverter converter = new ManifestConverter();
+    private final ByteArrayOutputStream dest = new ByteArrayOutputStream();
+    private byte[] content;
+
+    /**
+     * Read the manifest.
+     *
+     * @throws IOException if the manifest cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream is = ManifestConverterBenchmark.class.getResourceAsStream("MANIFEST-" + input + ".MF")) {
+            content = IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * Convert the manifest with the Tomcat profile.
+     *
+     * @return whether the manifest was converted
+     * @throws IOException if the conversion fails
+     */
+    @Benchmark
+    public boolean convert() throws IOException {
+        dest.reset();
+        return converter.convert("META-INF/MANIFEST.MF", new ByteArrayInputStream(content), dest,
+                EESpecProfiles.TOMCAT);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * A typical servlet written for Java EE, used as input by
+ * {@link ClassConverterBenchmark}. It is read as bytes and never loaded.
+ */
+@WebServlet(urlPatterns = "/sample", initParams = @WebInitParam(name = "greeting", value = "Hello"))
+public class SampleServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private String greeting;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        greeting = config.getInitParameter("greeting");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        HttpSession session = req.getSession(true);
+        Integer count = (Integer) session.getAttribute("count");
+        count = Integer.valueOf(count == null ? 1 : count.intValue() + 1);
+        session.setAttribute("count", count);
+        resp.addCookie(new Cookie("visits", count.toString()));
+        if (req.getParameter("forward") != null) {
+            RequestDispatcher dispatcher = req.getRequestDispatcher("/WEB-INF/jsp/index.jsp");
+            dispatcher.forward(req, resp);
+            return;
+        }
+        resp.setContentType("text/plain");
+        try (PrintWriter writer = resp.getWriter()) {
+            writer.println(greeting + " " + req.getRemoteUser() + " (" + count + ")");
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (req.getContentLength() > 1024) {
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        doGet(req, resp);
+    }
+}
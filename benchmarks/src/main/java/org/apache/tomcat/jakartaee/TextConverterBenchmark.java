@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link TextConverter#convert(String, InputStream, java.io.OutputStream, EESpecProfile)}
+ * on a deployment descriptor and a JSP that need converting, and on a
+ * deployment descriptor that was already converted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class TextConverterBenchmark {
+
+    /**
+     * The resource to convert. {@code jakarta-web.xml} is {@code web.xml}
+     * converted with the EE profile.
+     */
+    @Param({ "web.xml", "index.jsp", "jakarta-web.xml" })
+    public String input;
+
+    private final TextConverter converter = new TextConverter();
+    private final ByteArrayOutputStream dest = new ByteArrayOutputStream();
+    private String path;
+    private byte[] content;
+
+    /**
+     * Read the resource.
+     *
+     * @throws IOException if the resource cannot be read
+     */
+    @Setup
+    public void setup() throws IOException {
+        boolean converted = input.startsWith("jakarta-");
+        path = converted ? input.substring("jakarta-".length()) : input;
+        try (InputStream is = TextConverterBenchmark.class.getResourceAsStream(path)) {
+            content = IOUtils.toByteArray(is);
+        }
+        if (converted) {
+            converter.convert(path, new ByteArrayInputStream(content), dest, EESpecProfiles.EE);
+            content = dest.toByteArray();
+        }
+    }
+
+    /**
+     * Convert the resource with the Tomcat profile.
+     *
+     * @return whether the resource was converted
+     * @throws IOException if the conversion fails
+     */
+    @Benchmark
+    public boolean convert() throws IOException {
+        dest.reset();
+        return converter.convert(path, new ByteArrayInputStream(content), dest, EESpecProfiles.TOMCAT);
+    }
+}
@@ -0,0 +1,76 @@
+<%--
+  Licensed to the Apache Software Foundation (ASF) under one or more
+  contributor license agreements.  See the NOTICE file distributed with
+  this work for additional information regarding copyright ownership.
+  The ASF licenses this file to You under the Apache License, Version 2.0
+  (the "License"); you may not use this file except in compliance with
+  the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+--%>
+<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ page import="java.util.List" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="javax.servlet.http.Cookie" %>
+<%@ page import="javax.servlet.http.HttpSession" %>
+<%@ page import="com.example.app.model.Customer" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<!DOCTYPE html>
+<html>
+<head>
+  <title>Customers</title>
+  <link rel="stylesheet" href="${pageContext.request.contextPath}/css/app.css">
+</head>
+<body>
+<%
+    HttpSession userSession = request.getSession(false);
+    String user = userSession == null ? null : (String) userSession.getAttribute("user");
+    Cookie[] cookies = request.getCookies();
+    int visits = 0;
+    if (cookies != null) {
+        for (Cookie cookie : cookies) {
+            if ("visits".equals(cookie.getName())) {
+                visits = Integer.parseInt(cookie.getValue());
+            }
+        }
+    }
+    Object error = request.getAttribute("javax.servlet.error.exception");
+%>
+<h1>Welcome <%= user == null ? "guest" : user %></h1>
+<p>You have visited this page <%= visits %> times.</p>
+<c:if test="${not empty requestScope['javax.servlet.error.message']}">
+  <p class="error"><c:out value="${requestScope['javax.servlet.error.message']}"/></p>
+</c:if>
+<table>
+  <thead>
+    <tr><th>Name</th><th>Email</th><th>Since</th><th>Orders</th></tr>
+  </thead>
+  <tbody>
+  <c:forEach var="customer" items="${customers}">
+    <tr>
+      <td><c:out value="${customer.name}"/></td>
+      <td><c:out value="${customer.email}"/></td>
+      <td><fmt:formatDate value="${customer.since}" pattern="yyyy-MM-dd"/></td>
+      <td><c:out value="${customer.orderCount}"/></td>
+    </tr>
+  </c:forEach>
+  </tbody>
+</table>
+<%
+    @SuppressWarnings("unchecked")
+    List<Customer> customers = (List<Customer>) request.getAttribute("customers");
+    Map<String, String[]> parameters = request.getParameterMap();
+    if (customers != null && parameters.containsKey("debug")) {
+        out.println("<!-- " + customers.size() + " customers -->");
+    }
+%>
+<jsp:include page="/WEB-INF/jsp/footer.jsp"/>
+</body>
+</html>
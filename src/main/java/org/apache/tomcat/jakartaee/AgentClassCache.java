@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent cache of the classes transformed by the {@link MigrationAgent},
+ * so that restarting the JVM does not convert the same classes again.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the original class bytes and the
+ * profile. Classes that did not need any conversion are recorded too, so
+ * that they are not checked again either. Since the conversion of a class
+ * may depend on which target classes are available from its class loader,
+ * each entry also records the availability of the classes it depends on and
+ * is only used if that has not changed.
+ * <p>
+ * The cache is a single append-only file, memory-mapped when it is opened.
+ * Entries added while the JVM is running are appended to the file and read
+ * back from it when they are used. The file may be shared by several JVMs so
+ * it is never truncated: if it was written by a different version of the
+ * migration tool, or ends with an incomplete entry, a new file holding the
+ * valid entries is written and renamed into place. JVMs that have the old
+ * file open keep using it.
+ */
+final class AgentClassCache implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AgentClassCache.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(AgentClassCache.class);
+
+    private static final int MAGIC = 0x4A414B43;
+    private static final int KEY_LENGTH = 32;
+    private static final byte UNCHANGED = 0;
+    private static final byte CONVERTED = 1;
+
+    static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
+
+    private final File file;
+    private final EESpecProfile profile;
+    private final long maxSize;
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    /*
+     * Offsets of the entries in the file. Entries below the limit of the
+     * mapped buffer are read from it, entries added since the file was opened
+     * are read from the channel.
+     */
+    private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+    private boolean full;
+
+    /**
+     * Open a cache, creating the file if necessary.
+     *
+     * @param file the cache file
+     * @param profile the profile used for the conversion
+     * @param maxSize the size above which no more entries are added
+     * @throws IOException if the cache file cannot be opened
+     */
+    AgentClassCache(File file, EESpecProfile profile, long maxSize) throws IOException {
+        this.file = file;
+        this.profile = profile;
+        this.maxSize = Math.min(maxSize, Integer.MAX_VALUE);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(sm.getString("agentClassCache.mkdirFailed", parent));
+        }
+        FileChannel channel = open(file);
+        ByteBuffer mapped = ByteBuffer.allocate(0);
+        try {
+            byte[] header = createHeader();
+            ByteBuffer replacement = null;
+            FileLock lock = channel.lock();
+            try {
+                long size = channel.size();
+                if (size == 0) {
+                    // A new file, nothing else can be using its content
+                    channel.write(ByteBuffer.wrap(header), 0);
+                } else {
+                    // Entries beyond the maximum size are ignored
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            Math.min(size, this.maxSize));
+                    if (!hasHeader(map, header)) {
+                        logger.log(Level.INFO, sm.getString("agentClassCache.discarded", file));
+                        replacement = ByteBuffer.wrap(header);
+                    } else {
+                        mapped = map;
+                        int end = loadIndex(mapped, header.length);
+                        mapped.limit(end);
+                        mapped = mapped.slice();
+                        if (end < size && size <= this.maxSize) {
+                            // Incomplete or corrupted record at the end of the file
+                            logger.log(Level.WARNING,
+                                    sm.getString("agentClassCache.replaced", file, Long.valueOf(end)));
+                            replacement = mapped.duplicate();
+                        }
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+            if (replacement != null) {
+                // The mapping of the old file, if any, remains valid
+                channel.close();
+                replace(file, replacement);
+                channel = open(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+        this.mapped = mapped;
+        logger.log(Level.FINE, sm.getString("agentClassCache.opened", file, Integer.valueOf(offsets.size())));
+    }
+
+    /**
+     * Compute the key of a class.
+     *
+     * @param classBytes the original class bytes
+     * @return the key
+     */
+    String getKey(byte[] classBytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(profile.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(classBytes);
+            // One char per byte is enough for a map key
+            return new String(digest.digest(), StandardCharsets.ISO_8859_1);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get a cache entry.
+     *
+     * @param key the key of the class
+     * @return the entry or {@code null} if the class is not in the cache
+     */
+    Entry get(String key) {
+        Integer offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        int position = offset.intValue();
+        if (position < mapped.capacity()) {
+            return readEntry(mapped.duplicate(), position);
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            read(length, position);
+            ByteBuffer record = ByteBuffer.allocate(4 + length.getInt(0));
+            read(record, position);
+            return readEntry(record, 0);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.FINE, sm.getString("agentClassCache.readError", file), e);
+            return null;
+        }
+    }
+
+    /**
+     * Add an entry to the cache.
+     *
+     * @param key the key of the class
+     * @param lookups the availability of the target classes the result
+     *        depends on
+     * @param converted the converted class bytes or {@code null} if the class
+     *        was not changed
+     */
+    void put(String key, Map<String, Boolean> lookups, byte[] converted) {
+        if (offsets.containsKey(key)) {
+            return;
+        }
+        byte[] record;
+        try {
+            record = createRecord(key, new Entry(lookups, converted));
+        } catch (IOException e) {
+            // Cannot happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            if (full || offsets.containsKey(key)) {
+                return;
+            }
+            try {
+                FileLock lock = channel.lock();
+                try {
+                    // Another JVM may have appended to the file
+                    long position = channel.size();
+                    if (position + record.length > maxSize) {
+                        full = true;
+                        logger.log(Level.INFO, sm.getString("agentClassCache.full", file, Long.valueOf(maxSize)));
+                        return;
+                    }
+                    int offset = (int) position;
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    offsets.put(key, Integer.valueOf(offset));
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                full = true;
+                logger.log(Level.WARNING, sm.getString("agentClassCache.writeError", file), e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int loadIndex(ByteBuffer mapped, int start) {
+        ByteBuffer buffer = mapped.duplicate();
+        int position = start;
+        while (position < buffer.limit()) {
+            if (readEntry(buffer, position) == null) {
+                break;
+            }
+            byte[] key = new byte[KEY_LENGTH];
+            buffer.position(position + 4);
+            buffer.get(key);
+            offsets.put(new String(key, StandardCharsets.ISO_8859_1), Integer.valueOf(position));
+            position += 4 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(sm.getString("agentClassCache.readError", file));
+            }
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /*
+     * Write the content to a new file and rename it into place so that other
+     * JVMs using the current file are not affected.
+     */
+    private static void replace(File file, ByteBuffer content) throws IOException {
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(),
+                file.getName() + '.' + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel temp = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    temp.write(content);
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /*
+     * Returns null if the record is incomplete or invalid.
+     */
+    private static Entry readEntry(ByteBuffer buffer, int offset) {
+        try {
+            int length = buffer.getInt(offset);
+            if (length < KEY_LENGTH + 7 || offset + 4L + length > buffer.limit()) {
+                return null;
+            }
+            buffer.limit(offset + 4 + length);
+            buffer.position(offset + 4 + KEY_LENGTH);
+            byte type = buffer.get();
+            int lookupCount = buffer.getShort() & 0xFFFF;
+            Map<String, Boolean> lookups = new ConcurrentHashMap<>();
+            for (int i = 0; i < lookupCount; i++) {
+                boolean available = buffer.get() != 0;
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                lookups.put(new String(name, StandardCharsets.UTF_8), Boolean.valueOf(available));
+            }
+            byte[] converted = new byte[buffer.getInt()];
+            buffer.get(converted);
+            if (buffer.hasRemaining() || type != (converted.length == 0 ? UNCHANGED : CONVERTED)) {
+                return null;
+            }
+            return new Entry(lookups, type == UNCHANGED ? null : converted);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private static byte[] createRecord(String key, Entry entry) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(0);
+        out.write(key.getBytes(StandardCharsets.ISO_8859_1));
+        out.writeByte(entry.converted == null ? UNCHANGED : CONVERTED);
+        out.writeShort(entry.lookups.size());
+        for (Map.Entry<String, Boolean> lookup : entry.lookups.entrySet()) {
+            byte[] name = lookup.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeBoolean(lookup.getValue().booleanValue());
+            out.writeShort(name.length);
+            out.write(name);
+        }
+        byte[] converted = entry.converted == null ? new byte[0] : entry.converted;
+        out.writeInt(converted.length);
+        out.write(converted);
+        byte[] record = baos.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    private static byte[] createHeader() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(MAGIC);
+        out.writeUTF(Info.getVersion());
+        return baos.toByteArray();
+    }
+
+    private static boolean hasHeader(ByteBuffer buffer, byte[] header) {
+        if (buffer.limit() < header.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (buffer.get(i) != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * The result of transforming a class.
+     */
+    static final class Entry {
+
+        private final Map<String, Boolean> lookups;
+        private final byte[] converted;
+
+        private Entry(Map<String, Boolean> lookups, byte[] converted) {
+            this.lookups = lookups;
+            this.converted = converted;
+        }
+
+        /**
+         * Can the entry be used for a class loader? The target classes must
+         * be available, or not, as they were when the class was converted.
+         *
+         * @param index the index of the class loader
+         * @return {@code true} if the entry is valid for the class loader
+         */
+        boolean isValid(TargetResourceIndex index) {
+            for (Map.Entry<String, Boolean> lookup : lookups.entrySet()) {
+                if (index.isAvailable(lookup.getKey()) != lookup.getValue().booleanValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return a copy of the converted class bytes, or {@code null} if the
+         *         class does not need to be converted
+         */
+        byte[] getConverted() {
+            return converted == null ? null : converted.clone();
+        }
+    }
+}
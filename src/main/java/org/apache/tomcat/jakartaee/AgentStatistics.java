@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics for the classes seen by a {@link MigrationAgent}. The statistics
+ * are exposed through JMX when the agent is installed.
+ */
+public class AgentStatistics implements AgentStatisticsMBean {
+
+    private static final StringManager sm = StringManager.getManager(AgentStatistics.class);
+
+    private final LongAdder converted = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder transformTime = new LongAdder();
+    private volatile long maxTransformTime;
+    private String slowestClassName;
+
+    /**
+     * Create a new, empty, set of statistics.
+     */
+    public AgentStatistics() {
+    }
+
+    void recordTransform(String className, boolean wasConverted, long transformNanos) {
+        if (wasConverted) {
+            converted.increment();
+        } else {
+            unchanged.increment();
+        }
+        recordTime(className, transformNanos);
+    }
+
+    void recordFiltered() {
+        filtered.increment();
+    }
+
+    void recordFailure(String className, long transformNanos) {
+        failures.increment();
+        recordTime(className, transformNanos);
+    }
+
+    void recordCacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+    }
+
+    private void recordTime(String className, long transformNanos) {
+        transformTime.add(transformNanos);
+        if (transformNanos > maxTransformTime) {
+            synchronized (this) {
+                if (transformNanos > maxTransformTime) {
+                    maxTransformTime = transformNanos;
+                    slowestClassName = className;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getConvertedCount() {
+        return converted.sum();
+    }
+
+    @Override
+    public long getUnchangedCount() {
+        return unchanged.sum();
+    }
+
+    @Override
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getTotalTransformTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transformTime.sum());
+    }
+
+    @Override
+    public long getAverageTransformTimeMicros() {
+        long count = getConvertedCount() + getUnchangedCount() + getFailureCount();
+        if (count == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(transformTime.sum() / count);
+    }
+
+    @Override
+    public synchronized long getMaxTransformTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxTransformTime);
+    }
+
+    @Override
+    public synchronized String getSlowestClassName() {
+        return slowestClassName;
+    }
+
+    @Override
+    public void reset() {
+        converted.reset();
+        unchanged.reset();
+        filtered.reset();
+        failures.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        transformTime.reset();
+        synchronized (this) {
+            maxTransformTime = 0;
+            slowestClassName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sm.getString("agentStatistics.summary", Long.valueOf(getConvertedCount()),
+                Long.valueOf(getUnchangedCount()), Long.valueOf(getFilteredCount()), Long.valueOf(getFailureCount()),
+                Long.valueOf(getTotalTransformTimeMillis()), Long.valueOf(getAverageTransformTimeMicros()));
+    }
+}
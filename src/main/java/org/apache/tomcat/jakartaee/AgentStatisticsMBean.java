@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+/**
+ * JMX management interface for the migration agent statistics.
+ */
+public interface AgentStatisticsMBean {
+
+    /**
+     * Get the number of classes that were converted.
+     * @return the number of converted classes
+     */
+    long getConvertedCount();
+
+    /**
+     * Get the number of classes that were checked and did not need any
+     * conversion.
+     * @return the number of unchanged classes
+     */
+    long getUnchangedCount();
+
+    /**
+     * Get the number of classes that were not checked because of the package
+     * or class loader filters.
+     * @return the number of filtered classes
+     */
+    long getFilteredCount();
+
+    /**
+     * Get the number of classes that could not be converted.
+     * @return the number of failures
+     */
+    long getFailureCount();
+
+    /**
+     * Get the number of classes found in the persistent cache.
+     * @return the number of cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Get the number of classes that were not found in the persistent cache,
+     * or whose cache entry could not be used.
+     * @return the number of cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Get the total time spent checking and converting classes.
+     * @return the total transform time in milliseconds
+     */
+    long getTotalTransformTimeMillis();
+
+    /**
+     * Get the average time spent checking and converting a class.
+     * @return the average transform time in microseconds
+     */
+    long getAverageTransformTimeMicros();
+
+    /**
+     * Get the longest time spent checking and converting a class.
+     * @return the maximum transform time in microseconds
+     */
+    long getMaxTransformTimeMicros();
+
+    /**
+     * Get the name of the class that took the longest to check and convert.
+     * @return the class name, or {@code null} if no class was checked
+     */
+    String getSlowestClassName();
+
+    /**
+     * Reset all the statistics.
+     */
+    void reset();
+}
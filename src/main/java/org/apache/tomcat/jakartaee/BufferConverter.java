@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A converter that can also convert content that is already held in memory,
+ * without copying it into and out of streams. Used by the migration when the
+ * content of an entry has been read anyway.
+ */
+public interface BufferConverter extends Converter {
+
+    /**
+     * Converts the remaining content of the given buffer, if necessary,
+     * according to the requirements of the given profile. The position and
+     * limit of the source buffer are not changed.
+     *
+     * @param path      The path to the data being converted
+     * @param src       The source data to convert
+     * @param profile   The profile that defines the conversion required
+     *
+     * @throws IOException  If the conversion fails
+     * @return {@code src} itself if nothing was converted, so that callers
+     *         can write the original content as is, or a new buffer holding
+     *         the converted content
+     */
+    ByteBuffer convert(String path, ByteBuffer src, EESpecProfile profile) throws IOException;
+}
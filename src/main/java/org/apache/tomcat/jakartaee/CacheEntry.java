@@ -17,13 +17,10 @@
 package org.apache.tomcat.jakartaee;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.AtomicMoveNotSupportedException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,16 +35,20 @@ class CacheEntry {
     private static final Logger logger = Logger.getLogger(CacheEntry.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(CacheEntry.class);
 
+    private final MigrationCache cache;
     private final String hash;
-    private final boolean exists;
-    private final File cacheFile;
+    private final long size;
     private final File tempFile;
     private FileOutputStream fos;
+    private long storeStart;
+    private long storedSize = -1;
+    // Set once the store has been handed over to the storage or rolled back
+    private boolean completed;
 
-    CacheEntry(String hash, boolean exists, File cacheFile, File tempFile) {
+    CacheEntry(MigrationCache cache, String hash, long size, File tempFile) {
+        this.cache = cache;
         this.hash = hash;
-        this.exists = exists;
-        this.cacheFile = cacheFile;
+        this.size = size;
         this.tempFile = tempFile;
     }
 
@@ -56,7 +57,7 @@ class CacheEntry {
      * @return true if cached
      */
     public boolean exists() {
-        return exists;
+        return size >= 0;
     }
 
     /**
@@ -69,15 +70,19 @@ class CacheEntry {
 
     /**
      * Copy cached content to destination output stream.
+     * Nothing is written to the destination if the cached content is no
+     * longer available.
      * @param dest the destination output stream
+     * @throws java.io.FileNotFoundException if the cached content is no longer available
      * @throws IOException if an I/O error occurs
      */
     public void copyToDestination(OutputStream dest) throws IOException {
-        if (!exists) {
+        if (!exists()) {
             throw new IllegalStateException(sm.getString("cacheEntry.copyNotExist"));
         }
-        try (FileInputStream fis = new FileInputStream(cacheFile)) {
-            IOUtils.copy(fis, dest);
+        try (InputStream is = cache.openEntry(hash)) {
+            long bytes = IOUtils.copyLarge(is, dest);
+            cache.entryServed(hash, bytes);
         }
     }
 
@@ -87,45 +92,40 @@ class CacheEntry {
      * @throws IOException if an I/O error occurs
      */
     public OutputStream beginStore() throws IOException {
+        storeStart = System.nanoTime();
         fos = new FileOutputStream(tempFile);
         return fos;
     }
 
     /**
-     * Commit the store operation - move temp file to final cache location.
-     * @throws IOException if an I/O error occurs
+     * Commit the store operation - hand the temp file over to the cache
+     * storage. Depending on the storage, the operation may complete
+     * asynchronously. Once committed, the store can no longer be rolled
+     * back. A failure to store the entry only means that the converted
+     * archive is not cached, so it is logged and the store is rolled back.
+     * @return true if the entry was handed over to the storage and, if the
+     *         storage completed the operation immediately, stored
      */
-    public void commitStore() throws IOException {
+    public boolean commitStore() {
         if (fos != null) {
             try {
                 fos.close();
             } catch (IOException e) {
+                logger.log(Level.WARNING, sm.getString("cache.storeFailed", hash), e);
                 rollbackStore();
-                throw new IOException(sm.getString("cacheEntry.closeFail"), e);
+                return false;
             }
             fos = null;
         }
         if (!tempFile.exists()) {
-            throw new IOException(sm.getString("cacheEntry.tempNotExist", tempFile));
-        }
-        // Ensure parent directory exists
-        File parentDir = cacheFile.getParentFile();
-        if (!parentDir.mkdirs() && !parentDir.exists()) {
+            logger.log(Level.WARNING, sm.getString("cacheEntry.tempNotExist", tempFile));
             rollbackStore();
-            throw new IOException(sm.getString("cache.cannotCreate", parentDir.getAbsolutePath()));
-        }
-        // Move file to final cache location (atomic if possible)
-        try {
-            try {
-                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
-                        StandardCopyOption.ATOMIC_MOVE);
-            } catch (AtomicMoveNotSupportedException e) {
-                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            }
-        } catch (Exception e) {
-            rollbackStore();
-            throw new IOException(sm.getString("cacheEntry.tempRenameFail", tempFile, cacheFile), e);
+            return false;
         }
+        storedSize = tempFile.length();
+        // The storage is now responsible for the temp file, including on failure
+        completed = true;
+        return cache.storeEntry(hash, tempFile, System.nanoTime() - storeStart);
     }
 
     /**
@@ -133,13 +133,19 @@ class CacheEntry {
      * @return the file size in bytes
      */
     public long getFileSize() {
-        return cacheFile.length();
+        return exists() ? size : storedSize;
     }
 
     /**
-     * Rollback the store operation - delete temp file.
+     * Rollback the store operation - delete temp file. Does nothing if the
+     * store was already committed or rolled back.
      */
     public void rollbackStore() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        cache.entryRolledBack();
         if (fos != null) {
             try {
                 fos.close();
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics for a {@link MigrationCache}. The counters are updated by the
+ * cache as it is used and may be read at any time, either directly or through
+ * JMX once the cache has been registered with
+ * {@link MigrationCache#registerMBean()}.
+ */
+public class CacheStatistics implements CacheStatisticsMBean {
+
+    private static final StringManager sm = StringManager.getManager(CacheStatistics.class);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+    private final LongAdder bytesStored = new LongAdder();
+    private final LongAdder conversionTimeSaved = new LongAdder();
+    private final LongAdder lookupTime = new LongAdder();
+    private final AtomicLong maxLookupTime = new AtomicLong();
+
+    /**
+     * Create a new, empty, set of statistics.
+     */
+    public CacheStatistics() {
+    }
+
+    void recordLookup(boolean hit, long lookupNanos) {
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        lookupTime.add(lookupNanos);
+        maxLookupTime.accumulateAndGet(lookupNanos, Math::max);
+    }
+
+    void recordServed(long bytes, long conversionMillis) {
+        bytesServed.add(bytes);
+        if (conversionMillis > 0) {
+            conversionTimeSaved.add(conversionMillis);
+        }
+    }
+
+    void recordStore(long bytes) {
+        stores.increment();
+        bytesStored.add(bytes);
+    }
+
+    void recordRollback() {
+        rollbacks.increment();
+    }
+
+    void recordEviction() {
+        evictions.increment();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long lookupCount = hitCount + getMisses();
+        if (lookupCount == 0) {
+            return 0;
+        }
+        return (double) hitCount / lookupCount;
+    }
+
+    @Override
+    public long getStores() {
+        return stores.sum();
+    }
+
+    @Override
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    @Override
+    public long getBytesStored() {
+        return bytesStored.sum();
+    }
+
+    @Override
+    public long getConversionTimeSavedMillis() {
+        return conversionTimeSaved.sum();
+    }
+
+    @Override
+    public long getLookupCount() {
+        return getHits() + getMisses();
+    }
+
+    @Override
+    public long getAverageLookupTimeMicros() {
+        long lookupCount = getLookupCount();
+        if (lookupCount == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(lookupTime.sum() / lookupCount);
+    }
+
+    @Override
+    public long getMaxLookupTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLookupTime.get());
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        stores.reset();
+        rollbacks.reset();
+        evictions.reset();
+        bytesServed.reset();
+        bytesStored.reset();
+        conversionTimeSaved.reset();
+        lookupTime.reset();
+        maxLookupTime.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return sm.getString("cacheStatistics.summary", Long.valueOf(getHits()), Long.valueOf(getMisses()),
+                String.format("%.1f", Double.valueOf(getHitRatio() * 100)), Long.valueOf(getStores()),
+                Long.valueOf(getRollbacks()), Long.valueOf(getEvictions()),
+                Long.valueOf(getBytesServed() / 1024 / 1024), Long.valueOf(getConversionTimeSavedMillis()),
+                Long.valueOf(getAverageLookupTimeMicros()));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+/**
+ * JMX management interface for the migration cache statistics.
+ */
+public interface CacheStatisticsMBean {
+
+    /**
+     * Get the number of lookups that found a cached archive.
+     * @return the number of cache hits
+     */
+    long getHits();
+
+    /**
+     * Get the number of lookups that did not find a cached archive.
+     * @return the number of cache misses
+     */
+    long getMisses();
+
+    /**
+     * Get the ratio of hits to lookups.
+     * @return the hit ratio between 0 and 1, or 0 if no lookup was made
+     */
+    double getHitRatio();
+
+    /**
+     * Get the number of converted archives stored in the cache.
+     * @return the number of stores
+     */
+    long getStores();
+
+    /**
+     * Get the number of store operations that were rolled back.
+     * @return the number of rollbacks
+     */
+    long getRollbacks();
+
+    /**
+     * Get the number of entries removed from the cache by pruning.
+     * @return the number of evictions
+     */
+    long getEvictions();
+
+    /**
+     * Get the number of bytes copied from the cache instead of being converted.
+     * @return the number of bytes served from the cache
+     */
+    long getBytesServed();
+
+    /**
+     * Get the number of bytes written to the cache.
+     * @return the number of bytes stored in the cache
+     */
+    long getBytesStored();
+
+    /**
+     * Get the estimated conversion time saved by cache hits. This is the sum
+     * of the conversion times recorded when the entries that were hit were
+     * stored. Hits for entries with no recorded conversion time are not
+     * included.
+     * @return the estimated time saved in milliseconds
+     */
+    long getConversionTimeSavedMillis();
+
+    /**
+     * Get the number of lookups performed.
+     * @return the number of lookups
+     */
+    long getLookupCount();
+
+    /**
+     * Get the average time taken by a lookup, including computing the hash.
+     * @return the average lookup time in microseconds
+     */
+    long getAverageLookupTimeMicros();
+
+    /**
+     * Get the longest time taken by a lookup, including computing the hash.
+     * @return the maximum lookup time in microseconds
+     */
+    long getMaxLookupTimeMicros();
+
+    /**
+     * Reset all the statistics.
+     */
+    void reset();
+}
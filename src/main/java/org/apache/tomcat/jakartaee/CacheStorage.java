@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage backend for the {@link MigrationCache}. The cache computes the keys,
+ * tracks access times and prepares the converted archives in local temporary
+ * files; the storage only has to hold the converted archives.
+ * <p>
+ * Lookups and stores are asynchronous so that remote implementations do not
+ * block the migration. Implementations must be thread safe.
+ */
+public interface CacheStorage extends Closeable {
+
+    /**
+     * Look up an entry.
+     *
+     * @param key the key of the entry
+     * @return a future providing the size in bytes of the stored entry, or
+     *         {@code -1} if there is no entry for the key
+     */
+    CompletableFuture<Long> lookup(String key);
+
+    /**
+     * Open a stored entry for reading.
+     *
+     * @param key the key of the entry
+     * @return a stream providing the content of the entry
+     * @throws java.io.FileNotFoundException if there is no entry for the key
+     * @throws IOException if an I/O error occurs
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Store an entry. The storage takes ownership of the given file and is
+     * responsible for deleting it (or moving it) once the store operation is
+     * complete, whether it succeeded or not.
+     *
+     * @param key the key of the entry
+     * @param content the file holding the content of the entry
+     * @return a future that is completed when the entry has been stored
+     */
+    CompletableFuture<Void> store(String key, File content);
+
+    /**
+     * Remove an entry.
+     *
+     * @param key the key of the entry
+     * @return {@code true} if an entry was removed
+     * @throws IOException if an I/O error occurs
+     */
+    boolean remove(String key) throws IOException;
+
+    /**
+     * Get the keys of the stored entries. Storage that cannot enumerate its
+     * content returns an empty set.
+     *
+     * @return the keys of the stored entries
+     */
+    Set<String> keys();
+
+    /**
+     * Remove all the stored entries.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void clear() throws IOException;
+
+    /**
+     * Is this storage shared with other cache instances? Entries in shared
+     * storage are not removed when they expire locally since they may still be
+     * used elsewhere.
+     *
+     * @return {@code true} if the storage is shared
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    /**
+     * Release any resources held by the storage, waiting for pending stores
+     * to complete.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
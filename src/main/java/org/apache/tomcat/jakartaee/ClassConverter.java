@@ -16,36 +16,61 @@
  */
 package org.apache.tomcat.jakartaee;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.bcel.classfile.ClassParser;
-import org.apache.bcel.classfile.Constant;
-import org.apache.bcel.classfile.ConstantUtf8;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.util.SyntheticRepository;
 import org.apache.commons.io.IOUtils;
 
 /**
  * Class converter and transformer.
+ * <p>
+ * Only the constant pool of the class file is parsed. The UTF-8 entries are
+ * converted in a single pass and everything else, including the rest of the
+ * class file, is copied verbatim.
  */
-public class ClassConverter implements Converter, ClassFileTransformer {
-
-    static {
-        // Avoid ConcurrentModificationException from SyntheticRepository when migrations are run concurrently
-        SyntheticRepository.getInstance();
-    }
+public class ClassConverter implements BufferConverter, ClassFileTransformer {
 
     private static final Logger logger = Logger.getLogger(ClassConverter.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(ClassConverter.class);
+    private static final MigrationEvents events = MigrationEvents.get();
+
+    private static final String CLASS_EXTENSION = "class";
+    private static final Set<String> CLASS_EXTENSIONS = Collections.singleton(CLASS_EXTENSION);
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    // Constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
 
     /**
      * The configured spec profile.
@@ -74,8 +99,13 @@ public class ClassConverter implements Converter, ClassFileTransformer {
 
     @Override
     public boolean accepts(String filename) {
-        String extension = Util.getExtension(filename);
-        return "class".equals(extension);
+        return Util.hasExtension(filename, CLASS_EXTENSION);
+    }
+
+
+    @Override
+    public Set<String> getExtensions() {
+        return CLASS_EXTENSIONS;
     }
 
 
@@ -85,18 +115,56 @@ public class ClassConverter implements Converter, ClassFileTransformer {
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns {@code null} if the class does not need to be converted, so
+     * that it is not redefined.
+     */
     @Override
     public byte[] transform(ClassLoader loader, String className,
             Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
             byte[] classfileBuffer) throws IllegalClassFormatException {
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(classfileBuffer);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        return transform(loader, className, classfileBuffer, null);
+    }
+
+
+    /*
+     * Transform a class, recording in lookups the availability of each class
+     * in the target namespace that the result depends on.
+     */
+    byte[] transform(ClassLoader loader, String className, byte[] classfileBuffer, Map<String, Boolean> lookups)
+            throws IllegalClassFormatException {
+        // The buffer is used as is, the class is only copied if it changes
+        Object event = events.beginEntry();
         try {
-            convertInternal(className, inputStream, outputStream, profile, loader);
+            checkClass(className, classfileBuffer);
+            byte[] converted = convertClass(className, classfileBuffer, profile, loader, lookups);
+            log(className, converted != null);
+            if (event != null) {
+                events.endEntry(event, className, this, classfileBuffer.length,
+                        converted == null ? classfileBuffer.length : converted.length, converted != null, profile);
+            }
+            return converted;
         } catch (IOException e) {
             throw new IllegalClassFormatException(e.getLocalizedMessage());
         }
-        return outputStream.toByteArray();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The class is not copied if the buffer is backed by an array holding
+     * exactly the class, as is the case for a wrapped array.
+     */
+    @Override
+    public ByteBuffer convert(String path, ByteBuffer src, EESpecProfile profile) throws IOException {
+        byte[] classBytes = Util.toByteArray(src);
+        checkClass(path, classBytes);
+        byte[] converted = convertClass(path, classBytes, profile, null, null);
+        log(path, converted != null);
+        return converted == null ? src : ByteBuffer.wrap(converted);
     }
 
 
@@ -112,66 +180,99 @@ public class ClassConverter implements Converter, ClassFileTransformer {
      */
     protected boolean convertInternal(String path, InputStream src, OutputStream dest, EESpecProfile profile, ClassLoader loader)
             throws IOException {
-        byte[] classBytes = IOUtils.toByteArray(src);
-        ClassParser parser = new ClassParser(new ByteArrayInputStream(classBytes), "unknown");
-        JavaClass javaClass = parser.parse();
-
-        boolean converted = false;
-
-        // Loop through constant pool
-        Constant[] constantPool = javaClass.getConstantPool().getConstantPool();
-        // Need an int as the maximum pool size is 2^16
-        for (int i = 0; i < constantPool.length; i++) {
-            if (constantPool[i] instanceof ConstantUtf8) {
-                ConstantUtf8 c = (ConstantUtf8) constantPool[i];
-                String str = c.getBytes();
-                String newString = profile.convert(str);
-                // Object comparison is deliberate
-                if (newString != str) {
-                    if (loader != null) {
-                        // Only convert to Jakarta EE classes that actually exist in the
-                        // container. Build the result by processing each fragment
-                        // independently so we never need to revert a conversion.
-                        String[] convertedFragments = newString.split(";|<", -1);
-                        String[] originalFragments = str.split(";|<", -1);
-                        StringBuilder result = new StringBuilder();
-                        for (int fi = 0; fi < convertedFragments.length; fi++) {
-                            String convertedFragment = convertedFragments[fi];
-                            String originalFragment = originalFragments[fi];
-                            int pos = convertedFragment.indexOf(profile.getTarget() + "/");
-                            boolean dotMode = false;
-                            if (pos < 0) {
-                                pos = convertedFragment.indexOf(profile.getTarget() + ".");
-                                dotMode = true;
-                            }
-                            if (pos >= 0) {
-                                String resourceName = convertedFragment.substring(pos);
-                                if (dotMode) {
-                                    resourceName = resourceName.replace('.', '/');
-                                }
-                                resourceName = resourceName + ".class";
-                                if (loader.getResource(resourceName) == null) {
-                                    if (logger.isLoggable(Level.FINE)) {
-                                        logger.log(Level.FINE, sm.getString("classConverter.skipName",
-                                                profile.getSource(),
-                                                convertedFragment.substring(pos).replace('/','.')));
-                                    }
-                                    // Use the original (unconverted) fragment
-                                    result.append(originalFragment);
-                                    continue;
-                                }
-                            }
-                            result.append(convertedFragment);
-                        }
-                        newString = result.toString();
-                    }
-                    c = new ConstantUtf8(newString);
-                    constantPool[i] = c;
-                    converted = true;
+        return convertInternal(path, src, dest, profile, loader, null);
+    }
+
+
+    private boolean convertInternal(String path, InputStream src, OutputStream dest, EESpecProfile profile,
+            ClassLoader loader, Map<String, Boolean> lookups) throws IOException {
+        byte[] classBytes = readClass(path, src);
+        return writeClass(path, classBytes, convertClass(path, classBytes, profile, loader, lookups), dest);
+    }
+
+
+    /*
+     * Returns the converted class or null if nothing was converted.
+     */
+    private byte[] convertClass(String path, byte[] classBytes, EESpecProfile profile, ClassLoader loader,
+            Map<String, Boolean> lookups) throws IOException {
+        // Most classes do not reference the source namespace at all
+        if (!mayConvert(classBytes, profile)) {
+            return null;
+        }
+        return rewrite(classBytes, ConstantPoolStrings.parse(path, classBytes), profile, loader, lookups);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the constant pool is decoded, no converted class is built.
+     */
+    @Override
+    public boolean needsConversion(String path, InputStream src, EESpecProfile profile) throws IOException {
+        byte[] classBytes = readClass(path, src);
+        if (!mayConvert(classBytes, profile)) {
+            return false;
+        }
+        ConstantPoolStrings strings = ConstantPoolStrings.parse(path, classBytes);
+        for (int i = 0; i < strings.count; i++) {
+            String str = strings.get(i);
+            // Object comparison is deliberate
+            if (profile.convert(str) != str) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Convert a class for several profiles at once. The class is read and its
+     * constant pool is parsed only once.
+     *
+     * @param path the path of the class
+     * @param src the source byte stream
+     * @param dests the output byte streams, one per profile
+     * @param profiles the specification profiles to use
+     * @return whether conversion occurred for each profile
+     * @throws IOException rethrow on byte read or write
+     */
+    boolean[] convert(String path, InputStream src, OutputStream[] dests, EESpecProfile[] profiles)
+            throws IOException {
+        byte[] classBytes = readClass(path, src);
+
+        boolean[] result = new boolean[profiles.length];
+        ConstantPoolStrings strings = null;
+        for (int i = 0; i < profiles.length; i++) {
+            byte[] converted = null;
+            if (mayConvert(classBytes, profiles[i])) {
+                if (strings == null) {
+                    strings = ConstantPoolStrings.parse(path, classBytes);
                 }
+                converted = rewrite(classBytes, strings, profiles[i], null, null);
             }
+            result[i] = writeClass(path, classBytes, converted, dests[i]);
+        }
+        return result;
+    }
+
+
+    private static byte[] readClass(String path, InputStream src) throws IOException {
+        byte[] classBytes = IOUtils.toByteArray(src);
+        checkClass(path, classBytes);
+        return classBytes;
+    }
+
+
+    private static void checkClass(String path, byte[] classBytes) throws IOException {
+        if (classBytes.length < 10 || readInt(classBytes, 0) != MAGIC) {
+            throw new IOException(sm.getString("classConverter.invalidClass", path));
         }
+    }
 
+
+    private static void log(String path, boolean converted) {
         if (logger.isLoggable(Level.FINE)) {
             if (converted) {
                 logger.log(Level.FINE, sm.getString("classConverter.converted", path.replace('/','.')));
@@ -179,13 +280,321 @@ public class ClassConverter implements Converter, ClassFileTransformer {
                 logger.log(Level.FINEST, sm.getString("classConverter.noConversion", path.replace('/','.')));
             }
         }
+    }
+
+
+    private static boolean writeClass(String path, byte[] classBytes, byte[] converted, OutputStream dest)
+            throws IOException {
+        log(path, converted != null);
+        if (converted != null) {
+            dest.write(converted);
+            return true;
+        }
+        IOUtils.writeChunked(classBytes, dest);
+        return false;
+    }
+
+
+    /*
+     * Returns the converted class or null if nothing was converted. Only the
+     * UTF-8 entries of the constant pool change, the rest of the class file
+     * is copied as is.
+     */
+    private byte[] rewrite(byte[] classBytes, ConstantPoolStrings strings, EESpecProfile profile,
+            ClassLoader loader, Map<String, Boolean> lookups) throws IOException {
+        ByteArrayOutputStream convertedBytes = null;
+        DataOutputStream convertedData = null;
+        int copied = 0;
+        for (int i = 0; i < strings.count; i++) {
+            String str = strings.get(i);
+            String newString = convertString(str, profile, loader, lookups);
+            // Object comparison is deliberate
+            if (newString != str) {
+                if (convertedBytes == null) {
+                    convertedBytes = new ByteArrayOutputStream(classBytes.length + 256);
+                    convertedData = new DataOutputStream(convertedBytes);
+                }
+                // Copy everything up to and including the tag, then the new entry
+                int tag = strings.offsets[i];
+                convertedBytes.write(classBytes, copied, tag + 1 - copied);
+                convertedData.writeUTF(newString);
+                copied = strings.ends[i];
+            }
+        }
+        if (convertedBytes == null) {
+            return null;
+        }
+        // The rest of the class file is unchanged
+        convertedBytes.write(classBytes, copied, classBytes.length - copied);
+        return convertedBytes.toByteArray();
+    }
+
 
-        if (converted) {
-            javaClass.dump(dest);
-        } else {
-            IOUtils.writeChunked(classBytes, dest);
+    /**
+     * Convert a string from the constant pool.
+     * @param str the string
+     * @param profile the specification profile to use
+     * @param loader the class loader, if only classes that are available
+     *        from it should be converted
+     * @param lookups if not null, records the availability of the classes
+     *        that were checked
+     * @return the converted string or the same instance if nothing was
+     *         converted
+     */
+    private String convertString(String str, EESpecProfile profile, ClassLoader loader,
+            Map<String, Boolean> lookups) {
+        String newString = profile.convert(str);
+        // Object comparison is deliberate
+        if (newString == str || loader == null) {
+            return newString;
+        }
+        // Only convert to Jakarta EE classes that actually exist in the
+        // container. Each fragment of a descriptor or signature is checked
+        // independently and the original fragment is kept if the class does
+        // not exist. Conversion never adds or removes the delimiters so the
+        // fragments of the original and converted strings correspond.
+        TargetResourceIndex index = TargetResourceIndex.getIndex(loader);
+        String target = profile.getTarget();
+        StringBuilder result = null;
+        int originalStart = 0;
+        int convertedStart = 0;
+        while (true) {
+            int originalEnd = nextDelimiter(str, originalStart);
+            int convertedEnd = nextDelimiter(newString, convertedStart);
+            if (!isFragmentAvailable(newString, convertedStart, convertedEnd, target, index, profile, lookups)) {
+                if (result == null) {
+                    result = new StringBuilder(newString.length());
+                    result.append(newString, 0, convertedStart);
+                }
+                // Use the original (unconverted) fragment
+                result.append(str, originalStart, originalEnd);
+            } else if (result != null) {
+                result.append(newString, convertedStart, convertedEnd);
+            }
+            if (convertedEnd == newString.length()) {
+                break;
+            }
+            if (result != null) {
+                result.append(newString.charAt(convertedEnd));
+            }
+            originalStart = originalEnd + 1;
+            convertedStart = convertedEnd + 1;
+        }
+        if (result == null) {
+            return newString;
+        }
+        String reverted = result.toString();
+        return reverted.equals(str) ? str : reverted;
+    }
+
+
+    private static int nextDelimiter(String str, int start) {
+        for (int i = start; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == ';' || c == '<') {
+                return i;
+            }
         }
+        return str.length();
+    }
+
+
+    /*
+     * Is any class in the target namespace referenced by the fragment
+     * available?
+     */
+    private static boolean isFragmentAvailable(String str, int start, int end, String target,
+            TargetResourceIndex index, EESpecProfile profile, Map<String, Boolean> lookups) {
+        int pos = indexOf(str, target, '/', start, end);
+        boolean dotMode = false;
+        if (pos < 0) {
+            pos = indexOf(str, target, '.', start, end);
+            dotMode = true;
+        }
+        if (pos < 0) {
+            return true;
+        }
+        String className = str.substring(pos, end);
+        if (dotMode) {
+            className = className.replace('.', '/');
+        }
+        boolean available = index.isAvailable(className);
+        if (lookups != null) {
+            lookups.put(className, Boolean.valueOf(available));
+        }
+        if (available) {
+            return true;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.log(Level.FINE, sm.getString("classConverter.skipName",
+                    profile.getSource(), className.replace('/','.')));
+        }
+        return false;
+    }
+
+
+    private static int indexOf(String str, String prefix, char separator, int start, int end) {
+        int pos = str.indexOf(prefix, start);
+        while (pos >= 0 && pos + prefix.length() < end) {
+            if (str.charAt(pos + prefix.length()) == separator) {
+                return pos;
+            }
+            pos = str.indexOf(prefix, pos + 1);
+        }
+        return -1;
+    }
+
 
-        return converted;
+    /*
+     * ASCII characters are encoded as themselves in modified UTF-8 and never
+     * appear inside a multi-byte sequence, so any constant that the built-in
+     * profiles would convert appears as is in the raw class bytes. Other
+     * profiles may use arbitrary patterns so they are never rejected.
+     */
+    private static boolean mayConvert(byte[] classBytes, EESpecProfile profile) {
+        if (profile instanceof EESpecProfiles) {
+            // The constant pool starts after the magic number and versions
+            return ((EESpecProfiles) profile).getMatcher().containsMatch(classBytes, 8, classBytes.length - 8);
+        }
+        return true;
+    }
+
+
+    private static int readUnsignedShort(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+    }
+
+
+    private static int readInt(byte[] bytes, int pos) {
+        return (readUnsignedShort(bytes, pos) << 16) | readUnsignedShort(bytes, pos + 2);
+    }
+
+
+    /*
+     * Decode the modified UTF-8 used by class files. Most constant pool
+     * entries are plain ASCII which is decoded directly.
+     */
+    private static String decodeUtf8(byte[] bytes, int start, int length) throws IOException {
+        int end = start + length;
+        int pos = start;
+        while (pos < end && bytes[pos] > 0) {
+            pos++;
+        }
+        if (pos == end) {
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        int count = 0;
+        for (int i = start; i < pos; i++) {
+            chars[count++] = (char) bytes[i];
+        }
+        while (pos < end) {
+            int b = bytes[pos] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                pos++;
+            } else if ((b & 0xE0) == 0xC0 && pos + 1 < end && (bytes[pos + 1] & 0xC0) == 0x80) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[pos + 1] & 0x3F));
+                pos += 2;
+            } else if ((b & 0xF0) == 0xE0 && pos + 2 < end && (bytes[pos + 1] & 0xC0) == 0x80 &&
+                    (bytes[pos + 2] & 0xC0) == 0x80) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[pos + 1] & 0x3F) << 6) |
+                        (bytes[pos + 2] & 0x3F));
+                pos += 3;
+            } else {
+                throw new IOException(sm.getString("classConverter.invalidUtf8", Integer.valueOf(pos)));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+
+    /*
+     * The decoded UTF-8 entries of a constant pool and their location in the
+     * class file, shared by all the profiles a class is converted for.
+     */
+    private static final class ConstantPoolStrings {
+
+        private int[] offsets = new int[64];
+        private int[] ends = new int[64];
+        private String[] strings;
+        private int count;
+
+        private static ConstantPoolStrings parse(String path, byte[] classBytes) throws IOException {
+            ConstantPoolStrings result = new ConstantPoolStrings();
+            try {
+                int constantPoolCount = readUnsignedShort(classBytes, 8);
+                int pos = 10;
+                // Loop through constant pool, entry 0 is not present in the class file
+                for (int i = 1; i < constantPoolCount; i++) {
+                    int tag = classBytes[pos];
+                    switch (tag) {
+                        case CONSTANT_UTF8: {
+                            int end = pos + 3 + readUnsignedShort(classBytes, pos + 1);
+                            if (end > classBytes.length) {
+                                throw new IOException(sm.getString("classConverter.truncated", path));
+                            }
+                            result.add(pos, end);
+                            pos = end;
+                            break;
+                        }
+                        case CONSTANT_CLASS:
+                        case CONSTANT_STRING:
+                        case CONSTANT_METHOD_TYPE:
+                        case CONSTANT_MODULE:
+                        case CONSTANT_PACKAGE:
+                            pos += 3;
+                            break;
+                        case CONSTANT_METHOD_HANDLE:
+                            pos += 4;
+                            break;
+                        case CONSTANT_INTEGER:
+                        case CONSTANT_FLOAT:
+                        case CONSTANT_FIELDREF:
+                        case CONSTANT_METHODREF:
+                        case CONSTANT_INTERFACE_METHODREF:
+                        case CONSTANT_NAME_AND_TYPE:
+                        case CONSTANT_DYNAMIC:
+                        case CONSTANT_INVOKE_DYNAMIC:
+                            pos += 5;
+                            break;
+                        case CONSTANT_LONG:
+                        case CONSTANT_DOUBLE:
+                            pos += 9;
+                            // Eight byte constants take two entries
+                            i++;
+                            break;
+                        default:
+                            throw new IOException(sm.getString("classConverter.invalidTag", path,
+                                    Integer.valueOf(tag), Integer.valueOf(i)));
+                    }
+                }
+                if (pos > classBytes.length) {
+                    throw new IOException(sm.getString("classConverter.truncated", path));
+                }
+                result.strings = new String[result.count];
+                for (int i = 0; i < result.count; i++) {
+                    int start = result.offsets[i] + 3;
+                    result.strings[i] = decodeUtf8(classBytes, start, result.ends[i] - start);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException(sm.getString("classConverter.truncated", path), e);
+            }
+            return result;
+        }
+
+        private void add(int offset, int end) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            offsets[count] = offset;
+            ends[count] = end;
+            count++;
+        }
+
+        private String get(int index) {
+            return strings[index];
+        }
     }
 }
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A registry of nested archives that are known to need no conversion,
+ * identified by the content of the archive rather than by its name so that
+ * renamed or repackaged copies are recognised too. The migration copies a
+ * nested archive found in the registry as is, without opening it. Nested
+ * archives too large to be held in memory are written to a temporary file
+ * while they are hashed.
+ * <p>
+ * Archives are identified by the lower case hexadecimal SHA-256 hash of their
+ * content, as printed by {@code sha256sum}. An archive may be registered for
+ * every profile or for a single profile, since an archive that needs no
+ * conversion with one profile may need it with another.
+ * <p>
+ * The registry may be loaded from and saved to files with one archive per
+ * line:
+ * <pre>
+ * # Comment
+ * {hash}             # No conversion needed with any profile
+ * {hash}|{profile}   # No conversion needed with the named profile
+ * </pre>
+ * When a registry is set on a {@link Migration}, the migration adds the
+ * nested archives that it finds need no conversion, so that later runs can
+ * skip them.
+ */
+public class CleanArchiveRegistry {
+
+    private static final Logger logger = Logger.getLogger(CleanArchiveRegistry.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(CleanArchiveRegistry.class);
+
+    private static final String ANY_PROFILE = "";
+    private static final int HASH_LENGTH = 64;
+
+    private final Map<String, Set<String>> archives = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    /**
+     * Create an empty registry.
+     */
+    public CleanArchiveRegistry() {
+    }
+
+    /**
+     * Register an archive as needing no conversion with any profile.
+     *
+     * @param hash the SHA-256 hash of the content of the archive
+     * @throws IllegalArgumentException if the hash is not a SHA-256 hash in
+     *         hexadecimal
+     */
+    public void add(String hash) {
+        add(hash, ANY_PROFILE);
+    }
+
+    /**
+     * Register an archive as needing no conversion with the given profile.
+     *
+     * @param hash the SHA-256 hash of the content of the archive
+     * @param profile the profile
+     * @throws IllegalArgumentException if the hash is not a SHA-256 hash in
+     *         hexadecimal
+     */
+    public void add(String hash, EESpecProfile profile) {
+        add(hash, profile.toString());
+    }
+
+    private void add(String hash, String profileName) {
+        if (!isValidHash(hash)) {
+            throw new IllegalArgumentException(sm.getString("cleanArchiveRegistry.invalidHash", hash));
+        }
+        Set<String> profiles = archives.computeIfAbsent(hash.toLowerCase(Locale.ENGLISH),
+                k -> ConcurrentHashMap.newKeySet());
+        if (profiles.add(profileName)) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Is the given archive known to need no conversion with the given profile?
+     *
+     * @param hash the lower case SHA-256 hash of the content of the archive
+     * @param profile the profile
+     * @return {@code true} if the archive is registered for every profile or
+     *         for the given profile
+     */
+    public boolean isClean(String hash, EESpecProfile profile) {
+        Set<String> profiles = archives.get(hash);
+        return profiles != null && (profiles.contains(ANY_PROFILE) || profiles.contains(profile.toString()));
+    }
+
+    /**
+     * @return the number of archives in the registry
+     */
+    public int size() {
+        return archives.size();
+    }
+
+    /**
+     * @return {@code true} if archives have been added since the registry was
+     *         created, loaded or saved
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Add the archives listed in the given file to the registry.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be read
+     */
+    public void load(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+        logger.log(Level.FINE, sm.getString("cleanArchiveRegistry.loaded", file.getAbsolutePath(),
+                Integer.valueOf(archives.size())));
+    }
+
+    /**
+     * Add the archives listed by the given reader to the registry. Invalid
+     * lines are logged and ignored.
+     *
+     * @param reader the reader
+     * @throws IOException if reading fails
+     */
+    public void load(Reader reader) throws IOException {
+        boolean wasModified = modified;
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf('|');
+            String hash = separator < 0 ? line : line.substring(0, separator).trim();
+            String profileName = separator < 0 ? ANY_PROFILE : line.substring(separator + 1).trim();
+            if (!isValidHash(hash) || separator >= 0 && profileName.isEmpty()) {
+                logger.log(Level.WARNING, sm.getString("cleanArchiveRegistry.invalidLine", line));
+                continue;
+            }
+            add(hash, profileName);
+        }
+        modified = wasModified;
+    }
+
+    /**
+     * Write the registry to the given file, sorted by hash.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            save(writer);
+        }
+        logger.log(Level.FINE, sm.getString("cleanArchiveRegistry.saved", file.getAbsolutePath(),
+                Integer.valueOf(archives.size())));
+    }
+
+    /**
+     * Write the registry to the given writer, sorted by hash.
+     *
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void save(Writer writer) throws IOException {
+        writer.write("# Archives that need no migration - hash[|profile]\n");
+        for (Map.Entry<String, Set<String>> entry : new TreeMap<>(archives).entrySet()) {
+            Set<String> profiles = entry.getValue();
+            if (profiles.contains(ANY_PROFILE)) {
+                writer.write(entry.getKey());
+                writer.write("\n");
+                continue;
+            }
+            for (String profileName : new TreeSet<>(profiles)) {
+                writer.write(entry.getKey());
+                writer.write("|");
+                writer.write(profileName);
+                writer.write("\n");
+            }
+        }
+        writer.flush();
+        modified = false;
+    }
+
+    private static boolean isValidHash(String hash) {
+        if (hash.length() != HASH_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = hash.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -19,9 +19,16 @@ package org.apache.tomcat.jakartaee;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Set;
+
+import org.apache.commons.io.output.NullOutputStream;
 
 /**
  * The main Converter interface, used for package prefix conversion.
+ * <p>
+ * Additional converters may be registered with {@link java.util.ServiceLoader}
+ * as providers of this interface. They take precedence over the built-in
+ * converters, in the order in which they are discovered.
  */
 public interface Converter {
 
@@ -32,6 +39,20 @@ public interface Converter {
      */
     boolean accepts(String filename);
 
+    /**
+     * The extensions of the files this converter accepts, if it only depends
+     * on the extension. A converter declaring its extensions is selected
+     * without calling {@link #accepts(String)}, which must then return true
+     * exactly for the files with one of these extensions, ignoring case.
+     *
+     * @return the extensions, without the leading '{@code .}', or
+     *         {@code null} if {@link #accepts(String)} must be called for
+     *         every file
+     */
+    default Set<String> getExtensions() {
+        return null;
+    }
+
     /**
      * Copies the source to the destination, converting it if necessary,
      * according to the requirements of the given profile.
@@ -45,4 +66,20 @@ public interface Converter {
      * @return true if the converter made a conversion to the file
      */
     boolean convert(String path, InputStream src, OutputStream dest, EESpecProfile profile) throws IOException;
+
+    /**
+     * Checks if {@link #convert(String, InputStream, OutputStream, EESpecProfile)}
+     * would change the source, without writing anything. Converters should
+     * override this if they can answer without producing the converted data.
+     *
+     * @param path      The path to the data being checked
+     * @param src       The source data to check
+     * @param profile   The profile that defines the conversion required
+     *
+     * @throws IOException  If the check fails
+     * @return true if the converter would make a conversion to the file
+     */
+    default boolean needsConversion(String path, InputStream src, EESpecProfile profile) throws IOException {
+        return convert(path, src, NullOutputStream.INSTANCE, profile);
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Selects the converter for a file. The candidates for each extension
+ * declared by a converter are computed once, in order of precedence, so
+ * selecting a converter neither allocates nor calls
+ * {@link Converter#accepts(String)} for converters that declare their
+ * extensions.
+ */
+final class ConverterRegistry {
+
+    /*
+     * Open addressing table, keyed by lower case extension. The size is a
+     * power of two and at least twice the number of extensions.
+     */
+    private final String[] extensions;
+    private final Candidates[] candidates;
+    private final Candidates defaultCandidates;
+
+    /**
+     * @param converters the converters, in order of precedence
+     */
+    ConverterRegistry(List<Converter> converters) {
+        Set<String> allExtensions = new LinkedHashSet<>();
+        for (Converter converter : converters) {
+            Set<String> declared = converter.getExtensions();
+            if (declared != null) {
+                for (String extension : declared) {
+                    allExtensions.add(extension.toLowerCase(Locale.ENGLISH));
+                }
+            }
+        }
+
+        int size = Integer.highestOneBit(Math.max(allExtensions.size(), 1) * 2) * 2;
+        extensions = new String[size];
+        candidates = new Candidates[size];
+        for (String extension : allExtensions) {
+            int slot = hash(extension, 0, extension.length()) & (size - 1);
+            while (extensions[slot] != null) {
+                slot = (slot + 1) & (size - 1);
+            }
+            extensions[slot] = extension;
+            candidates[slot] = buildCandidates(converters, extension);
+        }
+        defaultCandidates = buildCandidates(converters, null);
+    }
+
+    /**
+     * Get the converter for the given file.
+     *
+     * @param filename the name of the file
+     * @return the first converter, in order of precedence, that accepts the
+     *         file or {@code null} if none does
+     */
+    Converter getConverter(String filename) {
+        Candidates result = lookup(filename);
+        for (int i = 0; i < result.converters.length; i++) {
+            if (!result.checkAccepts[i] || result.converters[i].accepts(filename)) {
+                return result.converters[i];
+            }
+        }
+        return null;
+    }
+
+    private Candidates lookup(String filename) {
+        int lastPeriod = filename.lastIndexOf('.');
+        if (lastPeriod < 0) {
+            return defaultCandidates;
+        }
+        int start = lastPeriod + 1;
+        int length = filename.length() - start;
+        int mask = extensions.length - 1;
+        int slot = hash(filename, start, filename.length()) & mask;
+        String extension;
+        while ((extension = extensions[slot]) != null) {
+            if (extension.length() == length && filename.regionMatches(true, start, extension, 0, length)) {
+                return candidates[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultCandidates;
+    }
+
+    /*
+     * Case insensitive for ASCII, which is enough since the declared
+     * extensions are compared ignoring case afterwards.
+     */
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h = 31 * h + c;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * The candidates for an extension are the converters that declare it and
+     * the converters that do not declare extensions, which have to be asked.
+     */
+    private static Candidates buildCandidates(List<Converter> converters, String extension) {
+        List<Converter> result = new ArrayList<>();
+        List<Boolean> checkAccepts = new ArrayList<>();
+        for (Converter converter : converters) {
+            Set<String> declared = converter.getExtensions();
+            if (declared == null) {
+                result.add(converter);
+                checkAccepts.add(Boolean.TRUE);
+            } else if (extension != null && containsIgnoreCase(declared, extension)) {
+                result.add(converter);
+                checkAccepts.add(Boolean.FALSE);
+            }
+        }
+        Candidates candidates = new Candidates(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            candidates.converters[i] = result.get(i);
+            candidates.checkAccepts[i] = checkAccepts.get(i).booleanValue();
+        }
+        return candidates;
+    }
+
+    private static boolean containsIgnoreCase(Set<String> values, String value) {
+        for (String s : values) {
+            if (s.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Candidates {
+        private final Converter[] converters;
+        private final boolean[] checkAccepts;
+
+        private Candidates(int size) {
+            converters = new Converter[size];
+            checkAccepts = new boolean[size];
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.apache.tomcat.jakartaee;
 
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +35,24 @@ public interface EESpecProfile {
         return m.replaceAll(getTarget() + "$1");
     }
 
+    /**
+     * Convert the specified bytes to the target namespace. The bytes are
+     * treated as ISO-8859-1 characters, which is suitable for any ASCII
+     * compatible encoding.
+     * @param bytes the bytes to convert
+     * @return the converted bytes, or the same instance if no conversion was
+     *         necessary
+     */
+    default byte[] convert(byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        String converted = convert(text);
+        // Object comparison is deliberate here
+        if (converted == text) {
+            return bytes;
+        }
+        return converted.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
     /**
      * The source namespace.
      * @return the source namespace
@@ -17,52 +17,54 @@
 
 package org.apache.tomcat.jakartaee;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
  * Specification profile defining the replacements performed.
+ * <p>
+ * Each profile replaces the source namespace with the target namespace where
+ * it is followed by one of a list of packages. A package is written with
+ * {@code '.'} matching either {@code '.'} or {@code '/'}, and may be followed
+ * by {@code '!'} and a suffix that must not follow it. The conversion uses a
+ * {@link NamespaceMatcher} and {@link #getPattern()} returns the equivalent
+ * regular expression.
  */
 public enum EESpecProfiles implements EESpecProfile {
 
     /**
      * Specification profile matching the Jakarta Servlet API only.
      */
-    SERVLET("javax", "jakarta",
-          "javax([/\\.](servlet))"),
+    SERVLET("javax", "jakarta", Collections.singletonList("servlet")),
 
     /**
      * Specification profile matching the packages provided with Tomcat.
      */
-    TOMCAT("javax", "jakarta",
-            "javax([/\\.](annotation[/\\.](" + Patterns.ANNOTATION_CLASSES + ")" +
-                    "|ejb" +
-                    "|el" +
-                    "|mail" +
-                    "|persistence" +
-                    "|security[/\\.]auth[/\\.]message" +
-                    "|servlet" +
-                    "|transaction(?![/\\.]xa)" +
-                    "|websocket))"),
+    TOMCAT("javax", "jakarta", Packages.TOMCAT),
 
     /**
      * Specification profile for the full EE.
      */
-    EE("javax", "jakarta", "javax" + Patterns.EE),
+    EE("javax", "jakarta", Packages.EE),
 
     /**
      * Specification profile for the full EE, to convert from Jakarta to EE 8.
      */
-    JEE8("jakarta", "javax", "jakarta" + Patterns.EE);
+    JEE8("jakarta", "javax", Packages.EE);
 
-    private static final class Patterns {
+    private static final class Packages {
         /*
          * Prefixes of classes provided by tomcat-annotations-api 8.5. Nullable and Notnull are present in later
          * versions but the Findbugs JSR-305 implementation also has checkers that can't be satisfied by other
          * implementations, so we avoid migrating those.
          */
-        static final String ANNOTATION_CLASSES = String.join("|",
-                Arrays.asList(
+        static final List<String> ANNOTATION_CLASSES = prefix("annotation.",
                         "Generated",
                         "ManagedBean",
                         "PostConstruct",
@@ -70,17 +72,24 @@ public enum EESpecProfiles implements EESpecProfile {
                         "Priority",
                         "Resource",
                         "Resources",
-                        "security[/\\.]DeclareRoles",
-                        "security[/\\.]DenyAll",
-                        "security[/\\.]PermitAll",
-                        "security[/\\.]RolesAllowed",
-                        "security[/\\.]RunAs",
-                        "sql[/\\.]DataSourceDefinition"
+                        "security.DeclareRoles",
+                        "security.DenyAll",
+                        "security.PermitAll",
+                        "security.RolesAllowed",
+                        "security.RunAs",
+                        "sql.DataSourceDefinition"
+                );
+        static final List<String> TOMCAT = join(ANNOTATION_CLASSES, Arrays.asList(
+                        "ejb",
+                        "el",
+                        "mail",
+                        "persistence",
+                        "security.auth.message",
+                        "servlet",
+                        "transaction!.xa",
+                        "websocket"
                 ));
-        static final String EE = String.join("|",
-                Arrays.asList(
-                        "([/\\.](activation",
-                        "annotation[/\\.](" + ANNOTATION_CLASSES + ")",
+        static final List<String> EE = join(Collections.singletonList("activation"), ANNOTATION_CLASSES, Arrays.asList(
                         "batch",
                         "decorator",
                         "ejb",
@@ -93,27 +102,75 @@ public enum EESpecProfiles implements EESpecProfile {
                         "interceptor",
                         "inject",
                         "mail",
-                        "management[/\\.]j2ee",
+                        "management.j2ee",
                         "persistence",
                         "resource",
-                        "security[/\\.](auth[/\\.]message|enterprise|jacc)",
+                        "security.auth.message",
+                        "security.enterprise",
+                        "security.jacc",
                         "servlet",
-                        "transaction(?![/\\.]xa)",
+                        "transaction!.xa",
                         "validation",
                         "websocket",
-                        "ws[/\\.]rs",
-                        "xml[/\\.](bind|soap|ws)))"
+                        "ws.rs",
+                        "xml.bind",
+                        "xml.soap",
+                        "xml.ws"
                 ));
+
+        private static List<String> prefix(String prefix, String... names) {
+            List<String> result = new ArrayList<>();
+            for (String name : names) {
+                result.add(prefix + name);
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        @SafeVarargs
+        private static List<String> join(List<String>... lists) {
+            List<String> result = new ArrayList<>();
+            for (List<String> list : lists) {
+                result.addAll(list);
+            }
+            return Collections.unmodifiableList(result);
+        }
     }
 
     private String source;
     private String target;
-    private Pattern pattern;
+    private NamespaceMatcher matcher;
 
-    EESpecProfiles(String source, String target, String pattern) {
+    EESpecProfiles(String source, String target, List<String> packages) {
         this.source = source;
         this.target = target;
-        this.pattern = Pattern.compile(pattern);
+        this.matcher = new NamespaceMatcher(source, target, packages);
+    }
+
+    @Override
+    public String convert(String name) {
+        return matcher.convert(name);
+    }
+
+    @Override
+    public byte[] convert(byte[] bytes) {
+        return matcher.convert(bytes);
+    }
+
+    /**
+     * Convert a stream, holding at most a small fixed size window of it in
+     * memory.
+     *
+     * @param src the stream to convert
+     * @param dest the stream to write the converted content to
+     * @return {@code true} if anything was converted
+     * @throws IOException if an I/O error occurs
+     */
+    boolean convert(InputStream src, OutputStream dest) throws IOException {
+        return matcher.convert(src, dest);
+    }
+
+    NamespaceMatcher getMatcher() {
+        return matcher;
     }
 
     @Override
@@ -128,6 +185,6 @@ public enum EESpecProfiles implements EESpecProfile {
 
     @Override
     public Pattern getPattern() {
-        return pattern;
+        return matcher.getPattern();
     }
 }
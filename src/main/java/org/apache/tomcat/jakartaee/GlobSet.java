@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A set of file name patterns, as supported by {@link GlobMatcher}, compiled
+ * once so that a name can be matched against all of them without allocating.
+ * <p>
+ * Patterns are indexed by their literal prefix, the characters before the
+ * first wildcard, in a trie. Patterns starting with a wildcard are indexed by
+ * their literal suffix in a second trie, walked from the end of the name. A
+ * name is then only compared with the patterns found along the two walks,
+ * plus the few patterns that start and end with a wildcard.
+ */
+final class GlobSet {
+
+    private static final String[] NO_PATTERNS = new String[0];
+
+    private final boolean caseSensitive;
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private final String[] others;
+
+    /**
+     * @param patterns the patterns
+     * @param caseSensitive whether matching is case sensitive
+     */
+    GlobSet(Collection<String> patterns, boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        List<String> otherPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            int first = indexOfWildcard(pattern);
+            if (first != 0) {
+                int end = first < 0 ? pattern.length() : first;
+                Node node = prefixes;
+                for (int i = 0; i < end; i++) {
+                    node = node.getOrAddChild(normalize(pattern.charAt(i)));
+                }
+                node.addPattern(pattern);
+            } else {
+                int last = lastIndexOfWildcard(pattern);
+                if (last < pattern.length() - 1) {
+                    Node node = suffixes;
+                    for (int i = pattern.length() - 1; i > last; i--) {
+                        node = node.getOrAddChild(normalize(pattern.charAt(i)));
+                    }
+                    node.addPattern(pattern);
+                } else {
+                    otherPatterns.add(pattern);
+                }
+            }
+        }
+        others = otherPatterns.toArray(NO_PATTERNS);
+    }
+
+    /**
+     * Tests whether a region of a string matches any of the patterns.
+     *
+     * @param str the string
+     * @param start the start of the region
+     * @param end the end of the region
+     * @return {@code true} if the region matches at least one pattern
+     */
+    boolean matches(String str, int start, int end) {
+        Node node = prefixes;
+        for (int i = start; node != null; i++) {
+            if (matchesAny(node.patterns, str, start, end)) {
+                return true;
+            }
+            node = i < end ? node.getChild(normalize(str.charAt(i))) : null;
+        }
+        node = suffixes;
+        for (int i = end - 1; node != null; i--) {
+            if (matchesAny(node.patterns, str, start, end)) {
+                return true;
+            }
+            node = i >= start ? node.getChild(normalize(str.charAt(i))) : null;
+        }
+        return matchesAny(others, str, start, end);
+    }
+
+    private boolean matchesAny(String[] patterns, String str, int start, int end) {
+        for (String pattern : patterns) {
+            if (match(pattern, str, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Same semantics as GlobMatcher.match but on a region of the string and
+     * without copying it. On a mismatch, the last '*' absorbs one more
+     * character.
+     */
+    private boolean match(String pattern, String str, int start, int end) {
+        int patternLength = pattern.length();
+        int p = 0;
+        int s = start;
+        int starP = -1;
+        int starS = -1;
+        while (s < end) {
+            if (p < patternLength) {
+                char ch = pattern.charAt(p);
+                if (ch == '*') {
+                    starP = p++;
+                    starS = s;
+                    continue;
+                }
+                if (ch == '?' || normalize(ch) == normalize(str.charAt(s))) {
+                    p++;
+                    s++;
+                    continue;
+                }
+            }
+            if (starP < 0) {
+                return false;
+            }
+            p = starP + 1;
+            s = ++starS;
+        }
+        while (p < patternLength && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == patternLength;
+    }
+
+    private char normalize(char ch) {
+        return caseSensitive ? ch : Character.toUpperCase(ch);
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (isWildcard(pattern.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOfWildcard(String pattern) {
+        for (int i = pattern.length() - 1; i >= 0; i--) {
+            if (isWildcard(pattern.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWildcard(char ch) {
+        return ch == '*' || ch == '?';
+    }
+
+    /**
+     * A node of a trie, with the children sorted by character.
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private String[] patterns = NO_PATTERNS;
+
+        private Node getChild(char ch) {
+            int index = Arrays.binarySearch(keys, ch);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node getOrAddChild(char ch) {
+            int index = Arrays.binarySearch(keys, ch);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            Node child = new Node();
+            newKeys[index] = ch;
+            newChildren[index] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        private void addPattern(String pattern) {
+            patterns = Arrays.copyOf(patterns, patterns.length + 1);
+            patterns[patterns.length - 1] = pattern;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Cache storage using a simple HTTP blob store, allowing several machines to
+ * share converted archives. The store must support the following requests,
+ * relative to the base URL:
+ * <ul>
+ *   <li>{@code HEAD {key}} responding 200 with a {@code Content-Length} if the
+ *       entry exists and 404 otherwise</li>
+ *   <li>{@code GET {key}} responding with the content of the entry</li>
+ *   <li>{@code PUT {key}} storing the request body as the entry</li>
+ *   <li>{@code DELETE {key}} removing the entry</li>
+ *   <li>{@code DELETE} on the base URL removing all the entries</li>
+ * </ul>
+ * Lookups and stores are performed by a pool of background threads.
+ */
+public class HttpCacheStorage implements CacheStorage {
+
+    private static final Logger logger = Logger.getLogger(HttpCacheStorage.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(HttpCacheStorage.class);
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private final String baseUrl;
+    private final ExecutorService executor;
+    private int connectTimeout = 10000;
+    private int readTimeout = 60000;
+
+    /**
+     * Create a storage using the given base URL and the default number of
+     * background threads.
+     *
+     * @param baseUrl the base URL of the blob store
+     */
+    public HttpCacheStorage(URL baseUrl) {
+        this(baseUrl, DEFAULT_THREADS);
+    }
+
+    /**
+     * Create a storage using the given base URL.
+     *
+     * @param baseUrl the base URL of the blob store
+     * @param threads the number of background threads used for lookups and stores
+     */
+    public HttpCacheStorage(URL baseUrl, int threads) {
+        String url = baseUrl.toString();
+        this.baseUrl = url.endsWith("/") ? url : url + "/";
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "migration-cache-http-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Set the connect timeout.
+     * @param connectTimeout the connect timeout in milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Set the read timeout.
+     * @param readTimeout the read timeout in milliseconds
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public CompletableFuture<Long> lookup(String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpURLConnection connection = openConnection(baseUrl + key, "HEAD");
+                try {
+                    int status = connection.getResponseCode();
+                    if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                        return Long.valueOf(-1);
+                    }
+                    checkStatus(connection, status);
+                    return Long.valueOf(connection.getContentLengthLong());
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        HttpURLConnection connection = openConnection(baseUrl + key, "GET");
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new FileNotFoundException(baseUrl + key);
+            }
+            checkStatus(connection, status);
+            return connection.getInputStream();
+        } catch (IOException | RuntimeException e) {
+            // The connection is only left open for the caller to read the content
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String key, File content) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                HttpURLConnection connection = openConnection(baseUrl + key, "PUT");
+                try {
+                    connection.setDoOutput(true);
+                    connection.setFixedLengthStreamingMode(content.length());
+                    try (InputStream is = new FileInputStream(content);
+                            OutputStream os = connection.getOutputStream()) {
+                        IOUtils.copyLarge(is, os);
+                    }
+                    checkStatus(connection, connection.getResponseCode());
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (!content.delete()) {
+                    logger.log(Level.WARNING, sm.getString("cacheEntry.rollbackDeleteFailed", content));
+                }
+            }
+        }, executor);
+    }
+
+    @Override
+    public boolean remove(String key) throws IOException {
+        HttpURLConnection connection = openConnection(baseUrl + key, "DELETE");
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            checkStatus(connection, status);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The content of the blob store cannot be enumerated so this always
+     * returns an empty set.
+     */
+    @Override
+    public Set<String> keys() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void clear() throws IOException {
+        HttpURLConnection connection = openConnection(baseUrl, "DELETE");
+        try {
+            checkStatus(connection, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(readTimeout, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return HttpCacheStorage.class.getSimpleName() + '[' + baseUrl + ']';
+    }
+
+    private HttpURLConnection openConnection(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static void checkStatus(HttpURLConnection connection, int status) throws IOException {
+        if (status < 200 || status >= 300) {
+            throw new IOException(sm.getString("httpCacheStorage.badStatus", connection.getRequestMethod(),
+                    connection.getURL(), Integer.valueOf(status)));
+        }
+    }
+}
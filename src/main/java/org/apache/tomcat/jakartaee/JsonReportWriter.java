@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the {@link MigrationMetrics} of a run as a JSON document, for tools
+ * that track the migration of an application over time. Times are in
+ * milliseconds and sizes in bytes.
+ */
+final class JsonReportWriter {
+
+    private final Writer writer;
+    private int depth;
+    private boolean first = true;
+
+    private JsonReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write the report of a run.
+     *
+     * @param writer the writer, not closed
+     * @param source the source of the migration
+     * @param outputs the destinations of the migration, with the profile
+     *        used for each of them, the primary destination first
+     * @param converted whether anything was converted for any of the outputs
+     * @param metrics the metrics of the run
+     * @throws IOException if writing fails
+     */
+    static void write(Writer writer, File source, Map<File, EESpecProfile> outputs, boolean converted,
+            MigrationMetrics metrics) throws IOException {
+        JsonReportWriter json = new JsonReportWriter(writer);
+        json.beginObject(null);
+        json.value("source", source.getAbsolutePath());
+        json.beginArray("outputs");
+        for (Map.Entry<File, EESpecProfile> output : outputs.entrySet()) {
+            json.beginObject(null);
+            json.value("destination", output.getKey().getAbsolutePath());
+            json.value("profile", output.getValue().toString());
+            json.endObject();
+        }
+        json.endArray();
+        json.value("converted", converted);
+        json.value("elapsedTimeMillis", metrics.getElapsedTimeMillis());
+        json.value("bytesRead", metrics.getBytesRead());
+        json.value("bytesWritten", metrics.getBytesWritten());
+        json.value("archiveCount", metrics.getArchiveCount());
+        json.value("excludedCount", metrics.getExcludedCount());
+        json.value("cacheHits", metrics.getCacheHits());
+        json.value("cacheMisses", metrics.getCacheMisses());
+        json.value("deduplicatedArchiveCount", metrics.getDeduplicatedArchiveCount());
+        json.value("cleanArchiveCount", metrics.getCleanArchiveCount());
+
+        json.beginObject("stageTimeMillis");
+        for (MigrationMetrics.Stage stage : MigrationMetrics.Stage.values()) {
+            json.millis(stage.name(), metrics.getTimeNanos(stage));
+        }
+        json.endObject();
+
+        json.beginObject("memory");
+        json.value("peakBufferedBytes", metrics.getPeakBufferedBytes());
+        json.value("peakHeapUsedBytes", metrics.getPeakHeapUsedBytes());
+        json.value("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        json.endObject();
+
+        json.beginArray("converters");
+        for (Map.Entry<String, MigrationMetrics.ConverterMetrics> entry : metrics.getConverterMetrics().entrySet()) {
+            MigrationMetrics.ConverterMetrics converter = entry.getValue();
+            json.beginObject(null);
+            json.value("converter", entry.getKey());
+            json.value("entryCount", converter.getEntryCount());
+            json.value("convertedCount", converter.getConvertedCount());
+            json.value("bytesIn", converter.getBytesIn());
+            json.value("bytesOut", converter.getBytesOut());
+            json.millis("timeMillis", converter.getTimeNanos());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.beginArray("archives");
+        for (MigrationMetrics.ArchiveMetrics archive : metrics.getArchiveMetrics()) {
+            json.beginObject(null);
+            json.value("path", archive.getPath());
+            json.value("strategy", archive.getStrategy().name());
+            json.value("converted", archive.isConverted());
+            json.millis("timeMillis", archive.getTimeNanos());
+            json.value("entryCount", archive.getEntryCount());
+            json.value("convertedEntryCount", archive.getConvertedEntryCount());
+            json.value("bytesIn", archive.getBytesIn());
+            json.value("bytesOut", archive.getBytesOut());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.beginArray("slowestEntries");
+        for (MigrationMetrics.EntryMetrics entry : metrics.getSlowestEntries()) {
+            json.beginObject(null);
+            json.value("path", entry.getPath());
+            json.value("converter", entry.getConverter());
+            json.value("converted", entry.isConverted());
+            json.millis("timeMillis", entry.getTimeNanos());
+            json.value("bytesIn", entry.getBytesIn());
+            json.value("bytesOut", entry.getBytesOut());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.endObject();
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private void beginObject(String name) throws IOException {
+        begin(name, '{');
+    }
+
+    private void endObject() throws IOException {
+        end('}');
+    }
+
+    private void beginArray(String name) throws IOException {
+        begin(name, '[');
+    }
+
+    private void endArray() throws IOException {
+        end(']');
+    }
+
+    private void begin(String name, char bracket) throws IOException {
+        name(name);
+        writer.write(bracket);
+        depth++;
+        first = true;
+    }
+
+    private void end(char bracket) throws IOException {
+        depth--;
+        if (!first) {
+            newLine();
+        }
+        writer.write(bracket);
+        first = false;
+    }
+
+    private void value(String name, String value) throws IOException {
+        name(name);
+        string(value);
+    }
+
+    private void value(String name, long value) throws IOException {
+        name(name);
+        writer.write(Long.toString(value));
+    }
+
+    private void value(String name, boolean value) throws IOException {
+        name(name);
+        writer.write(Boolean.toString(value));
+    }
+
+    private void millis(String name, long nanos) throws IOException {
+        name(name);
+        writer.write(String.format(Locale.ROOT, "%.3f",
+                Double.valueOf((double) nanos / TimeUnit.MILLISECONDS.toNanos(1))));
+    }
+
+    /*
+     * Start a value, with the name of the member if inside an object.
+     */
+    private void name(String name) throws IOException {
+        if (depth > 0) {
+            if (!first) {
+                writer.write(',');
+            }
+            newLine();
+        }
+        first = false;
+        if (name != null) {
+            string(name);
+            writer.write(": ");
+        }
+    }
+
+    private void newLine() throws IOException {
+        writer.write('\n');
+        for (int i = 0; i < depth; i++) {
+            writer.write("  ");
+        }
+    }
+
+    private void string(String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format(Locale.ROOT, "\\u%04x", Integer.valueOf(c)));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache storage using a local directory. Entries are stored as
+ * {@code {dir}/{XX}/{key}.jar} where {@code XX} are the first two characters
+ * of the key.
+ * <p>
+ * The keys and sizes of the stored entries are tracked in an in-memory index
+ * that is persisted as an append-only journal in {@code {dir}/cache-index.txt}:
+ * <pre>
+ * # Migration cache index - key|size (a negative size removes the key)
+ * {key}|{size}
+ * {key}|-1
+ * </pre>
+ * The journal is read once, on first use, so that starting the cache does not
+ * need to list the directory and lookups do not need any file system calls.
+ * It is then kept open and each store or removal appends a single line. If
+ * appending fails, the whole journal is rewritten from the index by the next
+ * append or when the storage is closed so that no entry is lost from it.
+ * Entries are verified lazily: if the file for an indexed entry has been
+ * removed by something else, the entry is dropped from the index when an
+ * attempt is made to open it. If the journal does not exist, for example for a
+ * cache created by a previous version, it is rebuilt once by scanning the
+ * directory and the shard directories are created.
+ */
+public class LocalDirectoryCacheStorage implements CacheStorage {
+
+    private static final Logger logger = Logger.getLogger(LocalDirectoryCacheStorage.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(LocalDirectoryCacheStorage.class);
+
+    private static final String INDEX_FILE = "cache-index.txt";
+    private static final String INDEX_HEADER = "# Migration cache index - key|size (a negative size removes the key)\n";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /*
+     * When the journal holds more than this many lines per live entry, it is
+     * compacted as it is loaded.
+     */
+    private static final int COMPACT_RATIO = 4;
+
+    private final File dir;
+    private final File indexFile;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final Object journalLock = new Object();
+    private volatile boolean loaded = false;
+    /*
+     * Guarded by the journal lock.
+     */
+    private Writer journal;
+    private boolean journalDirty = false;
+
+    /**
+     * Create a storage using the given directory.
+     *
+     * @param dir the directory to store entries in
+     */
+    public LocalDirectoryCacheStorage(File dir) {
+        this.dir = dir;
+        this.indexFile = new File(dir, INDEX_FILE);
+    }
+
+    @Override
+    public CompletableFuture<Long> lookup(String key) {
+        Long size = getIndex().get(key);
+        return CompletableFuture.completedFuture(size == null ? Long.valueOf(-1) : size);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return new FileInputStream(getFile(key));
+        } catch (FileNotFoundException e) {
+            // The entry has been removed behind our back
+            if (getIndex().remove(key) != null) {
+                logger.log(Level.FINE, sm.getString("localDirectoryCacheStorage.missing", key));
+                appendToJournal(key, -1);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String key, File content) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Map<String, Long> index = getIndex();
+        File cacheFile = getFile(key);
+        long size = content.length();
+        // Move file to final cache location (atomic if possible)
+        try {
+            try {
+                move(content, cacheFile);
+            } catch (NoSuchFileException e) {
+                // The shard directory has been removed, create it and try again
+                File parentDir = cacheFile.getParentFile();
+                if (!parentDir.mkdirs() && !parentDir.isDirectory()) {
+                    deleteContent(content);
+                    result.completeExceptionally(
+                            new IOException(sm.getString("cache.cannotCreate", parentDir.getAbsolutePath())));
+                    return result;
+                }
+                move(content, cacheFile);
+            }
+        } catch (Exception e) {
+            deleteContent(content);
+            result.completeExceptionally(
+                    new IOException(sm.getString("cacheEntry.tempRenameFail", content, cacheFile), e));
+            return result;
+        }
+        index.put(key, Long.valueOf(size));
+        appendToJournal(key, size);
+        result.complete(null);
+        return result;
+    }
+
+    @Override
+    public boolean remove(String key) throws IOException {
+        Map<String, Long> index = getIndex();
+        boolean removed = Files.deleteIfExists(getFile(key).toPath());
+        if (index.remove(key) != null) {
+            appendToJournal(key, -1);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new HashSet<>(getIndex().keySet());
+    }
+
+    @Override
+    public void clear() throws IOException {
+        synchronized (journalLock) {
+            File[] subdirs = dir.listFiles();
+            if (subdirs != null) {
+                for (File subdir : subdirs) {
+                    if (subdir.isDirectory()) {
+                        deleteDirectory(subdir);
+                    }
+                }
+            }
+            index.clear();
+            createShardDirectories();
+            writeJournal();
+            loaded = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (journalLock) {
+            if (journalDirty) {
+                writeJournal();
+            }
+            closeJournal();
+        }
+    }
+
+    /**
+     * Get the file used to store the entry for a given key.
+     *
+     * @param key the key
+     * @return the file
+     */
+    File getFile(String key) {
+        // Use subdirectories based on first 2 chars of the key to avoid too many files in one directory
+        return new File(new File(dir, key.substring(0, 2)), key + ".jar");
+    }
+
+    private Map<String, Long> getIndex() {
+        if (!loaded) {
+            synchronized (journalLock) {
+                if (!loaded) {
+                    loadIndex();
+                    loaded = true;
+                }
+            }
+        }
+        return index;
+    }
+
+    /*
+     * Must be called holding the journal lock.
+     */
+    private void loadIndex() {
+        if (indexFile.isFile()) {
+            int lineCount = 0;
+            try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty() || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    lineCount++;
+                    int separator = line.indexOf('|');
+                    try {
+                        if (separator < 1) {
+                            throw new NumberFormatException();
+                        }
+                        String key = line.substring(0, separator);
+                        long size = Long.parseLong(line.substring(separator + 1));
+                        if (size < 0) {
+                            index.remove(key);
+                        } else {
+                            index.put(key, Long.valueOf(size));
+                        }
+                    } catch (NumberFormatException e) {
+                        logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.invalidLine", line));
+                    }
+                }
+                logger.log(Level.FINE, sm.getString("localDirectoryCacheStorage.loaded",
+                        Integer.valueOf(index.size()), indexFile.getAbsolutePath()));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.loadError",
+                        indexFile.getAbsolutePath()), e);
+                rebuildIndex();
+                return;
+            }
+            if (lineCount > COMPACT_RATIO * (index.size() + 1)) {
+                try {
+                    writeJournal();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.writeError",
+                            indexFile.getAbsolutePath()), e);
+                }
+            }
+        } else {
+            rebuildIndex();
+        }
+    }
+
+    /*
+     * Must be called holding the journal lock.
+     */
+    private void rebuildIndex() {
+        index.clear();
+        File[] subdirs = dir.listFiles();
+        if (subdirs != null) {
+            for (File subdir : subdirs) {
+                if (subdir.isDirectory()) {
+                    File[] files = subdir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            if (file.isFile() && file.getName().endsWith(".jar")) {
+                                index.put(file.getName().substring(0, file.getName().length() - 4),
+                                        Long.valueOf(file.length()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        logger.log(Level.FINE, sm.getString("localDirectoryCacheStorage.rebuilt",
+                Integer.valueOf(index.size()), dir.getAbsolutePath()));
+        if (!dir.isDirectory()) {
+            // Nothing to persist until the cache directory has been created
+            return;
+        }
+        createShardDirectories();
+        try {
+            writeJournal();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.writeError",
+                    indexFile.getAbsolutePath()), e);
+        }
+    }
+
+    /*
+     * Create all the shard directories up front so that storing an entry does
+     * not need to check for the directory.
+     */
+    private void createShardDirectories() {
+        for (int i = 0; i < 256; i++) {
+            File shard = new File(dir, new String(new char[] { HEX[i >> 4], HEX[i & 0xF] }));
+            if (!shard.mkdir() && !shard.isDirectory()) {
+                logger.log(Level.WARNING, sm.getString("cache.cannotCreate", shard.getAbsolutePath()));
+            }
+        }
+    }
+
+    /*
+     * Write the current content of the index as a new journal. Must be called
+     * holding the journal lock.
+     */
+    private void writeJournal() throws IOException {
+        closeJournal();
+        File tempFile = new File(dir, INDEX_FILE + ".tmp");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            writer.write(INDEX_HEADER);
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('|');
+                writer.write(entry.getValue().toString());
+                writer.write('\n');
+            }
+        }
+        move(tempFile, indexFile);
+        journalDirty = false;
+    }
+
+    private void appendToJournal(String key, long size) {
+        synchronized (journalLock) {
+            try {
+                if (journalDirty) {
+                    // A previous append failed, the index already holds this change
+                    writeJournal();
+                    return;
+                }
+                if (journal == null) {
+                    boolean newFile = !indexFile.exists();
+                    journal = new OutputStreamWriter(new FileOutputStream(indexFile, true), StandardCharsets.UTF_8);
+                    if (newFile) {
+                        journal.write(INDEX_HEADER);
+                    }
+                }
+                journal.write(key + '|' + size + '\n');
+                journal.flush();
+            } catch (IOException e) {
+                // Rewrite the journal from the index on the next append or on close
+                journalDirty = true;
+                closeJournal();
+                logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.writeError",
+                        indexFile.getAbsolutePath()), e);
+            }
+        }
+    }
+
+    /*
+     * Must be called holding the journal lock.
+     */
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                journalDirty = true;
+                logger.log(Level.WARNING, sm.getString("localDirectoryCacheStorage.writeError",
+                        indexFile.getAbsolutePath()), e);
+            }
+            journal = null;
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteDirectory(File dir) throws IOException {
+        if (dir.isDirectory()) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    deleteDirectory(file);
+                }
+            }
+        }
+        if (!Files.deleteIfExists(dir.toPath()) && dir.exists()) {
+            throw new IOException(sm.getString("cache.deleteFailed", dir.getAbsolutePath()));
+        }
+    }
+
+    private static void deleteContent(File content) {
+        if (content.exists() && !content.delete()) {
+            logger.log(Level.WARNING, sm.getString("cacheEntry.rollbackDeleteFailed", content));
+        }
+    }
+}
@@ -16,17 +16,16 @@
  */
 package org.apache.tomcat.jakartaee;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Locale;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -39,11 +38,33 @@ import org.osgi.framework.Constants;
 
 /**
  * Updates Manifests.
+ * <p>
+ * The manifest is rewritten line by line rather than parsed into a
+ * {@link java.util.jar.Manifest} and written out again, so that only the
+ * headers that change are reformatted and everything else, including the
+ * order of the sections, the line endings and the line wrapping, is kept
+ * byte for byte. Manifests that cannot need any change are detected with a
+ * quick scan of the bytes and copied as is.
  */
 public class ManifestConverter implements Converter {
 
     private static final String JAKARTA_SERVLET = "jakarta.servlet";
+    private static final String NESTED_MANIFEST_NAME = "/" + JarFile.MANIFEST_NAME;
     private static final Pattern SERVLET_PATTERN = Pattern.compile("jakarta.servlet([^,]*);version=\"(.*?)\"");
+    private static final String DIGEST_SUFFIX = "-Digest";
+    private static final String IMPLEMENTATION_VERSION = Attributes.Name.IMPLEMENTATION_VERSION.toString();
+    private static final String SIGNATURE_VERSION = Attributes.Name.SIGNATURE_VERSION.toString();
+    private static final int MAX_LINE_LENGTH = 72;
+    private static final byte[] DEFAULT_LINE_END = { '\r', '\n' };
+    /*
+     * Lower case markers for everything, apart from the profile's source
+     * namespace, that can cause a change to the manifest.
+     */
+    private static final byte[][] MARKERS = {
+            toLowerCaseBytes(IMPLEMENTATION_VERSION),
+            toLowerCaseBytes(SIGNATURE_VERSION),
+            toLowerCaseBytes(DIGEST_SUFFIX),
+            toLowerCaseBytes(JAKARTA_SERVLET) };
     private static final Logger logger = Logger.getLogger(ManifestConverter.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(ManifestConverter.class);
 
@@ -55,7 +76,7 @@ public class ManifestConverter implements Converter {
 
     @Override
     public boolean accepts(String filename) {
-        if (filename.equals(JarFile.MANIFEST_NAME) || filename.endsWith("/" + JarFile.MANIFEST_NAME)) {
+        if (filename.equals(JarFile.MANIFEST_NAME) || filename.endsWith(NESTED_MANIFEST_NAME)) {
             return true;
         }
 
@@ -66,105 +87,101 @@ public class ManifestConverter implements Converter {
     @Override
     public boolean convert(String path, InputStream src, OutputStream dest, EESpecProfile profile) throws IOException {
         byte[] srcBytes = IOUtils.toByteArray(src);
-        Manifest srcManifest = new Manifest(new ByteArrayInputStream(srcBytes));
-        Manifest destManifest = new Manifest(srcManifest);
+        if (!mayChange(srcBytes, profile)) {
+            IOUtils.writeChunked(srcBytes, dest);
+            logger.log(Level.FINEST, sm.getString("manifestConverter.noConversion", path));
+            return false;
+        }
+
+        ManifestRewriter rewriter = new ManifestRewriter(path, srcBytes, profile);
+        rewriter.rewrite();
 
         // Only consider profile conversions, allowing Migration.hasConverted to be true
         // only when there are actual
         // conversions made
-        boolean converted = updateValues(destManifest, profile);
-        removeSignatures(destManifest);
-
-        if (srcManifest.equals(destManifest)) {
+        if (rewriter.changed) {
+            rewriter.out.writeTo(dest);
+            String key = rewriter.converted ? "manifestConverter.converted" : "manifestConverter.updated";
+            logger.log(Level.FINE, sm.getString(key, path));
+        } else {
             IOUtils.writeChunked(srcBytes, dest);
             logger.log(Level.FINEST, sm.getString("manifestConverter.noConversion", path));
-        } else {
-            destManifest.write(dest);
-            String key = converted ? "manifestConverter.converted" : "manifestConverter.updated";
-            logger.log(Level.FINE, sm.getString(key, path));
         }
 
-        return converted;
+        return rewriter.converted;
     }
 
-    private void removeSignatures(Manifest manifest) {
-        manifest.getMainAttributes().remove(Attributes.Name.SIGNATURE_VERSION);
-        List<String> signatureEntries = new ArrayList<>();
-        Map<String, Attributes> manifestAttributeEntries = manifest.getEntries();
-        for (Entry<String, Attributes> entry : manifestAttributeEntries.entrySet()) {
-            if (isCryptoSignatureEntry(entry.getValue())) {
-                String entryName = entry.getKey();
-                signatureEntries.add(entryName);
-                logger.log(Level.FINE, sm.getString("manifestConverter.removeSignature", entryName));
+    /*
+     * Conservative: true unless the manifest certainly does not change.
+     */
+    private static boolean mayChange(byte[] srcBytes, EESpecProfile profile) {
+        // Names may be split across continuation lines
+        byte[] bytes = unfold(srcBytes);
+        if (profile instanceof EESpecProfiles) {
+            if (((EESpecProfiles) profile).getMatcher().containsMatch(bytes, 0, bytes.length)) {
+                return true;
             }
+        } else if (profile.convert(bytes) != bytes) {
+            // Object comparison is deliberate
+            return true;
         }
-
-        for (String entry : signatureEntries) {
-            manifestAttributeEntries.remove(entry);
-        }
-    }
-
-    private boolean isCryptoSignatureEntry(Attributes attributes) {
-        for (Object attributeKey : attributes.keySet()) {
-            if (attributeKey.toString().endsWith("-Digest")) {
+        for (byte[] marker : MARKERS) {
+            if (containsIgnoreCase(bytes, marker)) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean updateValues(Manifest manifest, EESpecProfile profile) {
-        boolean converted = updateValues(manifest.getMainAttributes(), profile);
-        for (Attributes attributes : manifest.getEntries().values()) {
-            converted = converted | updateValues(attributes, profile);
-        }
-        return converted;
-    }
-
-    private boolean updateValues(Attributes attributes, EESpecProfile profile) {
-        boolean converted = false;
-        // Update version info
-        if (attributes.containsKey(Attributes.Name.IMPLEMENTATION_VERSION)) {
-            String currentVersion = (String) attributes.get(Attributes.Name.IMPLEMENTATION_VERSION);
-            String migrationSuffix = "-" + Info.getVersion();
-            if (!currentVersion.endsWith(migrationSuffix)) {
-                String newValue = currentVersion + migrationSuffix;
-                attributes.put(Attributes.Name.IMPLEMENTATION_VERSION, newValue);
-                logger.log(Level.FINE, sm.getString("manifestConverter.updatedVersion", newValue));
-            }
-            // Purposefully avoid setting result
-        }
-        // Update package names in values
-        for (Entry<Object, Object> entry : attributes.entrySet()) {
-            Object value = entry.getValue();
-            if (!(value instanceof String)) {
+    /*
+     * Remove each line end that is followed by a single space, joining the
+     * continuation lines. Returns the same array if there are none.
+     */
+    private static byte[] unfold(byte[] bytes) {
+        ByteArrayOutputStream unfolded = null;
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+            if (b != '\r' && b != '\n') {
                 continue;
             }
-            String newValue = profile.convert((String) value);
-            String header = entry.getKey().toString();
-            try {
-                // Need to be careful with OSGI headers.
-                // Specifically, Export-Package cannot specify a version range.
-                // There may be other weird things as well (like directives that have
-                // jakarta.servlet packages).
-                if (Constants.IMPORT_PACKAGE.equals(header)) {
-                    newValue = processImportPackage(newValue);
-                } else if (Constants.EXPORT_PACKAGE.equals(header)) {
-                    newValue = processExportPackage(newValue);
-                } else {
-                    newValue = replaceVersion(newValue);
+            int lineEnd = b == '\r' && i + 1 < bytes.length && bytes[i + 1] == '\n' ? 2 : 1;
+            if (i + lineEnd < bytes.length && bytes[i + lineEnd] == ' ') {
+                if (unfolded == null) {
+                    unfolded = new ByteArrayOutputStream(bytes.length);
                 }
-            } catch (BundleException e) {
-                newValue = replaceVersion(newValue, !Constants.EXPORT_PACKAGE.equals(header));
+                unfolded.write(bytes, start, i - start);
+                start = i + lineEnd + 1;
             }
+            i += lineEnd - 1;
+        }
+        if (unfolded == null) {
+            return bytes;
+        }
+        unfolded.write(bytes, start, bytes.length - start);
+        return unfolded.toByteArray();
+    }
 
-            // Object comparison is deliberate
-            if (!newValue.equals(entry.getValue())) {
-                entry.setValue(newValue);
-                converted = true;
+    private static boolean containsIgnoreCase(byte[] bytes, byte[] lowerCaseMarker) {
+        int last = bytes.length - lowerCaseMarker.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < lowerCaseMarker.length && toLowerCase(bytes[i + j]) == lowerCaseMarker[j]) {
+                j++;
+            }
+            if (j == lowerCaseMarker.length) {
+                return true;
             }
         }
-        return converted;
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static byte[] toLowerCaseBytes(String s) {
+        return s.toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.US_ASCII);
     }
 
     private String processExportPackage(String value) throws BundleException {
@@ -218,4 +235,234 @@ public class ManifestConverter implements Converter {
         }
         return entryValue;
     }
+
+    /**
+     * Converts the value of a header.
+     */
+    private String convertValue(String header, String value, EESpecProfile profile) {
+        String newValue = profile.convert(value);
+        // Only versions of the Servlet API packages are updated
+        if (!newValue.contains(JAKARTA_SERVLET)) {
+            return newValue;
+        }
+        try {
+            // Need to be careful with OSGI headers.
+            // Specifically, Export-Package cannot specify a version range.
+            // There may be other weird things as well (like directives that have
+            // jakarta.servlet packages).
+            if (Constants.IMPORT_PACKAGE.equals(header)) {
+                newValue = processImportPackage(newValue);
+            } else if (Constants.EXPORT_PACKAGE.equals(header)) {
+                newValue = processExportPackage(newValue);
+            } else {
+                newValue = replaceVersion(newValue);
+            }
+        } catch (BundleException e) {
+            newValue = replaceVersion(newValue, !Constants.EXPORT_PACKAGE.equals(header));
+        }
+        return newValue;
+    }
+
+    /**
+     * A header, possibly spanning several lines.
+     */
+    private static final class Header {
+        private final int start;
+        private final int firstLineEnd;
+        private int end;
+        private String name;
+        private int valueStart;
+
+        private Header(int start, int firstLineEnd, int end) {
+            this.start = start;
+            this.firstLineEnd = firstLineEnd;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Rewrites the lines of a manifest, one section at a time.
+     */
+    private final class ManifestRewriter {
+        private final String path;
+        private final byte[] bytes;
+        private final EESpecProfile profile;
+        private final ByteArrayOutputStream out;
+        private byte[] defaultLineEnd;
+        private boolean mainSection = true;
+        private boolean converted;
+        private boolean changed;
+
+        private ManifestRewriter(String path, byte[] bytes, EESpecProfile profile) {
+            this.path = path;
+            this.bytes = bytes;
+            this.profile = profile;
+            this.out = new ByteArrayOutputStream(bytes.length + 64);
+        }
+
+        private void rewrite() throws IOException {
+            List<Header> section = new ArrayList<>();
+            int pos = 0;
+            while (pos < bytes.length) {
+                int lineEnd = pos;
+                while (lineEnd < bytes.length && bytes[lineEnd] != '\r' && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd;
+                if (next < bytes.length && bytes[next] == '\r') {
+                    next++;
+                }
+                if (next < bytes.length && bytes[next] == '\n') {
+                    next++;
+                }
+                if (defaultLineEnd == null && next > lineEnd) {
+                    defaultLineEnd = copyOfRange(lineEnd, next);
+                }
+
+                if (lineEnd == pos) {
+                    // A blank line ends the section
+                    boolean kept = section.isEmpty() || writeSection(section);
+                    section.clear();
+                    mainSection = false;
+                    if (kept) {
+                        out.write(bytes, pos, next - pos);
+                    }
+                } else if (bytes[pos] == ' ') {
+                    if (section.isEmpty()) {
+                        throw new IOException(sm.getString("manifestConverter.invalidLine", path,
+                                new String(bytes, pos, lineEnd - pos, StandardCharsets.UTF_8)));
+                    }
+                    section.get(section.size() - 1).end = next;
+                } else {
+                    section.add(new Header(pos, lineEnd, next));
+                }
+                pos = next;
+            }
+            if (!section.isEmpty()) {
+                writeSection(section);
+            }
+        }
+
+        /*
+         * Returns false if the section was dropped.
+         */
+        private boolean writeSection(List<Header> section) throws IOException {
+            for (Header header : section) {
+                parseName(header);
+            }
+            if (!mainSection) {
+                for (Header header : section) {
+                    if (header.name.endsWith(DIGEST_SUFFIX)) {
+                        logger.log(Level.FINE, sm.getString("manifestConverter.removeSignature",
+                                getValue(section.get(0))));
+                        changed = true;
+                        return false;
+                    }
+                }
+            }
+            for (Header header : section) {
+                if (mainSection && header.name.equalsIgnoreCase(SIGNATURE_VERSION)) {
+                    changed = true;
+                    continue;
+                }
+                String value = getValue(header);
+                String newValue = value;
+                if (header.name.equalsIgnoreCase(IMPLEMENTATION_VERSION)) {
+                    String migrationSuffix = "-" + Info.getVersion();
+                    if (!value.endsWith(migrationSuffix)) {
+                        newValue = value + migrationSuffix;
+                        logger.log(Level.FINE, sm.getString("manifestConverter.updatedVersion", newValue));
+                    }
+                    // Purposefully avoid setting converted
+                }
+                String convertedValue = convertValue(header.name, newValue, profile);
+                if (!convertedValue.equals(newValue)) {
+                    converted = true;
+                }
+                if (convertedValue.equals(value)) {
+                    out.write(bytes, header.start, header.end - header.start);
+                } else {
+                    writeHeader(header, convertedValue);
+                    changed = true;
+                }
+            }
+            return true;
+        }
+
+        private void parseName(Header header) throws IOException {
+            int colon = header.start;
+            while (colon < header.firstLineEnd && bytes[colon] != ':') {
+                colon++;
+            }
+            if (colon == header.start || colon + 1 >= header.firstLineEnd || bytes[colon + 1] != ' ') {
+                throw new IOException(sm.getString("manifestConverter.invalidLine", path,
+                        new String(bytes, header.start, header.firstLineEnd - header.start, StandardCharsets.UTF_8)));
+            }
+            header.name = new String(bytes, header.start, colon - header.start, StandardCharsets.UTF_8);
+            header.valueStart = colon + 2;
+        }
+
+        /*
+         * The value is decoded once all the lines are joined, since a line
+         * may end in the middle of a multi-byte character.
+         */
+        private String getValue(Header header) {
+            ByteArrayOutputStream value = new ByteArrayOutputStream(header.end - header.valueStart);
+            value.write(bytes, header.valueStart, header.firstLineEnd - header.valueStart);
+            int pos = header.firstLineEnd;
+            while (pos < header.end) {
+                // Skip the line end and the leading space of the continuation
+                while (pos < header.end && (bytes[pos] == '\r' || bytes[pos] == '\n')) {
+                    pos++;
+                }
+                if (pos == header.end) {
+                    break;
+                }
+                pos++;
+                int lineEnd = pos;
+                while (lineEnd < header.end && bytes[lineEnd] != '\r' && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                value.write(bytes, pos, lineEnd - pos);
+                pos = lineEnd;
+            }
+            return new String(value.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        /*
+         * Lines are wrapped at 72 bytes, as for Manifest.write, without
+         * splitting multi-byte characters.
+         */
+        private void writeHeader(Header header, String value) {
+            byte[] lineEnd = defaultLineEnd == null ? DEFAULT_LINE_END : defaultLineEnd;
+            byte[] line = (header.name + ": " + value).getBytes(StandardCharsets.UTF_8);
+            int pos = 0;
+            int max = MAX_LINE_LENGTH;
+            while (line.length - pos > max) {
+                int end = pos + max;
+                while ((line[end] & 0xC0) == 0x80) {
+                    end--;
+                }
+                out.write(line, pos, end - pos);
+                out.write(lineEnd, 0, lineEnd.length);
+                out.write(' ');
+                pos = end;
+                // Allow for the leading space
+                max = MAX_LINE_LENGTH - 1;
+            }
+            out.write(line, pos, line.length - pos);
+            // Keep the original end of the header, including none at the end of the file
+            int contentEnd = header.end;
+            while (contentEnd > header.start && (bytes[contentEnd - 1] == '\r' || bytes[contentEnd - 1] == '\n')) {
+                contentEnd--;
+            }
+            out.write(bytes, contentEnd, header.end - contentEnd);
+        }
+
+        private byte[] copyOfRange(int from, int to) {
+            byte[] result = new byte[to - from];
+            System.arraycopy(bytes, from, result, 0, result.length);
+            return result;
+        }
+    }
 }
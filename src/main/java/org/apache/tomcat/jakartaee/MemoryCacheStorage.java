@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache storage holding the entries in memory. The entries are lost when the
+ * JVM exits, so this is mainly useful for tests and for long running
+ * processes that perform many migrations.
+ */
+public class MemoryCacheStorage implements CacheStorage {
+
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty in-memory storage.
+     */
+    public MemoryCacheStorage() {
+    }
+
+    @Override
+    public CompletableFuture<Long> lookup(String key) {
+        byte[] content = entries.get(key);
+        return CompletableFuture.completedFuture(Long.valueOf(content == null ? -1 : content.length));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        byte[] content = entries.get(key);
+        if (content == null) {
+            throw new FileNotFoundException(key);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String key, File content) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            entries.put(key, Files.readAllBytes(content.toPath()));
+            result.complete(null);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+        } finally {
+            content.delete();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return entries.remove(key) != null;
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+}
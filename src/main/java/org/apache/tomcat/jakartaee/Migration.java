@@ -20,19 +20,38 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -43,9 +62,11 @@ import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.archivers.zip.ZipShort;
 import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 
 /**
  * The main class for the Migration tool.
@@ -54,12 +75,30 @@ public class Migration {
 
     private static final Logger logger = Logger.getLogger(Migration.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(Migration.class);
+    private static final MigrationEvents events = MigrationEvents.get();
 
     private static final Set<String> DEFAULT_EXCLUDES = new HashSet<>();
 
     private static final long TEMP_FILE_THRESHOLD = 10L * 1024 * 1024;
     private static final ZipShort EXTRA_FIELD_ZIP64 = new ZipShort(1);
     private static final long ZIP64_THRESHOLD_LENGTH = 0xFFFFFFFFL;
+    /*
+     * Nested archives larger than this are streamed rather than buffered to
+     * detect duplicates, unless they have to be buffered for the cache anyway.
+     */
+    private static final long DEDUPLICATION_THRESHOLD = TEMP_FILE_THRESHOLD;
+    /*
+     * Upper bound for the converted nested archives held in memory during a
+     * run so that later identical archives can reuse them.
+     */
+    private static final long MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+    /*
+     * Entries converted for several profiles are read once. Larger entries
+     * are written to a temporary file rather than held in memory.
+     */
+    private static final long MULTI_PROFILE_BUFFER_THRESHOLD = 1024L * 1024;
+    private static final long DEFAULT_PROGRESS_INTERVAL = 5000;
+    private static final GlobSet DEFAULT_EXCLUDE_SET;
 
     static {
         // Apache Commons
@@ -95,6 +134,8 @@ public class Migration {
         DEFAULT_EXCLUDES.add("spring-expression-*.jar");
         DEFAULT_EXCLUDES.add("spring-security-crypto-*.jar");
         DEFAULT_EXCLUDES.add("spring-security-rsa-*.jar");
+
+        DEFAULT_EXCLUDE_SET = new GlobSet(DEFAULT_EXCLUDES, true);
     }
 
     private EESpecProfile profile = EESpecProfiles.TOMCAT;
@@ -106,23 +147,40 @@ public class Migration {
     private State state = State.NOT_STARTED;
     private File source;
     private File destination;
-    private final List<Converter> converters;
+    private final ConverterRegistry converters;
     private final Set<String> excludes = new HashSet<>();
+    private GlobSet excludeSet;
     private MigrationCache cache;
+    private CleanArchiveRegistry cleanArchives;
+    private final Map<String, ConvertedArchive> convertedArchives = new HashMap<>();
+    private long retainedArchiveBytes;
+    private MigrationMetrics metrics = new MigrationMetrics();
+    private final List<ProfileOutput> additionalOutputs = new ArrayList<>();
+    private ProfileOutput[] outputs = new ProfileOutput[0];
+    private boolean dryRun;
+    private MigrationReport report;
+    private MigrationListener listener;
+    private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private ProgressTracker progress = new ProgressTracker(null, 0, 0);
 
     /**
      * Construct a new migration tool instance.
      */
     public Migration() {
-        // Initialise the converters
-        converters = new ArrayList<>();
+        // Initialise the converters, starting with any that are provided
+        List<Converter> converterList = new ArrayList<>();
+        for (Converter converter : ServiceLoader.load(Converter.class, Migration.class.getClassLoader())) {
+            converterList.add(converter);
+        }
 
-        converters.add(new TextConverter());
-        converters.add(new ClassConverter());
-        converters.add(new ManifestConverter());
+        converterList.add(new TextConverter());
+        converterList.add(new ClassConverter());
+        converterList.add(new ManifestConverter());
 
         // Final converter is the pass-through converter
-        converters.add(new PassThroughConverter());
+        converterList.add(new PassThroughConverter());
+
+        converters = new ConverterRegistry(converterList);
     }
 
     /**
@@ -161,6 +219,20 @@ public class Migration {
         return profile;
     }
 
+    /**
+     * Add a profile for which the same run writes an additional output. The
+     * source is read, decompressed and parsed once and converted for the
+     * profile set with {@link #setEESpecProfile(EESpecProfile)}, written to
+     * the destination, as well as for each additional profile, written to its
+     * own destination.
+     *
+     * @param profile the Jakarta EE specification profile
+     * @param destination the destination of the output for the profile
+     */
+    public void addAdditionalProfile(EESpecProfile profile, File destination) {
+        additionalOutputs.add(new ProfileOutput(profile, destination));
+    }
+
     /**
      * Enable the default exclusion list for the tool.
      * @param enableDefaultExcludes true to enable the default excludes
@@ -185,6 +257,47 @@ public class Migration {
         this.zipInMemory = zipInMemory;
     }
 
+    /**
+     * Only scan the source and report what a migration would change, without
+     * writing anything. Files and archive entries are scanned in parallel and
+     * the converters stop reading an entry as soon as they find something to
+     * convert. No destination is required and the cache is not used.
+     *
+     * @param dryRun true to scan the source instead of migrating it
+     * @see #getReport()
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Get the result of the last dry run.
+     *
+     * @return the report or {@code null} if the last execution was not a
+     *         dry run
+     * @throws IllegalStateException if migration has not completed
+     */
+    public MigrationReport getReport() {
+        if (state != State.COMPLETE) {
+            throw new IllegalStateException(sm.getString("migration.notCompleted"));
+        }
+        return report;
+    }
+
+    /**
+     * Get the metrics of the last run, such as the entries handled by each
+     * converter and the time spent inflating, converting and deflating.
+     *
+     * @return the metrics of the last run
+     * @throws IllegalStateException if migration has not completed
+     */
+    public MigrationMetrics getMetrics() {
+        if (state != State.COMPLETE) {
+            throw new IllegalStateException(sm.getString("migration.notCompleted"));
+        }
+        return metrics;
+    }
+
     /**
      * Add specified resource exclusion.
      * @param exclude the exclude to add
@@ -221,11 +334,46 @@ public class Migration {
         this.cache = cache;
     }
 
+    /**
+     * Set the registry of nested archives known to need no conversion. Nested
+     * archives found in the registry are copied unchanged without being
+     * opened, and nested archives found to need no conversion are added to
+     * it. Only nested archives that are buffered, because they are smaller
+     * than the deduplication threshold or because a cache is used, are
+     * looked up.
+     *
+     * @param cleanArchives the registry or {@code null} to disable it
+     */
+    public void setCleanArchiveRegistry(CleanArchiveRegistry cleanArchives) {
+        this.cleanArchives = cleanArchives;
+    }
+
+    /**
+     * Set the listener notified of the progress of the migration.
+     *
+     * @param listener the listener or {@code null} to disable notifications
+     */
+    public void setListener(MigrationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set the minimum interval between the progress snapshots published to
+     * the listener. The default is 5 seconds.
+     *
+     * @param progressInterval the interval in milliseconds
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
 
     /**
      * Returns whether any files were converted during migration.
      * Note: a return value of {@code false} means the source already
-     * satisfied the selected profile and no changes were necessary.
+     * satisfied the selected profile and no changes were necessary. With
+     * additional profiles, this is true if any file was converted for any of
+     * the profiles.
      *
      * @return true if at least one file was converted
      * @throws IllegalStateException if migration has not completed
@@ -238,6 +386,34 @@ public class Migration {
     }
 
 
+    /**
+     * Returns whether any files were converted for the output written to the
+     * given destination.
+     *
+     * @param destination the destination, as set with
+     *        {@link #setDestination(File)} or
+     *        {@link #addAdditionalProfile(EESpecProfile, File)}
+     * @return true if at least one file was converted for the destination
+     * @throws IllegalStateException if migration has not completed
+     * @throws IllegalArgumentException if the destination is not one of the
+     *         outputs of this migration
+     */
+    public boolean hasConverted(File destination) {
+        if (state != State.COMPLETE) {
+            throw new IllegalStateException(sm.getString("migration.notCompleted"));
+        }
+        if (additionalOutputs.isEmpty() && destination.equals(this.destination)) {
+            return converted;
+        }
+        for (ProfileOutput output : outputs) {
+            if (output.destination.equals(destination)) {
+                return output.converted;
+            }
+        }
+        throw new IllegalArgumentException(sm.getString("migration.unknownDestination", destination));
+    }
+
+
     /**
      * Execute migration operation.
      * @throws IOException when an exception occurs
@@ -249,107 +425,715 @@ public class Migration {
         }
         state = State.RUNNING;
         converted = false;
+        convertedArchives.clear();
+        retainedArchiveBytes = 0;
+        report = null;
+        metrics = new MigrationMetrics();
+        metrics.start();
+        progress = new ProgressTracker(null, 0, 0);
+        excludeSet = new GlobSet(excludes, true);
+
+        if (dryRun) {
+            logger.log(Level.INFO, sm.getString("migration.execute.dryRun", source.getAbsolutePath(),
+                    profile.toString()));
+            long t1 = System.nanoTime();
+            try {
+                report = scan();
+                converted = report.hasConverted();
+            } finally {
+                metrics.stop();
+                state = State.COMPLETE;
+            }
+            logger.log(Level.INFO, sm.getString("migration.done",
+                    Long.valueOf(TimeUnit.MILLISECONDS.convert(System.nanoTime() - t1, TimeUnit.NANOSECONDS))));
+            return;
+        }
 
         logger.log(Level.INFO, sm.getString("migration.execute", source.getAbsolutePath(),
                 destination.getAbsolutePath(), profile.toString()));
 
+        outputs = new ProfileOutput[additionalOutputs.size() + 1];
+        outputs[0] = new ProfileOutput(profile, destination);
+        for (int i = 0; i < additionalOutputs.size(); i++) {
+            ProfileOutput output = additionalOutputs.get(i);
+            outputs[i + 1] = new ProfileOutput(output.profile, output.destination);
+            logger.log(Level.INFO, sm.getString("migration.execute.additional", output.destination.getAbsolutePath(),
+                    output.profile.toString()));
+        }
+        // Each file, archive entry and class is read once and converted for every profile
+        EESpecProfile[] profiles = new EESpecProfile[outputs.length];
+        File[] destinations = new File[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            profiles[i] = outputs[i].profile;
+            destinations[i] = outputs[i].destination;
+        }
+
+        if (listener != null) {
+            progress = new ProgressTracker(listener,
+                    source.isDirectory() ? FileUtils.sizeOfDirectory(source) : source.length(), progressInterval);
+        }
+
         long t1 = System.nanoTime();
         try {
             if (source.isDirectory()) {
-                if ((destination.exists() && destination.isDirectory()) || destination.mkdirs()) {
-                    migrateDirectory(source, destination);
-                } else {
-                    throw new IOException(sm.getString("migration.mkdirError", destination.getAbsolutePath()));
+                for (File dest : destinations) {
+                    if (!(dest.exists() && dest.isDirectory()) && !dest.mkdirs()) {
+                        throw new IOException(sm.getString("migration.mkdirError", dest.getAbsolutePath()));
+                    }
                 }
+                migrateDirectory(source, destinations, profiles);
             } else {
                 // Single file
-                File parentDestination = destination.getAbsoluteFile().getParentFile();
-                if (parentDestination.exists() || parentDestination.mkdirs()) {
-                    migrateFile(source, destination);
-                } else {
-                    throw new IOException(sm.getString("migration.mkdirError", parentDestination.getAbsolutePath()));
+                for (File dest : destinations) {
+                    File parentDestination = dest.getAbsoluteFile().getParentFile();
+                    if (!parentDestination.exists() && !parentDestination.mkdirs()) {
+                        throw new IOException(sm.getString("migration.mkdirError",
+                                parentDestination.getAbsolutePath()));
+                    }
                 }
+                migrateFile(source, destinations, profiles);
             }
         } finally {
+            metrics.stop();
             state = State.COMPLETE;
+            convertedArchives.clear();
+            metrics.released(retainedArchiveBytes);
+            retainedArchiveBytes = 0;
 
             // Finalize cache operations (save metadata and prune expired entries)
             if (cache != null) {
                 cache.pruneCache();
+                logger.log(Level.INFO, cache.getStatistics().toString());
             }
         }
 
+        progress.complete();
         logger.log(Level.INFO, sm.getString("migration.done",
                 Long.valueOf(TimeUnit.MILLISECONDS.convert(System.nanoTime() - t1, TimeUnit.NANOSECONDS))));
+        logger.log(Level.FINE, metrics.toString());
+    }
+
+    private MigrationReport scan() throws IOException {
+        MigrationReport result = new MigrationReport();
+        List<File> files = new ArrayList<>();
+        if (source.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(source.toPath())) {
+                paths.filter(Files::isRegularFile).forEach(path -> files.add(path.toFile()));
+            }
+        } else {
+            files.add(source);
+        }
+        Path root = source.isDirectory() ? source.getAbsoluteFile().toPath() :
+                source.getAbsoluteFile().toPath().getParent();
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                String path = root.relativize(file.getAbsoluteFile().toPath()).toString()
+                        .replace(File.separatorChar, '/');
+                try {
+                    scanFile(path, file, result);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdown();
+        }
+        logger.log(Level.INFO, result.toString());
+        return result;
+    }
+
+
+    private void scanFile(String path, File file, MigrationReport report) throws IOException {
+        // Directory names are converted one segment at a time
+        String[] segments = path.split("/");
+        for (String segment : segments) {
+            // Object comparison is deliberate
+            if (profile.convert(segment) != segment) {
+                report.addRenamed(path);
+                break;
+            }
+        }
+        String name = file.getAbsolutePath();
+        if (!isExcluded(name) && isArchive(name)) {
+            report.addScanned();
+            // Entries of a top level archive are read in parallel
+            try (ZipFile zipFile = ZipFile.builder().setFile(file).get()) {
+                Collections.list(zipFile.getEntries()).parallelStream().forEach(entry -> {
+                    try (InputStream is = zipFile.getInputStream(entry)) {
+                        scanEntry(path, entry.getName(), is, report);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        } else {
+            try (InputStream is = new FileInputStream(file)) {
+                scanStream(path, name, is, report);
+            }
+        }
+    }
+
+
+    private void scanEntry(String archivePath, String name, InputStream src, MigrationReport report)
+            throws IOException {
+        String path = archivePath + MigrationReport.ARCHIVE_SEPARATOR + name;
+        if (isSignatureFile(name)) {
+            report.addSignatureFile(path);
+            return;
+        }
+        // Object comparison is deliberate
+        if (profile.convert(name) != name) {
+            report.addRenamed(path);
+        }
+        if (!name.endsWith("/")) {
+            scanStream(path, name, src, report);
+        }
+    }
+
+
+    private void scanStream(String path, String name, InputStream src, MigrationReport report) throws IOException {
+        report.addScanned();
+        if (isExcluded(name)) {
+            report.addExcluded(path);
+        } else if (isArchive(name)) {
+            // Nested archives are read sequentially, as they would be migrated
+            try (ZipArchiveInputStream srcZipStream = new ZipArchiveInputStream(CloseShieldInputStream.wrap(src))) {
+                ZipArchiveEntry srcZipEntry;
+                while ((srcZipEntry = srcZipStream.getNextEntry()) != null) {
+                    scanEntry(path, srcZipEntry.getName(), srcZipStream, report);
+                }
+            }
+        } else {
+            Converter converter = converters.getConverter(name);
+            if (converter != null && converter.needsConversion(name, src, profile)) {
+                report.addConverted(path);
+            }
+        }
     }
 
-    private void migrateDirectory(File src, File dest) throws IOException {
+
+    private void migrateDirectory(File src, File[] dests, EESpecProfile[] profiles) throws IOException {
         // Won't return null because src is known to be a directory
         String[] files = src.list();
         for (String file : files) {
             File srcFile = new File(src, file);
-            File destFile = new File(dest, profile.convert(file));
+            File[] destFiles = new File[dests.length];
+            for (int i = 0; i < dests.length; i++) {
+                destFiles[i] = new File(dests[i], profiles[i].convert(file));
+            }
             if (srcFile.isDirectory()) {
-                if ((destFile.exists() && destFile.isDirectory()) || destFile.mkdir()) {
-                    migrateDirectory(srcFile, destFile);
-                } else {
-                    throw new IOException(sm.getString("migration.mkdirError", destFile.getAbsolutePath()));
+                for (File destFile : destFiles) {
+                    if (!(destFile.exists() && destFile.isDirectory()) && !destFile.mkdir()) {
+                        throw new IOException(sm.getString("migration.mkdirError", destFile.getAbsolutePath()));
+                    }
                 }
+                migrateDirectory(srcFile, destFiles, profiles);
             } else {
-                migrateFile(srcFile, destFile);
+                migrateFile(srcFile, destFiles, profiles);
             }
         }
     }
 
-    private void migrateFile(File src, File dest) throws IOException {
-        if (src.equals(dest)) {
-            if (src.length() > TEMP_FILE_THRESHOLD) {
-                // For very large files, use a temp file instead of memory
-                File tempFile = createTempFile();
-                tempFile.deleteOnExit();
-                try (InputStream is = new FileInputStream(src); OutputStream os = new FileOutputStream(tempFile)) {
-                    if (migrateStream(src.getAbsolutePath(), is, os)) {
-                        converted = true;
-                        try (InputStream tempIs = new FileInputStream(tempFile); OutputStream destOs = new FileOutputStream(dest)) {
-                            Util.copy(tempIs, destOs);
-                        }
-                    } else {
-                        return;
+
+    private void migrateFile(File src, File[] dests, EESpecProfile[] profiles) throws IOException {
+        // In place outputs are written to memory, or to a temporary file for
+        // very large files, and only written back if anything was converted
+        File[] tempFiles = new File[dests.length];
+        ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[dests.length];
+        OutputStream[] outs = new OutputStream[dests.length];
+        try {
+            OutputStream[] meteredOuts = new OutputStream[dests.length];
+            for (int i = 0; i < dests.length; i++) {
+                if (!src.equals(dests[i])) {
+                    outs[i] = new FileOutputStream(dests[i]);
+                } else if (src.length() > TEMP_FILE_THRESHOLD) {
+                    tempFiles[i] = createTempFile();
+                    tempFiles[i].deleteOnExit();
+                    events.tempFileSpill(src.getAbsolutePath(), tempFiles[i].getAbsolutePath(), src.length());
+                    outs[i] = new FileOutputStream(tempFiles[i]);
+                } else {
+                    buffers[i] = new ByteArrayOutputStream(Math.toIntExact((long) (src.length() * 1.05)));
+                    outs[i] = buffers[i];
+                }
+                meteredOuts[i] = buffers[i] == null ? metrics.meter(outs[i], MigrationMetrics.Stage.IO) : outs[i];
+            }
+            boolean[] result;
+            try (InputStream is = new FileInputStream(src)) {
+                result = migrateStream(src.getAbsolutePath(), src.length(),
+                        metrics.meter(progress.track(is), MigrationMetrics.Stage.IO), meteredOuts, profiles);
+            }
+            for (int i = 0; i < dests.length; i++) {
+                outs[i].close();
+                if (!result[i]) {
+                    continue;
+                }
+                converted = true;
+                outputs[i].converted = true;
+                if (tempFiles[i] != null) {
+                    try (InputStream tempIs = new FileInputStream(tempFiles[i]);
+                            OutputStream destOs = new FileOutputStream(dests[i])) {
+                        Util.copy(tempIs, metrics.meter(destOs, MigrationMetrics.Stage.IO));
+                    }
+                } else if (buffers[i] != null) {
+                    metrics.buffered(buffers[i].size());
+                    try (OutputStream destOs = new FileOutputStream(dests[i])) {
+                        buffers[i].writeTo(metrics.meter(destOs, MigrationMetrics.Stage.IO));
+                    } finally {
+                        metrics.released(buffers[i].size());
                     }
-                } finally {
-                    tempFile.delete();
                 }
-            } else {
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.toIntExact((long) (src.length() * 1.05)));
+            }
+        } finally {
+            for (int i = 0; i < dests.length; i++) {
+                if (outs[i] != null) {
+                    outs[i].close();
+                }
+                if (tempFiles[i] != null) {
+                    tempFiles[i].delete();
+                }
+            }
+        }
+    }
+
+
+    private boolean isSignatureFile(String sourceName) {
+        return sourceName.startsWith("META-INF/") && (
+                sourceName.endsWith(".SF") ||
+                sourceName.endsWith(".RSA") ||
+                sourceName.endsWith(".DSA") ||
+                sourceName.endsWith(".EC")
+                );
+    }
 
-                try (InputStream is = new FileInputStream(src)) {
-                    if (migrateStream(src.getAbsolutePath(), is, buffer)) {
-                        converted = true;
-                    } else {
-                        return;
+
+    /*
+     * Migrates a file or archive entry for each of the profiles, writing the
+     * result for each profile to the destination with the same index. The
+     * source is only read once. The size is -1 if it is not known.
+     */
+    private boolean[] migrateStream(String name, long size, InputStream src, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        boolean[] result = new boolean[dests.length];
+        if (isExcluded(name)) {
+            copy(src, dests);
+            logger.log(Level.INFO, sm.getString("migration.skip", name));
+            metrics.recordExcluded();
+            progress.entryMigrated(name, false);
+            return result;
+        }
+        if (isArchive(name)) {
+            return migrateArchive(name, size, src, dests, profiles);
+        }
+        Converter converter = converters.getConverter(name);
+        if (converter != null) {
+            MigrationMetrics.ConverterMetrics converterMetrics = metrics.getConverterMetrics(converter);
+            MigrationMetrics.MeteredInputStream meteredSrc = converterMetrics.meter(src);
+            MigrationMetrics.MeteredOutputStream[] meteredDests =
+                    new MigrationMetrics.MeteredOutputStream[dests.length];
+            for (int i = 0; i < dests.length; i++) {
+                meteredDests[i] = converterMetrics.meter(dests[i]);
+            }
+            Object event = events.beginEntry();
+            long start = System.nanoTime();
+            result = convertStream(name, converter, meteredSrc, meteredDests, profiles);
+            long nanos = System.nanoTime() - start;
+            boolean convertedStream = any(result);
+            converterMetrics.record(convertedStream, nanos);
+            long bytesOut = 0;
+            for (MigrationMetrics.MeteredOutputStream meteredDest : meteredDests) {
+                bytesOut += meteredDest.getCount();
+            }
+            metrics.recordEntry(name, converter, convertedStream, nanos, meteredSrc.getCount(), bytesOut);
+            if (event != null) {
+                events.endEntry(event, name, converter, meteredSrc.getCount(), bytesOut, convertedStream, profiles);
+            }
+        }
+        progress.entryMigrated(name, any(result));
+        return result;
+    }
+
+
+    private boolean[] convertStream(String name, Converter converter, InputStream src, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        if (dests.length == 1) {
+            // Let the converter stream the content if it can
+            return new boolean[] { converter.convert(name, src, dests[0], profiles[0]) };
+        }
+        if (converter instanceof ClassConverter) {
+            return ((ClassConverter) converter).convert(name, src, dests, profiles);
+        }
+        boolean[] result = new boolean[dests.length];
+        if (converter instanceof PassThroughConverter) {
+            copy(src, dests);
+            return result;
+        }
+
+        // The content has to be read again for each profile
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (IOUtils.copyLarge(src, buffer, 0, MULTI_PROFILE_BUFFER_THRESHOLD + 1) > MULTI_PROFILE_BUFFER_THRESHOLD) {
+            // Too large to hold in memory, let the converter stream it from a file for each profile
+            File tempFile = createTempFile();
+            tempFile.deleteOnExit();
+            events.tempFileSpill(name, tempFile.getAbsolutePath(), buffer.size());
+            try {
+                try (OutputStream os = new FileOutputStream(tempFile)) {
+                    buffer.writeTo(os);
+                    buffer = null;
+                    Util.copy(src, os);
+                }
+                for (int i = 0; i < dests.length; i++) {
+                    try (InputStream is = new FileInputStream(tempFile)) {
+                        result[i] = converter.convert(name, is, dests[i], profiles[i]);
                     }
                 }
-
-                try (OutputStream os = new FileOutputStream(dest)) {
-                    os.write(buffer.toByteArray());
+            } finally {
+                tempFile.delete();
+            }
+        } else if (converter instanceof BufferConverter) {
+            // Unchanged content is written from the same array for each profile
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            metrics.buffered(bytes.capacity());
+            try {
+                for (int i = 0; i < dests.length; i++) {
+                    ByteBuffer converted = ((BufferConverter) converter).convert(name, bytes, profiles[i]);
+                    // Object comparison is deliberate
+                    result[i] = converted != bytes;
+                    write(converted, dests[i]);
                 }
+            } finally {
+                metrics.released(bytes.capacity());
             }
         } else {
-            try (InputStream is = new FileInputStream(src);
-                    OutputStream os = new FileOutputStream(dest)) {
-                converted = migrateStream(src.getAbsolutePath(), is, os);
+            byte[] bytes = buffer.toByteArray();
+            metrics.buffered(bytes.length);
+            try {
+                for (int i = 0; i < dests.length; i++) {
+                    result[i] = converter.convert(name, new ByteArrayInputStream(bytes), dests[i], profiles[i]);
+                }
+            } finally {
+                metrics.released(bytes.length);
+            }
+        }
+        return result;
+    }
+
+
+    private boolean[] migrateArchive(String name, long size, InputStream src, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        // Only cache and deduplicate nested archives (e.g., JARs inside WARs), not top-level files
+        // Top-level files will have absolute paths starting with a path separator
+        boolean isNestedArchive = !name.startsWith("/") && !name.startsWith("\\");
+        if (!isNestedArchive) {
+            return convertArchive(name, src, dests, profiles);
+        }
+
+        // Every nested archive is buffered and hashed, so that the first copy
+        // is remembered, unless it is known to be too large
+        if (cache == null && size > DEDUPLICATION_THRESHOLD) {
+            return migrateLargeArchive(name, src, dests, profiles);
+        }
+
+        // Without a cache, archives that are too large to be worth holding in memory are streamed
+        byte[] sourceBytes = null;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (cache != null) {
+            IOUtils.copy(src, buffer);
+            sourceBytes = buffer.toByteArray();
+        } else if (IOUtils.copyLarge(src, buffer, 0, DEDUPLICATION_THRESHOLD + 1) <= DEDUPLICATION_THRESHOLD) {
+            sourceBytes = buffer.toByteArray();
+        } else {
+            return migrateLargeArchive(name,
+                    new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), src), dests, profiles);
+        }
+
+        metrics.buffered(sourceBytes.length);
+        try {
+            return migrateBufferedArchive(name, sourceBytes, dests, profiles);
+        } finally {
+            metrics.released(sourceBytes.length);
+        }
+    }
+
+
+    /*
+     * Without a cache, nested archives that are too large to be buffered are
+     * not deduplicated. With a clean archive registry, they are hashed while
+     * they are written to a temporary file so that the registry is still
+     * used, and updated, for them.
+     */
+    private boolean[] migrateLargeArchive(String name, InputStream src, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        if (cleanArchives == null) {
+            return convertArchive(name, src, dests, profiles);
+        }
+        File tempFile = createTempFile();
+        tempFile.deleteOnExit();
+        try {
+            MessageDigest digest = Util.newSha256Digest();
+            try (OutputStream os = new DigestOutputStream(new FileOutputStream(tempFile), digest)) {
+                Util.copy(src, os);
+            }
+            events.tempFileSpill(name, tempFile.getAbsolutePath(), tempFile.length());
+            String key = Util.toHexString(digest.digest());
+            if (isClean(key, profiles)) {
+                logger.log(Level.FINE, sm.getString("migration.archive.clean", name, key));
+                metrics.recordCleanArchive();
+                long start = System.nanoTime();
+                for (OutputStream dest : dests) {
+                    try (InputStream is = new FileInputStream(tempFile)) {
+                        Util.copy(is, dest);
+                    }
+                }
+                metrics.recordArchive(name, MigrationMetrics.ArchiveMetrics.Strategy.CLEAN, false, tempFile.length(),
+                        tempFile.length() * dests.length, System.nanoTime() - start);
+                return new boolean[dests.length];
+            }
+            boolean[] result;
+            try (InputStream is = new FileInputStream(tempFile)) {
+                result = convertArchive(name, is, dests, profiles);
+            }
+            for (int i = 0; i < profiles.length; i++) {
+                if (!result[i] && !cleanArchives.isClean(key, profiles[i])) {
+                    try (ZipFile zipFile = ZipFile.builder().setFile(tempFile).get()) {
+                        learnCleanArchive(name, key, zipFile, profiles[i]);
+                    } catch (IOException e) {
+                        // Converted successfully but not readable as a ZIP file, do not register it
+                    }
+                }
+            }
+            return result;
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+
+    private boolean[] migrateBufferedArchive(String name, byte[] sourceBytes, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        // Identical archives are only converted once per run
+        String key = Util.sha256(sourceBytes);
+        if (cleanArchives != null && isClean(key, profiles)) {
+            logger.log(Level.FINE, sm.getString("migration.archive.clean", name, key));
+            metrics.recordCleanArchive();
+            long start = System.nanoTime();
+            for (OutputStream dest : dests) {
+                dest.write(sourceBytes);
+            }
+            metrics.recordArchive(name, MigrationMetrics.ArchiveMetrics.Strategy.CLEAN, false, sourceBytes.length,
+                    (long) sourceBytes.length * dests.length, System.nanoTime() - start);
+            return new boolean[dests.length];
+        }
+        ConvertedArchive existing = convertedArchives.get(key);
+        if (existing != null) {
+            logger.log(Level.FINE, sm.getString("migration.archive.duplicate", name));
+            metrics.recordDeduplicated();
+            long start = System.nanoTime();
+            long bytesOut = 0;
+            for (int i = 0; i < dests.length; i++) {
+                dests[i].write(existing.content[i]);
+                bytesOut += existing.content[i].length;
+            }
+            metrics.recordArchive(name, MigrationMetrics.ArchiveMetrics.Strategy.DEDUPLICATED,
+                    any(existing.converted), sourceBytes.length, bytesOut, System.nanoTime() - start);
+            return existing.converted.clone();
+        }
+
+        ByteArrayOutputStream[] converted = new ByteArrayOutputStream[dests.length];
+        OutputStream[] targets = new OutputStream[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            converted[i] = new ByteArrayOutputStream(sourceBytes.length);
+            targets[i] = new TeeOutputStream(dests[i], converted[i]);
+        }
+        boolean[] result = migrateArchive(name, sourceBytes, key, targets, profiles);
+        for (int i = 0; i < profiles.length; i++) {
+            if (!result[i]) {
+                learnCleanArchive(name, key, sourceBytes, profiles[i]);
+            }
+        }
+        byte[][] content = new byte[dests.length][];
+        long contentLength = 0;
+        for (int i = 0; i < dests.length; i++) {
+            content[i] = converted[i].toByteArray();
+            contentLength += content[i].length;
+        }
+        if (retainedArchiveBytes + contentLength <= MAX_RETAINED_BYTES) {
+            retainedArchiveBytes += contentLength;
+            metrics.buffered(contentLength);
+            convertedArchives.put(key, new ConvertedArchive(content, result.clone()));
+        }
+        return result;
+    }
+
+
+    private boolean isClean(String key, EESpecProfile[] profiles) {
+        for (EESpecProfile profile : profiles) {
+            if (!cleanArchives.isClean(key, profile)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+     * The key is the hash of the source, it is used to derive the cache key
+     * of each profile without hashing the source again.
+     */
+    private boolean[] migrateArchive(String name, byte[] sourceBytes, String key, OutputStream[] dests,
+            EESpecProfile[] profiles) throws IOException {
+        if (cache == null) {
+            return convertArchive(name, new ByteArrayInputStream(sourceBytes), dests, profiles);
+        }
+
+        // Look up the archive for all the profiles at once
+        long start = System.nanoTime();
+        List<CompletableFuture<CacheEntry>> lookups = new ArrayList<>();
+        Object[] lookupEvents = new Object[profiles.length];
+        for (int i = 0; i < profiles.length; i++) {
+            // The lookups complete on threads of the storage, their events
+            // are recorded by this thread once it has waited for them
+            lookupEvents[i] = events.beginCacheLookup();
+            lookups.add(cache.getCacheEntryAsync(key, profiles[i]));
+        }
+        boolean[] result = new boolean[dests.length];
+        List<Integer> misses = new ArrayList<>();
+        long hitBytes = 0;
+        CacheEntry[] cacheEntries = new CacheEntry[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            try {
+                cacheEntries[i] = lookups.get(i).join();
+            } catch (CompletionException e) {
+                // The cache is only an optimisation, convert the archive without it
+                logger.log(Level.WARNING, sm.getString("cache.lookupFailed", name), e.getCause());
+                metrics.recordCacheLookup(false);
+                misses.add(Integer.valueOf(i));
+                continue;
+            }
+            events.endCacheLookup(lookupEvents[i], cacheEntries[i].getHash(), sourceBytes.length,
+                    cacheEntries[i].exists(), profiles[i]);
+            metrics.recordCacheLookup(cacheEntries[i].exists());
+            if (cacheEntries[i].exists()) {
+                logger.log(Level.INFO, sm.getString("cache.hit", name, cacheEntries[i].getHash()));
+                try {
+                    MigrationMetrics.MeteredOutputStream countedDest = MigrationMetrics.counting(dests[i]);
+                    cacheEntries[i].copyToDestination(countedDest);
+                    hitBytes += countedDest.getCount();
+                    // Although it is from the cache, this still counts as converting the source
+                    result[i] = true;
+                    continue;
+                } catch (FileNotFoundException e) {
+                    // Entries are verified lazily. Nothing has been written yet so convert it again.
+                    logger.log(Level.WARNING, sm.getString("cache.hitMissing", name, cacheEntries[i].getHash()));
+                }
+            } else {
+                logger.log(Level.FINE, sm.getString("cache.miss", name, cacheEntries[i].getHash()));
             }
+            misses.add(Integer.valueOf(i));
+        }
+        if (misses.isEmpty()) {
+            metrics.recordArchive(name, MigrationMetrics.ArchiveMetrics.Strategy.CACHE_HIT, true, sourceBytes.length,
+                    hitBytes, System.nanoTime() - start);
+            return result;
+        }
+
+        // Convert once for all the profiles that missed, teeing the output
+        // to both the destination and the cache temp file
+        OutputStream[] missDests = new OutputStream[misses.size()];
+        EESpecProfile[] missProfiles = new EESpecProfile[misses.size()];
+        for (int j = 0; j < missDests.length; j++) {
+            int i = misses.get(j).intValue();
+            // Entries that could not be looked up are not stored
+            missDests[j] = cacheEntries[i] == null ? dests[i] :
+                    new TeeOutputStream(dests[i], cacheEntries[i].beginStore());
+            missProfiles[j] = profiles[i];
+        }
+        try {
+            boolean[] missResult = convertArchive(name, new ByteArrayInputStream(sourceBytes), missDests,
+                    missProfiles);
+            for (int j = 0; j < missDests.length; j++) {
+                int i = misses.get(j).intValue();
+                // Commit to cache on success
+                if (cacheEntries[i] != null && cacheEntries[i].commitStore()) {
+                    logger.log(Level.FINE, sm.getString("cache.store", cacheEntries[i].getHash(),
+                            Long.valueOf(cacheEntries[i].getFileSize())));
+                }
+                result[i] = missResult[j];
+            }
+        } catch (IOException e) {
+            // Rollback cache on error
+            for (Integer i : misses) {
+                if (cacheEntries[i.intValue()] != null) {
+                    cacheEntries[i.intValue()].rollbackStore();
+                }
+            }
+            throw e;
+        }
+        return result;
+    }
+
+
+    private boolean[] convertArchive(String name, InputStream src, OutputStream[] dests, EESpecProfile[] profiles)
+            throws IOException {
+        metrics.recordArchive();
+        progress.archiveStarted(name);
+        MigrationMetrics.ArchiveMetrics archiveMetrics = metrics.beginArchive(name, zipInMemory ?
+                MigrationMetrics.ArchiveMetrics.Strategy.IN_MEMORY : MigrationMetrics.ArchiveMetrics.Strategy.STREAMING);
+        Object event = events.beginArchive();
+        MigrationMetrics.MeteredInputStream countedSrc = MigrationMetrics.counting(src);
+        MigrationMetrics.MeteredOutputStream[] countedDests = new MigrationMetrics.MeteredOutputStream[dests.length];
+        for (int i = 0; i < dests.length; i++) {
+            countedDests[i] = MigrationMetrics.counting(dests[i]);
+        }
+        boolean[] convertedArchive;
+        if (zipInMemory) {
+            logger.log(Level.INFO, sm.getString("migration.archive.memory", name));
+            convertedArchive = migrateArchiveInMemory(countedSrc, countedDests, profiles);
+        } else {
+            logger.log(Level.INFO, sm.getString("migration.archive.stream", name));
+            convertedArchive = migrateArchiveStreaming(countedSrc, countedDests, profiles);
+        }
+        logger.log(Level.INFO, sm.getString("migration.archive.complete", name));
+        boolean convertedAny = any(convertedArchive);
+        long bytesOut = 0;
+        for (MigrationMetrics.MeteredOutputStream countedDest : countedDests) {
+            bytesOut += countedDest.getCount();
         }
+        metrics.endArchive(archiveMetrics, convertedAny, countedSrc.getCount(), bytesOut);
+        if (event != null) {
+            events.endArchive(event, name, countedSrc.getCount(), convertedAny, profiles);
+        }
+        progress.archiveFinished(name, convertedAny);
+        return convertedArchive;
     }
 
 
-    private boolean migrateArchiveStreaming(InputStream src, OutputStream dest) throws IOException {
-        boolean convertedArchive = false;
-        try (ZipArchiveInputStream srcZipStream = new ZipArchiveInputStream(CloseShieldInputStream.wrap(src));
-                ZipArchiveOutputStream destZipStream = new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(dest))) {
+    private boolean[] migrateArchiveStreaming(InputStream src, OutputStream[] dests, EESpecProfile[] profiles)
+            throws IOException {
+        boolean[] convertedArchive = new boolean[dests.length];
+        ZipArchiveOutputStream[] destZipStreams = new ZipArchiveOutputStream[dests.length];
+        OutputStream[] meteredDestZipStreams = new OutputStream[dests.length];
+        try (ZipArchiveInputStream srcZipStream = new ZipArchiveInputStream(CloseShieldInputStream.wrap(src))) {
+            for (int i = 0; i < dests.length; i++) {
+                destZipStreams[i] = new ZipArchiveOutputStream(CloseShieldOutputStream.wrap(dests[i]));
+                meteredDestZipStreams[i] = metrics.meter(destZipStreams[i], MigrationMetrics.Stage.DEFLATE);
+            }
+            InputStream meteredSrcZipStream = metrics.meter(srcZipStream, MigrationMetrics.Stage.INFLATE);
             ZipArchiveEntry srcZipEntry;
             while ((srcZipEntry = srcZipStream.getNextEntry()) != null) {
-                boolean convertedStream = false;
                 String srcName = srcZipEntry.getName();
                 if (isSignatureFile(srcName)) {
                     logger.log(Level.WARNING, sm.getString("migration.skipSignatureFile", srcName));
@@ -364,51 +1148,92 @@ public class Migration {
                         srcZipEntry.removeExtraField(EXTRA_FIELD_ZIP64);
                     }
                 }
-                String destName = profile.convert(srcName);
+                MigrationZipArchiveEntry[] destZipEntries = new MigrationZipArchiveEntry[dests.length];
+                for (int i = 0; i < dests.length; i++) {
+                    destZipEntries[i] = new MigrationZipArchiveEntry(srcZipEntry);
+                    destZipEntries[i].setName(profiles[i].convert(srcName));
+                }
+                boolean[] convertedStream;
                 if (srcZipEntry.getMethod() == ZipEntry.STORED) {
-                    try (CrcSizeTrackingOutputStream trackingStream = new CrcSizeTrackingOutputStream(destZipStream)) {
-                        convertedStream = migrateStream(srcName, srcZipStream, trackingStream);
-                        MigrationZipArchiveEntry destZipEntry = new MigrationZipArchiveEntry(srcZipEntry);
-                        destZipEntry.setName(destName);
-                        destZipEntry.setSize(trackingStream.getSize());
-                        destZipEntry.setCrc(trackingStream.getCrc());
-                        if (convertedStream) {
-                            destZipEntry.setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                    CrcSizeTrackingOutputStream[] trackingStreams = new CrcSizeTrackingOutputStream[dests.length];
+                    OutputStream[] meteredTrackingStreams = new OutputStream[dests.length];
+                    for (int i = 0; i < dests.length; i++) {
+                        trackingStreams[i] = new CrcSizeTrackingOutputStream(destZipStreams[i]);
+                        meteredTrackingStreams[i] = metrics.meter(trackingStreams[i], MigrationMetrics.Stage.DEFLATE);
+                    }
+                    convertedStream = migrateStream(srcName, srcZipEntry.getSize(), meteredSrcZipStream,
+                            meteredTrackingStreams, profiles);
+                    for (int i = 0; i < dests.length; i++) {
+                        try (CrcSizeTrackingOutputStream trackingStream = trackingStreams[i]) {
+                            destZipEntries[i].setSize(trackingStream.getSize());
+                            destZipEntries[i].setCrc(trackingStream.getCrc());
+                            if (convertedStream[i]) {
+                                destZipEntries[i].setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                            }
+                            destZipStreams[i].putArchiveEntry(destZipEntries[i]);
                         }
-                        destZipStream.putArchiveEntry(destZipEntry);
+                        destZipStreams[i].closeArchiveEntry();
                     }
-                    destZipStream.closeArchiveEntry();
                 } else {
-                    MigrationZipArchiveEntry destZipEntry = new MigrationZipArchiveEntry(srcZipEntry);
-                    destZipEntry.setName(destName);
-                    destZipStream.putArchiveEntry(destZipEntry);
-                    convertedStream = migrateStream(srcName, srcZipStream, destZipStream);
-                    if (convertedStream) {
-                        destZipEntry.setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                    for (int i = 0; i < dests.length; i++) {
+                        destZipStreams[i].putArchiveEntry(destZipEntries[i]);
                     }
-                    destZipStream.closeArchiveEntry();
+                    convertedStream = migrateStream(srcName, srcZipEntry.getSize(), meteredSrcZipStream,
+                            meteredDestZipStreams, profiles);
+                    for (int i = 0; i < dests.length; i++) {
+                        if (convertedStream[i]) {
+                            destZipEntries[i].setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                        }
+                        destZipStreams[i].closeArchiveEntry();
+                    }
+                }
+                for (int i = 0; i < dests.length; i++) {
+                    convertedArchive[i] = convertedArchive[i] || convertedStream[i];
+                }
+            }
+        } finally {
+            for (ZipArchiveOutputStream destZipStream : destZipStreams) {
+                if (destZipStream != null) {
+                    destZipStream.close();
                 }
-                convertedArchive = convertedArchive || convertedStream;
             }
         }
         return convertedArchive;
     }
 
 
-    private boolean migrateArchiveInMemory(InputStream src, OutputStream dest) throws IOException {
-        boolean convertedArchive = false;
+    private boolean[] migrateArchiveInMemory(InputStream src, OutputStream[] dests, EESpecProfile[] profiles)
+            throws IOException {
         // Read the source into memory
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         IOUtils.copy(src, baos);
         baos.flush();
-        SeekableInMemoryByteChannel srcByteChannel = new SeekableInMemoryByteChannel(baos.toByteArray());
-        // Create the destination in memory
-        SeekableInMemoryByteChannel destByteChannel = new SeekableInMemoryByteChannel();
+        metrics.buffered(baos.size());
+        try {
+            return migrateArchiveInMemory(baos.toByteArray(), dests, profiles);
+        } finally {
+            metrics.released(baos.size());
+        }
+    }
+
+
+    private boolean[] migrateArchiveInMemory(byte[] srcBytes, OutputStream[] dests, EESpecProfile[] profiles)
+            throws IOException {
+        boolean[] convertedArchive = new boolean[dests.length];
+        SeekableInMemoryByteChannel srcByteChannel = new SeekableInMemoryByteChannel(srcBytes);
+        // Create the destinations in memory
+        SeekableInMemoryByteChannel[] destByteChannels = new SeekableInMemoryByteChannel[dests.length];
+        ZipArchiveOutputStream[] destZipStreams = new ZipArchiveOutputStream[dests.length];
+        OutputStream[] meteredDestZipStreams = new OutputStream[dests.length];
 
         // In memory can have much simpler processing compared to the streaming version,
         // including STORED entries processing, due to the use of a seekable channel
-        try (ZipFile srcZipFile = ZipFile.builder().setSeekableByteChannel(srcByteChannel).get();
-                ZipArchiveOutputStream destZipStream = new ZipArchiveOutputStream(destByteChannel)) {
+        try (ZipFile srcZipFile = ZipFile.builder().setSeekableByteChannel(srcByteChannel).get()) {
+            for (int i = 0; i < dests.length; i++) {
+                destByteChannels[i] = new SeekableInMemoryByteChannel();
+                destZipStreams[i] = new ZipArchiveOutputStream(destByteChannels[i]);
+                meteredDestZipStreams[i] = metrics.meter(destZipStreams[i], MigrationMetrics.Stage.DEFLATE);
+            }
             Enumeration<ZipArchiveEntry> entries = srcZipFile.getEntries();
             while (entries.hasMoreElements()) {
                 ZipArchiveEntry srcZipEntry = entries.nextElement();
@@ -417,110 +1242,131 @@ public class Migration {
                     logger.log(Level.WARNING, sm.getString("migration.skipSignatureFile", srcName));
                     continue;
                 }
-                String destName = profile.convert(srcName);
-                MigrationZipArchiveEntry destZipEntry = new MigrationZipArchiveEntry(srcZipEntry);
-                destZipEntry.setName(destName);
-                destZipStream.putArchiveEntry(destZipEntry);
-                boolean convertedStream = migrateStream(srcName, srcZipFile.getInputStream(srcZipEntry), destZipStream);
-                if (convertedStream) {
-                    destZipEntry.setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                MigrationZipArchiveEntry[] destZipEntries = new MigrationZipArchiveEntry[dests.length];
+                for (int i = 0; i < dests.length; i++) {
+                    destZipEntries[i] = new MigrationZipArchiveEntry(srcZipEntry);
+                    destZipEntries[i].setName(profiles[i].convert(srcName));
+                    destZipStreams[i].putArchiveEntry(destZipEntries[i]);
+                }
+                boolean[] convertedStream = migrateStream(srcName, srcZipEntry.getSize(),
+                        metrics.meter(srcZipFile.getInputStream(srcZipEntry), MigrationMetrics.Stage.INFLATE),
+                        meteredDestZipStreams, profiles);
+                for (int i = 0; i < dests.length; i++) {
+                    if (convertedStream[i]) {
+                        destZipEntries[i].setLastModifiedTime(FileTime.fromMillis(System.currentTimeMillis()));
+                    }
+                    destZipStreams[i].closeArchiveEntry();
+                    convertedArchive[i] = convertedArchive[i] || convertedStream[i];
+                }
+            }
+        } finally {
+            for (ZipArchiveOutputStream destZipStream : destZipStreams) {
+                if (destZipStream != null) {
+                    destZipStream.close();
                 }
-                destZipStream.closeArchiveEntry();
-                convertedArchive = convertedArchive || convertedStream;
             }
         }
 
-        // Write the destination back to the stream
-        ByteArrayInputStream bais = new ByteArrayInputStream(destByteChannel.array(), 0, Math.toIntExact(destByteChannel.size()));
-        IOUtils.copy(bais, dest);
+        // Write the destinations back to the streams
+        for (int i = 0; i < dests.length; i++) {
+            int destSize = Math.toIntExact(destByteChannels[i].size());
+            metrics.buffered(destSize);
+            try {
+                dests[i].write(destByteChannels[i].array(), 0, destSize);
+            } finally {
+                metrics.released(destSize);
+            }
+        }
 
         return convertedArchive;
     }
 
 
-    private boolean isSignatureFile(String sourceName) {
-        return sourceName.startsWith("META-INF/") && (
-                sourceName.endsWith(".SF") ||
-                sourceName.endsWith(".RSA") ||
-                sourceName.endsWith(".DSA") ||
-                sourceName.endsWith(".EC")
-                );
+    private static boolean any(boolean[] values) {
+        for (boolean value : values) {
+            if (value) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
-    private boolean migrateStream(String name, InputStream src, OutputStream dest) throws IOException {
-        boolean convertedStream = false;
-        if (isExcluded(name)) {
-            Util.copy(src, dest);
-            logger.log(Level.INFO, sm.getString("migration.skip", name));
-        } else if (isArchive(name)) {
-            // Only cache nested archives (e.g., JARs inside WARs), not top-level files
-            // Top-level files will have absolute paths starting with a path separator
-            boolean isNestedArchive = !name.startsWith("/") && !name.startsWith("\\");
-
-            CacheEntry cacheEntry = null;
-            if (isNestedArchive && cache != null) {
-                // Buffer source to compute hash and check cache
-                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-                IOUtils.copy(src, buffer);
-                byte[] sourceBytes = buffer.toByteArray();
-
-                // Get cache entry (computes hash and marks as accessed)
-                cacheEntry = cache.getCacheEntry(sourceBytes, profile);
-
-                if (cacheEntry.exists()) {
-                    // Cache hit! Copy cached result to dest and return
-                    logger.log(Level.INFO, sm.getString("cache.hit", name, cacheEntry.getHash()));
-                    cacheEntry.copyToDestination(dest);
-                    // Although it is from the cache, this still counts as converting the source
-                    return true;
-                }
+    private static void write(ByteBuffer buffer, OutputStream dest) throws IOException {
+        if (buffer.hasArray()) {
+            dest.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            dest.write(Util.toByteArray(buffer));
+        }
+    }
 
-                // Cache miss - use buffered source for conversion
-                logger.log(Level.FINE, sm.getString("cache.miss", name, cacheEntry.getHash()));
-                src = new ByteArrayInputStream(sourceBytes);
-            }
 
-            // Process archive - stream directly to destination (and cache if needed)
-            OutputStream targetOutputStream = dest;
-            if (cacheEntry != null) {
-                // Tee output to both destination and cache temp file
-                targetOutputStream = new org.apache.commons.io.output.TeeOutputStream(dest, cacheEntry.beginStore());
+    private static void copy(InputStream src, OutputStream[] dests) throws IOException {
+        if (dests.length == 1) {
+            Util.copy(src, dests[0]);
+            return;
+        }
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = src.read(buffer)) > 0) {
+            for (OutputStream dest : dests) {
+                dest.write(buffer, 0, n);
             }
+        }
+    }
 
-            try {
-                if (zipInMemory) {
-                    logger.log(Level.INFO, sm.getString("migration.archive.memory", name));
-                    convertedStream = migrateArchiveInMemory(src, targetOutputStream);
-                    logger.log(Level.INFO, sm.getString("migration.archive.complete", name));
-                } else {
-                    logger.log(Level.INFO, sm.getString("migration.archive.stream", name));
-                    convertedStream = migrateArchiveStreaming(src, targetOutputStream);
-                    logger.log(Level.INFO, sm.getString("migration.archive.complete", name));
-                }
 
-                // Commit to cache on success
-                if (cacheEntry != null) {
-                    cacheEntry.commitStore();
-                    logger.log(Level.FINE, sm.getString("cache.store", cacheEntry.getHash(),
-                            Long.valueOf(cacheEntry.getFileSize())));
-                }
-            } catch (IOException e) {
-                // Rollback cache on error
-                if (cacheEntry != null) {
-                    cacheEntry.rollbackStore();
-                }
-                throw e;
+    /*
+     * An archive that was not converted may still have been changed, by
+     * renaming entries, removing signature files or updating the manifest. It
+     * is only clean if none of that applies. Archives with nested archives
+     * are not registered since the nested archives are not checked.
+     */
+    private void learnCleanArchive(String name, String key, byte[] sourceBytes, EESpecProfile profile) {
+        if (cleanArchives == null || cleanArchives.isClean(key, profile)) {
+            return;
+        }
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(
+                new SeekableInMemoryByteChannel(sourceBytes)).get()) {
+            learnCleanArchive(name, key, zipFile, profile);
+        } catch (IOException e) {
+            // Converted successfully but not readable as a ZIP file, do not register it
+        }
+    }
+
+
+    private void learnCleanArchive(String name, String key, ZipFile zipFile, EESpecProfile profile)
+            throws IOException {
+        Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            String entryName = entry.getName();
+            if (isSignatureFile(entryName) || isArchive(entryName) ||
+                    !profile.convert(entryName).equals(entryName)) {
+                return;
             }
-        } else {
-            for (Converter converter : converters) {
-                if (converter.accepts(name)) {
-                    convertedStream = converter.convert(name, src, dest, profile);
-                    break;
+            Converter converter = converters.getConverter(entryName);
+            if (converter instanceof ManifestConverter) {
+                byte[] manifest = IOUtils.toByteArray(zipFile.getInputStream(entry));
+                ByteArrayOutputStream converted = new ByteArrayOutputStream(manifest.length);
+                converter.convert(entryName, new ByteArrayInputStream(manifest), converted, profile);
+                if (!Arrays.equals(manifest, converted.toByteArray())) {
+                    return;
                 }
             }
         }
-        return convertedStream;
+        cleanArchives.add(key, profile);
+        logger.log(Level.FINE, sm.getString("migration.archive.learnedClean", name, key));
+    }
+
+    /**
+     * Package private for testing.
+     *
+     * @return the number of nested archives that were not converted because
+     *         an identical archive was converted earlier in the same run
+     */
+    int getDeduplicatedArchiveCount() {
+        return (int) metrics.getDeduplicatedArchiveCount();
     }
 
     private boolean isArchive(String fileName) {
@@ -530,21 +1376,28 @@ public class Migration {
 
 
     private boolean isExcluded(String name) {
-        File f = new File(name);
-        String filename = f.getName();
-
-        if (enableDefaultExcludes && GlobMatcher.matchName(DEFAULT_EXCLUDES, filename, true)) {
-            return true;
+        // The same file name as File.getName() but without creating a File
+        int end = name.length();
+        while (end > 1 && isSeparator(name.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && !isSeparator(name.charAt(start - 1))) {
+            start--;
         }
 
-        if (!matchExcludesAgainstPathName && GlobMatcher.matchName(excludes, filename, true)) {
+        if (enableDefaultExcludes && DEFAULT_EXCLUDE_SET.matches(name, start, end)) {
             return true;
         }
-        if (matchExcludesAgainstPathName && GlobMatcher.matchName(excludes, name, true)) {
-            return true;
+
+        if (matchExcludesAgainstPathName) {
+            return excludeSet.matches(name, 0, name.length());
         }
+        return excludeSet.matches(name, start, end);
+    }
 
-        return false;
+    private static boolean isSeparator(char ch) {
+        return ch == '/' || ch == File.separatorChar;
     }
 
     private static class MigrationZipArchiveEntry extends ZipArchiveEntry {
@@ -563,6 +1416,34 @@ public class Migration {
         return File.createTempFile("jakartaee-migration-", ".tmp");
     }
 
+    /**
+     * The output written for one profile.
+     */
+    private static final class ProfileOutput {
+        private final EESpecProfile profile;
+        private final File destination;
+        private boolean converted;
+
+        private ProfileOutput(EESpecProfile profile, File destination) {
+            this.profile = profile;
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * The result of converting a nested archive for each profile, shared
+     * with identical archives found later in the same run.
+     */
+    private static final class ConvertedArchive {
+        private final byte[][] content;
+        private final boolean[] converted;
+
+        private ConvertedArchive(byte[][] content, boolean[] converted) {
+            this.content = content;
+            this.converted = converted;
+        }
+    }
+
     /**
      * Output stream that tracks the CRC32 checksum and byte count of written data.
      * For data exceeding TEMP_FILE_THRESHOLD, automatically switches from an in-memory
@@ -616,6 +1497,7 @@ public class Migration {
             if (buffer != null && buffer.size() > TEMP_FILE_THRESHOLD && fileOutput == null) {
                 tempFile = createTempFile();
                 tempFile.deleteOnExit();
+                events.tempFileSpill(null, tempFile.getAbsolutePath(), buffer.size());
                 fileOutput = new FileOutputStream(tempFile);
                 buffer.writeTo(fileOutput);
                 fileOutput.flush();
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Java agent converting classes as they are loaded, so that an application
+ * may be deployed without migrating it first. The agent is enabled with:
+ * <pre>
+ * -javaagent:jakartaee-migration-*-shaded.jar[=option,option...]
+ * </pre>
+ * The supported options are:
+ * <ul>
+ *   <li>{@code profile=<profile>} the Jakarta EE specification profile to use,
+ *       {@code TOMCAT} by default</li>
+ *   <li>{@code package=<package>} only convert the classes in the given
+ *       package and its sub-packages. May be repeated. All the packages are
+ *       converted by default</li>
+ *   <li>{@code loader=<class name prefix>} only convert the classes loaded
+ *       by a class loader whose class name starts with the given prefix. May
+ *       be repeated. All the class loaders are used by default</li>
+ *   <li>{@code cache=<file>} keep the result of transforming each class in
+ *       the given file so that it is reused when the JVM is restarted</li>
+ *   <li>{@code jmx=true} make the statistics, including the time spent
+ *       transforming classes, available through JMX</li>
+ * </ul>
+ * Classes loaded by the bootstrap class loader and the classes of the
+ * migration tool itself are never converted. Unchanged classes are not
+ * redefined.
+ * <p>
+ * Installing the agent only parses the options. The converter, the cache,
+ * logging and JMX are initialized when the first class is transformed so
+ * that the agent does not initialize them before the application has had a
+ * chance to configure them.
+ */
+public class MigrationAgent implements ClassFileTransformer {
+
+    private static final StringManager sm = StringManager.getManager(MigrationAgent.class);
+
+    private static final String PROFILE_OPTION = "profile";
+    private static final String PACKAGE_OPTION = "package";
+    private static final String LOADER_OPTION = "loader";
+    private static final String CACHE_OPTION = "cache";
+    private static final String JMX_OPTION = "jmx";
+
+    private static final String OWN_PACKAGE = MigrationAgent.class.getPackage().getName().replace('.', '/') + '/';
+
+    private final EESpecProfile profile;
+    private final List<String> packages;
+    private final List<String> loaders;
+    private final File cacheFile;
+    private final boolean jmx;
+    private final AgentStatistics statistics = new AgentStatistics();
+
+    private final Object initLock = new Object();
+    private volatile boolean initialized = false;
+    // Guarded by initLock
+    private boolean initializing = false;
+    private ClassConverter converter;
+    private AgentClassCache cache;
+
+    /**
+     * Create an agent.
+     *
+     * @param args the agent options, separated by commas
+     * @throws IllegalArgumentException if the options are invalid
+     */
+    public MigrationAgent(String args) {
+        EESpecProfile profile = EESpecProfiles.TOMCAT;
+        List<String> packages = new ArrayList<>();
+        List<String> loaders = new ArrayList<>();
+        File cacheFile = null;
+        boolean jmx = false;
+        if (args != null) {
+            for (String option : args.split(",")) {
+                option = option.trim();
+                if (option.isEmpty()) {
+                    continue;
+                }
+                int equals = option.indexOf('=');
+                String name = equals < 0 ? option : option.substring(0, equals).trim();
+                String value = equals < 0 ? "" : option.substring(equals + 1).trim();
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException(sm.getString("migrationAgent.invalidOption", option));
+                }
+                if (PROFILE_OPTION.equals(name)) {
+                    try {
+                        profile = EESpecProfiles.valueOf(value.toUpperCase(Locale.ENGLISH));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(sm.getString("migrationAgent.invalidProfile", value), e);
+                    }
+                } else if (PACKAGE_OPTION.equals(name)) {
+                    String pkg = value.replace('.', '/');
+                    packages.add(pkg.endsWith("/") ? pkg : pkg + '/');
+                } else if (LOADER_OPTION.equals(name)) {
+                    loaders.add(value);
+                } else if (CACHE_OPTION.equals(name)) {
+                    cacheFile = new File(value);
+                } else if (JMX_OPTION.equals(name)) {
+                    jmx = Boolean.parseBoolean(value);
+                } else {
+                    throw new IllegalArgumentException(sm.getString("migrationAgent.invalidOption", option));
+                }
+            }
+        }
+        this.profile = profile;
+        this.packages = Collections.unmodifiableList(packages);
+        this.loaders = Collections.unmodifiableList(loaders);
+        this.cacheFile = cacheFile;
+        this.jmx = jmx;
+    }
+
+    /**
+     * Entry point when the agent is specified on the command line.
+     *
+     * @param args the agent options
+     * @param instrumentation the instrumentation instance
+     */
+    public static void premain(String args, Instrumentation instrumentation) {
+        install(args, instrumentation);
+    }
+
+    /**
+     * Entry point when the agent is attached to a running JVM. Only the
+     * classes loaded after the agent is attached are converted.
+     *
+     * @param args the agent options
+     * @param instrumentation the instrumentation instance
+     */
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        install(args, instrumentation);
+    }
+
+    private static MigrationAgent install(String args, Instrumentation instrumentation) {
+        MigrationAgent agent = new MigrationAgent(args);
+        instrumentation.addTransformer(agent);
+        return agent;
+    }
+
+    /**
+     * @return the profile used by the agent
+     */
+    public EESpecProfile getEESpecProfile() {
+        return profile;
+    }
+
+    /**
+     * @return the statistics, updated as classes are loaded
+     */
+    public AgentStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Check whether a class would be checked by the agent.
+     *
+     * @param loader the class loader of the class
+     * @param className the internal name of the class
+     * @return {@code true} if the class is not excluded by the filters
+     */
+    public boolean accepts(ClassLoader loader, String className) {
+        if (loader == null || className == null || className.startsWith(OWN_PACKAGE)) {
+            return false;
+        }
+        if (!packages.isEmpty() && !matchesAny(className, packages)) {
+            return false;
+        }
+        return loaders.isEmpty() || matchesAny(loader.getClass().getName(), loaders);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (!accepts(loader, className)) {
+            statistics.recordFiltered();
+            return null;
+        }
+        if (!initialize()) {
+            // Loaded while the agent is being initialized
+            statistics.recordFiltered();
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] result;
+            if (cache == null) {
+                result = converter.transform(loader, className, classBeingRedefined, protectionDomain,
+                        classfileBuffer);
+            } else {
+                result = transformCached(loader, className, classfileBuffer);
+            }
+            statistics.recordTransform(className, result != null, System.nanoTime() - start);
+            return result;
+        } catch (IllegalClassFormatException | RuntimeException e) {
+            // Never prevent the class from loading, it is used unchanged
+            statistics.recordFailure(className, System.nanoTime() - start);
+            Log.logger.log(Level.WARNING, sm.getString("migrationAgent.transformFailed", className), e);
+            return null;
+        }
+    }
+
+    private byte[] transformCached(ClassLoader loader, String className, byte[] classfileBuffer)
+            throws IllegalClassFormatException {
+        String key = cache.getKey(classfileBuffer);
+        AgentClassCache.Entry entry = cache.get(key);
+        if (entry != null && entry.isValid(TargetResourceIndex.getIndex(loader))) {
+            statistics.recordCacheLookup(true);
+            return entry.getConverted();
+        }
+        statistics.recordCacheLookup(false);
+        Map<String, Boolean> lookups = new HashMap<>();
+        byte[] result = converter.transform(loader, className, classfileBuffer, lookups);
+        if (entry == null) {
+            cache.put(key, lookups, result);
+        }
+        return result;
+    }
+
+    /*
+     * Returns false if called, by a class being loaded, while the current
+     * thread is initializing the agent.
+     */
+    private boolean initialize() {
+        if (initialized) {
+            return true;
+        }
+        synchronized (initLock) {
+            if (initialized) {
+                return true;
+            }
+            if (initializing) {
+                return false;
+            }
+            initializing = true;
+            try {
+                converter = new ClassConverter(profile);
+                if (cacheFile != null) {
+                    try {
+                        cache = new AgentClassCache(cacheFile, profile, AgentClassCache.DEFAULT_MAX_SIZE);
+                    } catch (IOException e) {
+                        // Convert the classes without the cache
+                        Log.logger.log(Level.WARNING, sm.getString("migrationAgent.cacheFailed", cacheFile), e);
+                    }
+                }
+                if (jmx) {
+                    registerMBean();
+                }
+                Log.logger.log(Level.INFO, sm.getString("migrationAgent.installed", profile,
+                        packages.isEmpty() ? "*" : packages, loaders.isEmpty() ? "*" : loaders));
+                initialized = true;
+            } finally {
+                initializing = false;
+            }
+        }
+        return true;
+    }
+
+    private void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("org.apache.tomcat.jakartaee:type=MigrationAgent");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(statistics, name);
+        } catch (JMException e) {
+            Log.logger.log(Level.WARNING, sm.getString("migrationAgent.jmx.registerFailed"), e);
+        }
+    }
+
+    private static boolean matchesAny(String name, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Holder so that the logger is only created when it is first used.
+     */
+    private static final class Log {
+        private static final Logger logger = Logger.getLogger(MigrationAgent.class.getCanonicalName());
+    }
+}
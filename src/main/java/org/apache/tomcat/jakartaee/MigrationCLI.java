@@ -17,12 +17,20 @@
 package org.apache.tomcat.jakartaee;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,11 +44,17 @@ public class MigrationCLI {
     private static final String EXCLUDE_ARG = "-exclude=";
     private static final String LOGLEVEL_ARG = "-logLevel=";
     private static final String PROFILE_ARG = "-profile=";
+    private static final String ADDITIONAL_PROFILE_ARG = "-additionalProfile=";
+    private static final String DRYRUN_ARG = "-dryRun";
     private static final String ZIPINMEMORY_ARG = "-zipInMemory";
     private static final String MATCHEXCLUDESPATH_ARG ="-matchExcludesAgainstPathName";
     private static final String CACHE_ARG = "-cache";
     private static final String CACHE_LOCATION_ARG = "-cacheLocation=";
     private static final String CACHE_RETENTION_ARG = "-cacheRetention=";
+    private static final String CACHE_URL_ARG = "-cacheUrl=";
+    private static final String CLEAN_ARCHIVES_ARG = "-cleanArchives=";
+    private static final String PROGRESS_ARG = "-progress";
+    private static final String REPORT_ARG = "-report=";
 
     /**
      * Build the migration tool CLI instance.
@@ -60,8 +74,13 @@ public class MigrationCLI {
 
         // Cache settings - disabled by default
         File cacheDir = null;
+        URL cacheUrl = null;
         boolean enableCache = false;
         int cacheRetentionDays = 30; // Default retention period
+        boolean dryRun = false;
+        File cleanArchivesFile = null;
+        File reportFile = null;
+        Map<File, EESpecProfile> additionalOutputs = new LinkedHashMap<>();
 
         // Process arguments
         List<String> arguments = new ArrayList<>(Arrays.asList(args));
@@ -99,6 +118,34 @@ public class MigrationCLI {
                     // Invalid profile value
                     invalidArguments();
                 }
+            } else if (argument.startsWith(ADDITIONAL_PROFILE_ARG)) {
+                iter.remove();
+                String value = argument.substring(ADDITIONAL_PROFILE_ARG.length());
+                int separator = value.indexOf(':');
+                if (separator < 1 || separator == value.length() - 1) {
+                    invalidArguments();
+                }
+                try {
+                    EESpecProfile profile = EESpecProfiles.valueOf(
+                            value.substring(0, separator).toUpperCase(Locale.ENGLISH));
+                    File destination = new File(value.substring(separator + 1));
+                    migration.addAdditionalProfile(profile, destination);
+                    additionalOutputs.put(destination, profile);
+                } catch (IllegalArgumentException e) {
+                    // Invalid profile value
+                    invalidArguments();
+                }
+            } else if (argument.equals(DRYRUN_ARG)) {
+                iter.remove();
+                dryRun = true;
+            } else if (argument.equals(PROGRESS_ARG)) {
+                iter.remove();
+                migration.setListener(new MigrationListener() {
+                    @Override
+                    public void progress(MigrationProgress progress) {
+                        System.out.println(progress.toString());
+                    }
+                });
             } else if (argument.equals(ZIPINMEMORY_ARG)) {
                 iter.remove();
                 migration.setZipInMemory(true);
@@ -117,6 +164,20 @@ public class MigrationCLI {
                 enableCache = true;
                 String cachePath = argument.substring(CACHE_LOCATION_ARG.length());
                 cacheDir = new File(cachePath);
+            } else if (argument.startsWith(CACHE_URL_ARG)) {
+                iter.remove();
+                enableCache = true;
+                try {
+                    cacheUrl = new URL(argument.substring(CACHE_URL_ARG.length()));
+                } catch (MalformedURLException e) {
+                    invalidArguments();
+                }
+            } else if (argument.startsWith(CLEAN_ARCHIVES_ARG)) {
+                iter.remove();
+                cleanArchivesFile = new File(argument.substring(CLEAN_ARCHIVES_ARG.length()));
+            } else if (argument.startsWith(REPORT_ARG)) {
+                iter.remove();
+                reportFile = new File(argument.substring(REPORT_ARG.length()));
             } else if (argument.startsWith(CACHE_RETENTION_ARG)) {
                 iter.remove();
                 String retentionStr = argument.substring(CACHE_RETENTION_ARG.length());
@@ -131,6 +192,24 @@ public class MigrationCLI {
             }
         }
 
+        if (dryRun) {
+            if (arguments.size() != 1) {
+                invalidArguments();
+            }
+            migration.setSource(new File(arguments.get(0)));
+            migration.setDryRun(true);
+            migration.execute();
+            MigrationReport report = migration.getReport();
+            for (String entry : report.getConvertedEntries()) {
+                System.out.println(sm.getString("migration.dryRun.converted", entry));
+            }
+            for (Map.Entry<String, Integer> entry : report.getConvertedEntryCounts().entrySet()) {
+                System.out.println(sm.getString("migration.dryRun.archive", entry.getKey(), entry.getValue()));
+            }
+            System.out.println(report.toString());
+            return;
+        }
+
         if (arguments.size() != 2) {
             invalidArguments();
         }
@@ -141,12 +220,49 @@ public class MigrationCLI {
         migration.setSource(new File(source));
         migration.setDestination(new File(dest));
 
+        MigrationCache migrationCache = null;
         if (enableCache) {
-            MigrationCache migrationCache = new MigrationCache(cacheDir, cacheRetentionDays);
+            if (cacheDir == null) {
+                cacheDir = new File(System.getProperty("user.home"), ".migration-cache");
+            }
+            if (cacheUrl == null) {
+                migrationCache = new MigrationCache(cacheDir, cacheRetentionDays);
+            } else {
+                migrationCache = new MigrationCache(cacheDir, cacheRetentionDays, new HttpCacheStorage(cacheUrl));
+            }
+            migrationCache.registerMBean();
             migration.setCache(migrationCache);
         }
 
-        migration.execute();
+        CleanArchiveRegistry cleanArchives = null;
+        if (cleanArchivesFile != null) {
+            cleanArchives = new CleanArchiveRegistry();
+            if (cleanArchivesFile.isFile()) {
+                cleanArchives.load(cleanArchivesFile);
+            }
+            migration.setCleanArchiveRegistry(cleanArchives);
+        }
+
+        try {
+            migration.execute();
+            if (cleanArchives != null && cleanArchives.isModified()) {
+                cleanArchives.save(cleanArchivesFile);
+            }
+            if (reportFile != null) {
+                Map<File, EESpecProfile> outputs = new LinkedHashMap<>();
+                outputs.put(new File(dest), migration.getEESpecProfile());
+                outputs.putAll(additionalOutputs);
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile),
+                        StandardCharsets.UTF_8)) {
+                    JsonReportWriter.write(writer, new File(source), outputs, migration.hasConverted(),
+                            migration.getMetrics());
+                }
+            }
+        } finally {
+            if (migrationCache != null) {
+                migrationCache.close();
+            }
+        }
     }
 
     private static void invalidArguments() {
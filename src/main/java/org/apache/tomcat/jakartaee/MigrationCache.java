@@ -18,86 +18,154 @@ package org.apache.tomcat.jakartaee;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 /**
  * Cache for storing and retrieving pre-converted archive files.
  *
+ * <h2>Storage</h2>
+ * <p>The converted archives are held by a {@link CacheStorage}. By default this
+ * is a {@link LocalDirectoryCacheStorage} using the cache directory. Other
+ * storage, such as a {@link HttpCacheStorage} shared between several
+ * machines, may be used in which case the cache directory only holds the
+ * metadata and the temporary files.</p>
+ *
  * <h2>Cache Structure</h2>
- * <p>The cache organizes files in a directory structure based on hash values:</p>
+ * <p>With the default storage, the cache organizes files in a directory
+ * structure based on hash values:</p>
  * <pre>
  * {cacheDir}/
  *   ├── cache-metadata.txt      # Metadata file tracking access times
+ *   ├── cache-version.txt       # Version of the cache key format
+ *   ├── cache-index.txt         # Journal of the stored entries and their sizes
  *   ├── {XX}/                    # Subdirectory named by first 2 chars of hash
  *   │   └── {hash}.jar          # Cached converted archive (full SHA-256 hash)
  *   ├── {YY}/
  *   │   └── {hash}.jar
  *   └── temp-{uuid}.tmp          # Temporary files during conversion
  * </pre>
+ * <p>The 256 subdirectories are created when the cache is first initialized.
+ * The stored entries are tracked in {@code cache-index.txt} so that the
+ * directory does not need to be scanned on startup and lookups do not need to
+ * access the file system. See {@link LocalDirectoryCacheStorage}.</p>
  *
  * <h2>Cache Key</h2>
  * <p>Each cache entry is keyed by a SHA-256 hash computed from:</p>
  * <ul>
  *   <li>The migration profile name (e.g., "TOMCAT", "EE")</li>
- *   <li>The pre-conversion archive content (as bytes)</li>
+ *   <li>The SHA-256 hash of the pre-conversion archive content</li>
  * </ul>
  * <p>This ensures that the same archive converted with different profiles
- * produces different cache entries.</p>
+ * produces different cache entries, while the archive content is only hashed
+ * once whatever the number of profiles.</p>
+ * <p>The version of the key format is recorded in {@code cache-version.txt}.
+ * Unless the storage is shared, the entries are removed when the cache is
+ * opened with a different version as they can no longer be found.</p>
  *
  * <h2>Metadata Format</h2>
  * <p>The {@code cache-metadata.txt} file tracks access times for cache pruning:</p>
  * <pre>
- * # Migration cache metadata - hash|last_access_date
- * {hash}|{YYYY-MM-DD}
- * {hash}|{YYYY-MM-DD}
+ * # Migration cache metadata - hash|last_access_date|conversion_millis
+ * {hash}|{YYYY-MM-DD}|{millis}
+ * {hash}|{YYYY-MM-DD}|{millis}
  * </pre>
+ * <p>The conversion time is optional and is used to estimate the time saved
+ * by cache hits. It is recorded when the converted archive is stored.</p>
+ * <p>The access time is recorded when an entry is found or stored. The
+ * metadata does not decide which entries exist: unless the storage is shared,
+ * the entries are those of the storage index, entries missing from the
+ * metadata are treated as accessed when the cache was started and metadata
+ * for entries that are no longer stored is dropped.</p>
+ *
+ * <h2>Statistics</h2>
+ * <p>Usage statistics are available from {@link #getStatistics()} and may be
+ * exposed through JMX using {@link #registerMBean()}.</p>
  *
  * <h2>Temporary Files</h2>
  * <p>During conversion, output is written to temporary files named {@code temp-{uuid}.tmp}.
  * These files are cleaned up on startup to handle crashes or unexpected shutdowns.</p>
  */
-public class MigrationCache {
+public class MigrationCache implements Closeable {
 
     private static final Logger logger = Logger.getLogger(MigrationCache.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(MigrationCache.class);
+    private static final MigrationEvents events = MigrationEvents.get();
     private static final String METADATA_FILE = "cache-metadata.txt";
+    private static final String VERSION_FILE = "cache-version.txt";
+    private static final String KEY_VERSION = "2";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
 
     private final File cacheDir;
+    private final CacheStorage storage;
     private final int retentionDays;
     private final Map<String, LocalDate> cacheMetadata;
+    private final Map<String, Long> conversionTimes;
     private final File metadataFile;
+    private final CacheStatistics statistics = new CacheStatistics();
+    private final Set<CompletableFuture<Void>> pendingStores = ConcurrentHashMap.newKeySet();
+    private volatile ObjectName objectName;
 
     /**
-     * Construct a new migration cache.
+     * Construct a new migration cache storing the converted archives in the
+     * cache directory.
      *
      * @param cacheDir the directory to store cached files
      * @param retentionDays the number of days to retain cached files
      * @throws IOException if the cache directory cannot be created
      */
     public MigrationCache(File cacheDir, int retentionDays) throws IOException {
+        this(cacheDir, retentionDays, cacheDir == null ? null : new LocalDirectoryCacheStorage(cacheDir));
+    }
+
+    /**
+     * Construct a new migration cache using the given storage for the
+     * converted archives.
+     *
+     * @param cacheDir the directory to store the metadata and temporary files
+     * @param retentionDays the number of days to retain cached files
+     * @param storage the storage for the converted archives
+     * @throws IOException if the cache directory cannot be created
+     */
+    public MigrationCache(File cacheDir, int retentionDays, CacheStorage storage) throws IOException {
         if (cacheDir == null) {
             throw new IllegalArgumentException(sm.getString("cache.nullDirectory"));
         }
+        if (storage == null) {
+            throw new IllegalArgumentException(sm.getString("cache.nullStorage"));
+        }
 
+        this.storage = storage;
         this.retentionDays = retentionDays;
         this.cacheMetadata = new ConcurrentHashMap<>();
+        this.conversionTimes = new ConcurrentHashMap<>();
         this.cacheDir = cacheDir;
         this.metadataFile = new File(cacheDir, METADATA_FILE);
 
@@ -110,6 +178,9 @@ public class MigrationCache {
             throw new IOException(sm.getString("cache.notDirectory", cacheDir.getAbsolutePath()));
         }
 
+        // Drop the entries stored with an older key format
+        checkKeyVersion();
+
         // Load existing metadata
         loadMetadata();
 
@@ -118,6 +189,34 @@ public class MigrationCache {
 
         logger.log(Level.INFO,
                 sm.getString("cache.enabled", cacheDir.getAbsolutePath(), Integer.valueOf(retentionDays)));
+        if (!(storage instanceof LocalDirectoryCacheStorage)) {
+            logger.log(Level.INFO, sm.getString("cache.storage", storage));
+        }
+    }
+
+    /**
+     * Check the version of the key format used by the stored entries, and
+     * remove them if it is not the current one.
+     *
+     * @throws IOException if the entries or the version cannot be updated
+     */
+    private void checkKeyVersion() throws IOException {
+        File versionFile = new File(cacheDir, VERSION_FILE);
+        String version = null;
+        if (versionFile.exists()) {
+            version = new String(Files.readAllBytes(versionFile.toPath()), StandardCharsets.UTF_8).trim();
+        }
+        if (KEY_VERSION.equals(version)) {
+            return;
+        }
+        if (!storage.isShared() && !storage.keys().isEmpty()) {
+            logger.log(Level.INFO, sm.getString("cache.keyVersionChanged", version, KEY_VERSION));
+            storage.clear();
+        }
+        if (!Files.deleteIfExists(metadataFile.toPath()) && metadataFile.exists()) {
+            throw new IOException(sm.getString("cache.deleteFailed", metadataFile.getAbsolutePath()));
+        }
+        Files.write(versionFile.toPath(), KEY_VERSION.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -125,17 +224,16 @@ public class MigrationCache {
      * Scans the cache directory for temp-*.tmp files and deletes them.
      */
     private void cleanupTempFiles() {
-        File[] files = cacheDir.listFiles();
-        if (files != null) {
+        // Filter on the names only to avoid a metadata call per file
+        String[] names = cacheDir.list((dir, name) -> name.startsWith("temp-") && name.endsWith(".tmp"));
+        if (names != null) {
             int cleanedCount = 0;
-            for (File file : files) {
-                if (file.isFile() && file.getName().startsWith("temp-") && file.getName().endsWith(".tmp")) {
-                    if (file.delete()) {
-                        cleanedCount++;
-                        logger.log(Level.FINE, sm.getString("cache.tempfile.cleaned", file.getName()));
-                    } else {
-                        logger.log(Level.WARNING, sm.getString("cache.tempfile.cleanFailed", file.getName()));
-                    }
+            for (String name : names) {
+                if (new File(cacheDir, name).delete()) {
+                    cleanedCount++;
+                    logger.log(Level.FINE, sm.getString("cache.tempfile.cleaned", name));
+                } else {
+                    logger.log(Level.WARNING, sm.getString("cache.tempfile.cleanFailed", name));
                 }
             }
             if (cleanedCount > 0) {
@@ -146,16 +244,16 @@ public class MigrationCache {
 
     /**
      * Load cache metadata from disk.
-     * Format: hash|YYYY-MM-DD
+     * Format: hash|YYYY-MM-DD[|conversion_millis]
      * If file doesn't exist or is corrupt, assumes all existing cached jars were accessed today.
      */
     private void loadMetadata() {
         LocalDate today = LocalDate.now();
 
         if (!metadataFile.exists()) {
-            // Metadata file doesn't exist - scan cache directory and assume all files accessed today
+            // Metadata file doesn't exist - scan storage and assume all entries accessed today
             logger.log(Level.FINE, sm.getString("cache.metadata.notFound"));
-            scanCacheDirectory(today);
+            addStoredEntries(today);
             return;
         }
 
@@ -168,67 +266,56 @@ public class MigrationCache {
                 }
 
                 String[] parts = line.split("\\|");
-                if (parts.length == 2) {
+                if (parts.length == 2 || parts.length == 3) {
                     String hash = parts[0];
                     try {
                         LocalDate lastAccessed = LocalDate.parse(parts[1], DATE_FORMATTER);
                         cacheMetadata.put(hash, lastAccessed);
                     } catch (DateTimeParseException e) {
                         logger.log(Level.WARNING, sm.getString("cache.metadata.invalidDate", line));
+                        continue;
+                    }
+                    if (parts.length == 3) {
+                        try {
+                            conversionTimes.put(hash, Long.valueOf(parts[2]));
+                        } catch (NumberFormatException e) {
+                            logger.log(Level.WARNING, sm.getString("cache.metadata.invalidLine", line));
+                        }
                     }
                 } else {
                     logger.log(Level.WARNING, sm.getString("cache.metadata.invalidLine", line));
                 }
             }
 
-            // Check for any cached files not in metadata and add them with today's date
-            Set<String> existingHashes = scanCacheDirectory(null);
-            for (String hash : existingHashes) {
-                if (!cacheMetadata.containsKey(hash)) {
-                    cacheMetadata.put(hash, today);
-                }
-            }
+            // Drop entries no longer stored and add stored entries not in metadata with today's date
+            addStoredEntries(today);
 
             logger.log(Level.FINE, sm.getString("cache.metadata.loaded", Integer.valueOf(cacheMetadata.size())));
         } catch (IOException e) {
             // Corrupt or unreadable - assume all cached files accessed today
             logger.log(Level.WARNING, sm.getString("cache.metadata.loadError"), e);
             cacheMetadata.clear();
-            scanCacheDirectory(today);
+            conversionTimes.clear();
+            addStoredEntries(today);
         }
     }
 
     /**
-     * Scan cache directory for existing cache files and return their hashes.
-     * If accessDate is not null, adds all found hashes to metadata with that date.
+     * Add the entries held by the storage that are not yet tracked in the
+     * metadata, using the given access date. Unless the storage is shared,
+     * the metadata of entries the storage does not hold is dropped.
      *
-     * @param accessDate the date to use for all found files (null to not update metadata)
-     * @return set of hashes found in cache directory
+     * @param accessDate the date to use for the entries that are not tracked
      */
-    private Set<String> scanCacheDirectory(LocalDate accessDate) {
-        Set<String> hashes = new HashSet<>();
-
-        File[] subdirs = cacheDir.listFiles();
-        if (subdirs != null) {
-            for (File subdir : subdirs) {
-                if (subdir.isDirectory()) {
-                    File[] files = subdir.listFiles();
-                    if (files != null) {
-                        for (File file : files) {
-                            if (file.isFile() && file.getName().endsWith(".jar")) {
-                                String hash = file.getName().substring(0, file.getName().length() - 4);
-                                hashes.add(hash);
-                                if (accessDate != null) {
-                                    cacheMetadata.put(hash, accessDate);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+    private void addStoredEntries(LocalDate accessDate) {
+        Set<String> keys = storage.keys();
+        if (!storage.isShared()) {
+            cacheMetadata.keySet().retainAll(keys);
+            conversionTimes.keySet().retainAll(keys);
+        }
+        for (String hash : keys) {
+            cacheMetadata.putIfAbsent(hash, accessDate);
         }
-
-        return hashes;
     }
 
     /**
@@ -241,100 +328,195 @@ public class MigrationCache {
      * @throws IOException if an I/O error occurs
      */
     public CacheEntry getCacheEntry(byte[] sourceBytes, EESpecProfile profile) throws IOException {
-        // Compute hash once (includes profile)
-        String hash = computeHash(sourceBytes, profile);
+        Object event = events.beginCacheLookup();
+        try {
+            CacheEntry entry = getCacheEntryAsync(sourceBytes, profile).get();
+            events.endCacheLookup(event, entry.getHash(), sourceBytes.length, entry.exists(), profile);
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(sm.getString("cache.lookupError"), e);
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        }
+    }
 
-        // Get cache file location
-        File cachedFile = getCacheFile(hash);
-        boolean exists = cachedFile.exists();
 
-        // Create temp file for storing
-        File tempFile = new File(cacheDir, "temp-" + UUID.randomUUID() + ".tmp");
+    /**
+     * Get a cache entry for the given source bytes and profile without
+     * waiting for the storage lookup to complete. The lookup is completed by
+     * a thread of the storage, so no lookup event is recorded: it is up to
+     * the thread waiting for the lookup to record it.
+     *
+     * @param sourceBytes the pre-conversion content
+     * @param profile the migration profile being used
+     * @return a future providing the CacheEntry object for this entry
+     */
+    public CompletableFuture<CacheEntry> getCacheEntryAsync(byte[] sourceBytes, EESpecProfile profile) {
+        return getCacheEntryAsync(Util.sha256(sourceBytes), profile);
+    }
 
-        // Mark as accessed now
-        updateAccessTime(hash);
 
-        return new CacheEntry(hash, exists, cachedFile, tempFile);
+    /**
+     * Get a cache entry for the content with the given hash and profile
+     * without waiting for the storage lookup to complete. This avoids hashing
+     * the content again when it is looked up for several profiles.
+     *
+     * @param sourceHash the SHA-256 hash of the pre-conversion content
+     * @param profile the migration profile being used
+     * @return a future providing the CacheEntry object for this entry
+     */
+    CompletableFuture<CacheEntry> getCacheEntryAsync(String sourceHash, EESpecProfile profile) {
+        long start = System.nanoTime();
+        String hash = computeHash(sourceHash, profile);
+
+        return storage.lookup(hash).thenApply(size -> {
+            boolean exists = size.longValue() >= 0;
+            if (exists) {
+                // Misses are marked as accessed once they are stored
+                updateAccessTime(hash);
+            }
+            statistics.recordLookup(exists, System.nanoTime() - start);
+            // Create temp file for storing
+            File tempFile = new File(cacheDir, "temp-" + UUID.randomUUID() + ".tmp");
+            return new CacheEntry(this, hash, size.longValue(), tempFile);
+        });
     }
 
 
     /**
-     * Get the cache file for a given hash.
+     * Open a stored entry for reading.
      *
-     * @param hash the hash string
-     * @return the cache file
+     * @param hash the hash of the cache entry
+     * @return a stream providing the converted archive
      * @throws IOException if an I/O error occurs
      */
-    private File getCacheFile(String hash) throws IOException {
-        // Use subdirectories based on first 2 chars of hash to avoid too many files in one directory
-        String subdir = hash.substring(0, 2);
-        File subdirFile = new File(cacheDir, subdir);
-        if (!subdirFile.mkdirs() && !subdirFile.exists()) {
-            throw new IOException(sm.getString("cache.cannotCreate", subdirFile.getAbsolutePath()));
-        }
-        return new File(subdirFile, hash + ".jar");
+    InputStream openEntry(String hash) throws IOException {
+        return storage.open(hash);
     }
 
+
     /**
-     * Compute SHA-256 hash of the given bytes combined with the profile name.
-     * The profile is included to ensure different profiles produce different cache entries.
+     * Hand over a converted archive to the storage. Failures are logged,
+     * when the operation completes, and counted as rollbacks. They do not
+     * affect the migration, which has already written the converted archive
+     * to its destination.
      *
-     * @param bytes the bytes to hash
-     * @param profile the migration profile
-     * @return the hash as a hex string
-     * @throws IOException if hashing fails
+     * @param hash the hash of the cache entry
+     * @param tempFile the temporary file holding the converted archive
+     * @param conversionNanos the time taken to convert the archive
+     * @return false if the storage completed the operation immediately and
+     *         it failed
      */
-    private String computeHash(byte[] bytes, EESpecProfile profile) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            // Include profile name in hash to differentiate between profiles
-            digest.update(profile.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            digest.update(bytes);
-            byte[] hashBytes = digest.digest();
-
-            // Convert to hex string
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", Integer.valueOf(b & 0xFF)));
+    boolean storeEntry(String hash, File tempFile, long conversionNanos) {
+        long bytes = tempFile.length();
+        CompletableFuture<Void> store = storage.store(hash, tempFile);
+        if (store.isDone()) {
+            try {
+                store.join();
+            } catch (CompletionException e) {
+                entryRolledBack();
+                logger.log(Level.WARNING, sm.getString("cache.storeFailed", hash), e.getCause());
+                return false;
             }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IOException(sm.getString("cache.hashError"), e);
+            entryStored(hash, bytes, conversionNanos);
+        } else {
+            // Track the completion handler rather than the store itself so
+            // that waiting for pending stores includes updating the statistics
+            CompletableFuture<Void> tracked = store.handle((v, t) -> {
+                if (t == null) {
+                    entryStored(hash, bytes, conversionNanos);
+                } else {
+                    entryRolledBack();
+                    logger.log(Level.WARNING, sm.getString("cache.storeFailed", hash),
+                            t instanceof CompletionException ? t.getCause() : t);
+                }
+                return null;
+            });
+            pendingStores.add(tracked);
+            tracked.whenComplete((v, t) -> pendingStores.remove(tracked));
         }
+        return true;
     }
 
+
     /**
-     * Clear the cache directory.
-     *
-     * @throws IOException if an I/O error occurs
+     * Wait for any store operations that are still in progress.
      */
-    public void clear() throws IOException {
-        deleteDirectory(cacheDir);
-        cacheMetadata.clear();
-        if (!cacheDir.mkdirs() && !cacheDir.exists()) {
-            throw new IOException(sm.getString("cache.cannotCreate", cacheDir.getAbsolutePath()));
+    public void awaitPendingStores() {
+        for (CompletableFuture<Void> store : new ArrayList<>(pendingStores)) {
+            // Failures are handled, and logged, when the store completes
+            store.join();
         }
-        logger.log(Level.INFO, sm.getString("cache.cleared"));
     }
 
+
     /**
-     * Recursively delete a directory.
+     * Record that a cache entry has been copied to its destination.
+     *
+     * @param hash the hash of the cache entry
+     * @param bytes the number of bytes copied
+     */
+    void entryServed(String hash, long bytes) {
+        Long conversionMillis = conversionTimes.get(hash);
+        statistics.recordServed(bytes, conversionMillis == null ? 0 : conversionMillis.longValue());
+    }
+
+
+    /**
+     * Record that a converted archive has been stored in the cache.
+     *
+     * @param hash the hash of the cache entry
+     * @param bytes the size of the converted archive
+     * @param conversionNanos the time taken to convert the archive
+     */
+    void entryStored(String hash, long bytes, long conversionNanos) {
+        updateAccessTime(hash);
+        conversionTimes.put(hash, Long.valueOf(TimeUnit.NANOSECONDS.toMillis(conversionNanos)));
+        statistics.recordStore(bytes);
+    }
+
+
+    /**
+     * Record that storing a converted archive in the cache was rolled back.
+     */
+    void entryRolledBack() {
+        statistics.recordRollback();
+    }
+
+
+    /**
+     * Compute the cache key of the content with the given hash for the
+     * profile. The profile is included to ensure different profiles produce
+     * different cache entries.
+     *
+     * @param sourceHash the SHA-256 hash of the content
+     * @param profile the migration profile
+     * @return the hash as a hex string
+     */
+    static String computeHash(String sourceHash, EESpecProfile profile) {
+        return Util.sha256(profile.toString().getBytes(StandardCharsets.UTF_8),
+                sourceHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Clear the cache.
      *
-     * @param dir the directory to delete
      * @throws IOException if an I/O error occurs
      */
-    private void deleteDirectory(File dir) throws IOException {
-        if (dir.isDirectory()) {
-            File[] files = dir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    deleteDirectory(file);
-                }
-            }
+    public void clear() throws IOException {
+        awaitPendingStores();
+        storage.clear();
+        cacheMetadata.clear();
+        conversionTimes.clear();
+        if (!Files.deleteIfExists(metadataFile.toPath()) && metadataFile.exists()) {
+            throw new IOException(sm.getString("cache.deleteFailed", metadataFile.getAbsolutePath()));
         }
-        if (!Files.deleteIfExists(dir.toPath()) && dir.exists()) {
-            throw new IOException(sm.getString("cache.deleteFailed", dir.getAbsolutePath()));
+        cleanupTempFiles();
+        if (!cacheDir.mkdirs() && !cacheDir.exists()) {
+            throw new IOException(sm.getString("cache.cannotCreate", cacheDir.getAbsolutePath()));
         }
+        logger.log(Level.INFO, sm.getString("cache.cleared"));
     }
 
     /**
@@ -348,17 +530,22 @@ public class MigrationCache {
 
     /**
      * Save cache metadata to disk.
-     * Format: hash|YYYY-MM-DD
+     * Format: hash|YYYY-MM-DD[|conversion_millis]
      *
      * @throws IOException if an I/O error occurs
      */
     private void saveMetadata() throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(metadataFile))) {
-            writer.write("# Migration cache metadata - hash|last_access_date\n");
+            writer.write("# Migration cache metadata - hash|last_access_date|conversion_millis\n");
             for (Map.Entry<String, LocalDate> entry : cacheMetadata.entrySet()) {
                 writer.write(entry.getKey());
                 writer.write("|");
                 writer.write(entry.getValue().format(DATE_FORMATTER));
+                Long conversionMillis = conversionTimes.get(entry.getKey());
+                if (conversionMillis != null) {
+                    writer.write("|");
+                    writer.write(conversionMillis.toString());
+                }
                 writer.write("\n");
             }
         }
@@ -373,30 +560,35 @@ public class MigrationCache {
      * @throws IOException if an I/O error occurs
      */
     public void pruneCache() throws IOException {
+        awaitPendingStores();
+
         LocalDate cutoffDate = LocalDate.now().minusDays(retentionDays);
         int prunedCount = 0;
         long prunedSize = 0;
 
         Set<String> toRemove = new HashSet<>();
 
+        // The storage index decides which entries exist, the metadata only provides access times
+        addStoredEntries(LocalDate.now());
+
         for (Map.Entry<String, LocalDate> entry : cacheMetadata.entrySet()) {
             String hash = entry.getKey();
             LocalDate lastAccessed = entry.getValue();
 
             if (lastAccessed.isBefore(cutoffDate)) {
-                File cachedFile = getCacheFile(hash);
-                if (cachedFile.exists()) {
-                    long fileSize = cachedFile.length();
-                    if (cachedFile.delete()) {
+                long fileSize = storage.isShared() ? -1 : storage.lookup(hash).join().longValue();
+                if (fileSize >= 0) {
+                    if (storage.remove(hash)) {
                         prunedSize += fileSize;
                         prunedCount++;
                         toRemove.add(hash);
+                        statistics.recordEviction();
                         logger.log(Level.FINE, sm.getString("cache.pruned.entry", hash, lastAccessed));
                     } else {
                         logger.log(Level.WARNING, sm.getString("cache.pruned.failed", hash));
                     }
                 } else {
-                    // File doesn't exist, remove from metadata anyway
+                    // File doesn't exist or is shared, remove from metadata anyway
                     toRemove.add(hash);
                 }
             }
@@ -405,6 +597,7 @@ public class MigrationCache {
         // Remove pruned entries from metadata
         for (String hash : toRemove) {
             cacheMetadata.remove(hash);
+            conversionTimes.remove(hash);
         }
 
         // Save updated metadata
@@ -442,23 +635,88 @@ public class MigrationCache {
         long totalSize = 0;
         int entryCount = 0;
 
-        File[] subdirs = cacheDir.listFiles();
-        if (subdirs != null) {
-            for (File subdir : subdirs) {
-                if (subdir.isDirectory()) {
-                    File[] files = subdir.listFiles();
-                    if (files != null) {
-                        for (File file : files) {
-                            if (file.isFile()) {
-                                totalSize += file.length();
-                                entryCount++;
-                            }
-                        }
-                    }
-                }
+        for (String hash : storage.keys()) {
+            long size = storage.lookup(hash).join().longValue();
+            if (size >= 0) {
+                totalSize += size;
+                entryCount++;
             }
         }
 
         return sm.getString("cache.stats", Integer.valueOf(entryCount), Long.valueOf(totalSize / 1024 / 1024));
     }
+
+    /**
+     * Get the usage statistics for this cache.
+     *
+     * @return the statistics, updated as the cache is used
+     */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Register the statistics of this cache with the platform MBean server.
+     * Any MBean previously registered for the same cache directory is
+     * replaced. Registration failures are logged and otherwise ignored.
+     *
+     * @return the name under which the statistics were registered, or
+     *         {@code null} if the registration failed
+     */
+    public ObjectName registerMBean() {
+        try {
+            ObjectName name = new ObjectName("org.apache.tomcat.jakartaee:type=MigrationCache,directory=" +
+                    ObjectName.quote(cacheDir.getAbsolutePath()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(statistics, name);
+            objectName = name;
+            logger.log(Level.FINE, sm.getString("cache.jmx.registered", name));
+            return name;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, sm.getString("cache.jmx.registerFailed", cacheDir.getAbsolutePath()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregister the statistics of this cache from the platform MBean server,
+     * if they were previously registered with {@link #registerMBean()}.
+     */
+    public void unregisterMBean() {
+        ObjectName name = objectName;
+        if (name == null) {
+            return;
+        }
+        objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.FINE, sm.getString("cache.jmx.unregisterFailed", name), e);
+        }
+    }
+
+    /**
+     * Wait for pending store operations, unregister the statistics from JMX
+     * and close the storage.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        awaitPendingStores();
+        unregisterMBean();
+        storage.close();
+    }
+
+    private static IOException toIOException(Throwable t) {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        } else if (t instanceof UncheckedIOException) {
+            return ((UncheckedIOException) t).getCause();
+        }
+        return new IOException(t);
+    }
 }
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.IllegalClassFormatException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Class loader loading classes and resources from Java EE JARs and
+ * directories that have not been migrated, converting each class and text
+ * resource when it is first accessed. Only the classes and resources that are
+ * actually used pay the cost of the conversion.
+ * <p>
+ * Classes are converted with a {@link ClassConverter}, using this class
+ * loader to check that the target classes are available. Text resources, and
+ * class files read as resources, are converted with a {@link TextConverter}
+ * or a {@link ClassConverter} and the converted content is cached in memory.
+ * Classes and resources that were renamed by the conversion, such as service
+ * provider configuration files, are found using their converted name.
+ * <p>
+ * Since the converted classes no longer match any signature, classes are
+ * defined without code signers. Packages are defined, and sealed, using the
+ * manifest of the JAR holding the class as {@link URLClassLoader} does.
+ */
+public class MigrationClassLoader extends URLClassLoader {
+
+    private static final Logger logger = Logger.getLogger(MigrationClassLoader.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(MigrationClassLoader.class);
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final EESpecProfile profile;
+    private final ClassConverter classConverter;
+    private final TextConverter textConverter = new TextConverter();
+    private final Map<String, byte[]> convertedResources = new ConcurrentHashMap<>();
+    private final URLStreamHandler convertingHandler = new ConvertingHandler();
+
+    /**
+     * Create a class loader using the {@link EESpecProfiles#TOMCAT} profile.
+     *
+     * @param urls the unconverted JARs and directories
+     * @param parent the parent class loader, providing the target namespace
+     *        classes
+     */
+    public MigrationClassLoader(URL[] urls, ClassLoader parent) {
+        this(urls, parent, EESpecProfiles.TOMCAT);
+    }
+
+    /**
+     * Create a class loader.
+     *
+     * @param urls the unconverted JARs and directories
+     * @param parent the parent class loader, providing the target namespace
+     *        classes
+     * @param profile the specification profile to use
+     */
+    public MigrationClassLoader(URL[] urls, ClassLoader parent, EESpecProfile profile) {
+        super(urls, parent);
+        this.profile = profile;
+        this.classConverter = new ClassConverter(profile);
+    }
+
+    /**
+     * @return the specification profile used for the conversion
+     */
+    public EESpecProfile getEESpecProfile() {
+        return profile;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        // Classes that were renamed by the conversion are found like resources
+        URL url = findOriginalResource(path);
+        if (url == null) {
+            throw new ClassNotFoundException(name);
+        }
+        byte[] classBytes;
+        Manifest manifest = null;
+        try {
+            URLConnection connection = openUncached(url);
+            if (connection instanceof JarURLConnection) {
+                JarURLConnection jarConnection = (JarURLConnection) connection;
+                try (JarFile jarFile = jarConnection.getJarFile();
+                        InputStream is = jarFile.getInputStream(jarConnection.getJarEntry())) {
+                    manifest = jarFile.getManifest();
+                    classBytes = IOUtils.toByteArray(is);
+                }
+            } else {
+                try (InputStream is = connection.getInputStream()) {
+                    classBytes = IOUtils.toByteArray(is);
+                }
+            }
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        try {
+            byte[] converted = classConverter.transform(this, path.substring(0, path.length() - 6), null, null,
+                    classBytes);
+            if (converted != null) {
+                classBytes = converted;
+            }
+        } catch (IllegalClassFormatException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        URL location = getCodeSourceLocation(url, path);
+        defineClassPackage(name, manifest, location);
+        CodeSource codeSource = new CodeSource(location, (CodeSigner[]) null);
+        return defineClass(name, classBytes, 0, classBytes.length, codeSource);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        URL url = findOriginalResource(name);
+        return url == null ? null : convertingUrl(name, url);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        String originalName = getOriginalName(name);
+        Enumeration<URL> originals = super.findResources(originalName);
+        while (originals.hasMoreElements()) {
+            urls.add(convertingUrl(name, originals.nextElement()));
+        }
+        if (!originalName.equals(name)) {
+            // Resources that were already migrated
+            originals = super.findResources(name);
+            while (originals.hasMoreElements()) {
+                urls.add(convertingUrl(name, originals.nextElement()));
+            }
+        }
+        return Collections.enumeration(urls);
+    }
+
+    /**
+     * Clear the cache of converted resources.
+     */
+    public void clearCache() {
+        convertedResources.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        clearCache();
+        super.close();
+    }
+
+    private URL findOriginalResource(String name) {
+        String originalName = getOriginalName(name);
+        URL url = super.findResource(originalName);
+        if (url == null && !originalName.equals(name)) {
+            url = super.findResource(name);
+        }
+        return url;
+    }
+
+    /*
+     * Get the name the resource would have had before it was renamed by the
+     * conversion.
+     */
+    private String getOriginalName(String name) {
+        if (name.contains(profile.getTarget())) {
+            String originalName = name.replace(profile.getTarget(), profile.getSource());
+            if (profile.convert(originalName).equals(name)) {
+                return originalName;
+            }
+        }
+        return name;
+    }
+
+    private URL convertingUrl(String name, URL url) {
+        if (getConverter(name) == null) {
+            return url;
+        }
+        try {
+            return new URL(url, url.toExternalForm(), convertingHandler);
+        } catch (MalformedURLException e) {
+            // Should never happen since the URL is unchanged
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] getConvertedResource(URL url) throws IOException {
+        String key = url.toExternalForm();
+        byte[] converted = convertedResources.get(key);
+        if (converted == null) {
+            // Open the original URL, without the converting handler
+            try (InputStream is = openUncached(new URL(key)).getInputStream()) {
+                ByteBuffer original = ByteBuffer.wrap(IOUtils.toByteArray(is));
+                converted = Util.toByteArray(getConverter(url.getPath()).convert(url.getPath(), original, profile));
+            }
+            convertedResources.put(key, converted);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, sm.getString("migrationClassLoader.convertedResource", key));
+            }
+        }
+        return converted;
+    }
+
+    private BufferConverter getConverter(String name) {
+        if (classConverter.accepts(name)) {
+            return classConverter;
+        }
+        if (textConverter.accepts(name)) {
+            return textConverter;
+        }
+        return null;
+    }
+
+    private void defineClassPackage(String className, Manifest manifest, URL location) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot < 0) {
+            return;
+        }
+        String packageName = className.substring(0, lastDot);
+        Package pkg = getPackage(packageName);
+        if (pkg == null) {
+            try {
+                if (manifest == null) {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                } else {
+                    definePackage(packageName, manifest, location);
+                }
+                return;
+            } catch (IllegalArgumentException e) {
+                // Defined concurrently
+                pkg = getPackage(packageName);
+                if (pkg == null) {
+                    throw e;
+                }
+            }
+        }
+        if (pkg.isSealed() ? !pkg.isSealed(location) : manifest != null && isSealed(packageName, manifest)) {
+            throw new SecurityException(sm.getString("migrationClassLoader.sealingViolation", packageName));
+        }
+    }
+
+    /*
+     * The JVM wide cache of JAR files is not used so that closing this class
+     * loader releases the JARs. Closing the stream, or the JAR file, of the
+     * connection closes the JAR.
+     */
+    private static URLConnection openUncached(URL url) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static boolean isSealed(String packageName, Manifest manifest) {
+        String sealed = null;
+        Attributes attributes = manifest.getAttributes(packageName.replace('.', '/') + '/');
+        if (attributes != null) {
+            sealed = attributes.getValue(Attributes.Name.SEALED);
+        }
+        if (sealed == null) {
+            sealed = manifest.getMainAttributes().getValue(Attributes.Name.SEALED);
+        }
+        return "true".equalsIgnoreCase(sealed);
+    }
+
+    private static URL getCodeSourceLocation(URL url, String path) {
+        String spec = url.toExternalForm();
+        try {
+            if (spec.startsWith("jar:")) {
+                int separator = spec.indexOf("!/");
+                return new URL(spec.substring(4, separator));
+            }
+            if (spec.endsWith(path)) {
+                return new URL(spec.substring(0, spec.length() - path.length()));
+            }
+            return url;
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+
+    private class ConvertingHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException {
+            return new URLConnection(url) {
+
+                private byte[] content;
+
+                @Override
+                public void connect() throws IOException {
+                    if (content == null) {
+                        content = getConvertedResource(url);
+                        connected = true;
+                    }
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    connect();
+                    return new ByteArrayInputStream(content);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    try {
+                        connect();
+                    } catch (IOException e) {
+                        return -1;
+                    }
+                    return content.length;
+                }
+            };
+        }
+    }
+}
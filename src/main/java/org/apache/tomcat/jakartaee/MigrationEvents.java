@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Java Flight Recorder events for the migration. The events are implemented
+ * by {@code JfrMigrationEvents}, which is compiled separately for Java 11,
+ * packaged under {@code META-INF/versions/11} of the multi-release JAR and
+ * used when the JVM supports JFR. Otherwise, and while an event is not
+ * enabled in any recording, the methods do nothing.
+ * <p>
+ * Each {@code begin} method returns the event to pass to the matching
+ * {@code end} method, or {@code null} if the event is not enabled so that
+ * callers can skip collecting its data.
+ */
+abstract class MigrationEvents {
+
+    private static final Logger logger = Logger.getLogger(MigrationEvents.class.getCanonicalName());
+    private static final StringManager sm = StringManager.getManager(MigrationEvents.class);
+
+    private static final String JFR_EVENTS_CLASS = "org.apache.tomcat.jakartaee.JfrMigrationEvents";
+
+    private static final MigrationEvents INSTANCE = load();
+
+    static MigrationEvents get() {
+        return INSTANCE;
+    }
+
+    private static MigrationEvents load() {
+        try {
+            return (MigrationEvents) Class.forName(JFR_EVENTS_CLASS).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8, a JVM without the jdk.jfr module or a build for Java 8 only
+            logger.log(Level.FINE, sm.getString("migrationEvents.unavailable"), e);
+            return new NoMigrationEvents();
+        }
+    }
+
+    abstract Object beginArchive();
+
+    /**
+     * @param event the event returned by {@link #beginArchive()}
+     * @param name the name of the archive
+     * @param size the size of the source archive
+     * @param converted whether any entry of the archive was converted
+     * @param profiles the profiles the archive was converted for
+     */
+    abstract void endArchive(Object event, String name, long size, boolean converted, EESpecProfile... profiles);
+
+    abstract Object beginEntry();
+
+    /**
+     * @param event the event returned by {@link #beginEntry()}
+     * @param name the name of the file, entry or class
+     * @param converter the converter
+     * @param bytesIn the size of the source
+     * @param bytesOut the size of the result, for all profiles
+     * @param converted whether the content was converted
+     * @param profiles the profiles the content was converted for
+     */
+    abstract void endEntry(Object event, String name, Converter converter, long bytesIn, long bytesOut,
+            boolean converted, EESpecProfile... profiles);
+
+    abstract Object beginCacheLookup();
+
+    /**
+     * @param event the event returned by {@link #beginCacheLookup()}
+     * @param hash the hash of the cache entry
+     * @param size the size of the source archive
+     * @param hit whether the converted archive was found
+     * @param profile the profile of the conversion
+     */
+    abstract void endCacheLookup(Object event, String hash, long size, boolean hit, EESpecProfile profile);
+
+    /**
+     * Content that is too large to be held in memory was written to a
+     * temporary file.
+     *
+     * @param name the name of the file or entry, if known
+     * @param tempFile the path of the temporary file
+     * @param size the size of the content when it was written to the file
+     */
+    abstract void tempFileSpill(String name, String tempFile, long size);
+
+
+    private static final class NoMigrationEvents extends MigrationEvents {
+
+        @Override
+        Object beginArchive() {
+            return null;
+        }
+
+        @Override
+        void endArchive(Object event, String name, long size, boolean converted, EESpecProfile... profiles) {
+        }
+
+        @Override
+        Object beginEntry() {
+            return null;
+        }
+
+        @Override
+        void endEntry(Object event, String name, Converter converter, long bytesIn, long bytesOut,
+                boolean converted, EESpecProfile... profiles) {
+        }
+
+        @Override
+        Object beginCacheLookup() {
+            return null;
+        }
+
+        @Override
+        void endCacheLookup(Object event, String hash, long size, boolean hit, EESpecProfile profile) {
+        }
+
+        @Override
+        void tempFileSpill(String name, String tempFile, long size) {
+        }
+    }
+}
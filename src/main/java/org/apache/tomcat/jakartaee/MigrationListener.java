@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+/**
+ * Receives notifications of the progress of a {@link Migration}, for example
+ * to report the progress of the migration of a large application. All methods
+ * do nothing by default.
+ * <p>
+ * The listener is called from the thread executing the migration so
+ * implementations should return quickly. Dry runs do not notify the listener.
+ */
+public interface MigrationListener {
+
+    /**
+     * The migration started converting an archive. Nested archives that are
+     * copied from the cache, from an identical archive converted earlier in
+     * the run or without conversion because they are known to need none are
+     * not reported.
+     *
+     * @param name the name of the archive
+     */
+    default void archiveStarted(String name) {
+    }
+
+    /**
+     * The migration finished converting an archive.
+     *
+     * @param name the name of the archive
+     * @param converted {@code true} if the content of at least one entry of
+     *        the archive was converted
+     */
+    default void archiveFinished(String name, boolean converted) {
+    }
+
+    /**
+     * The content of a file or archive entry was converted.
+     *
+     * @param name the name of the file or entry
+     */
+    default void entryConverted(String name) {
+    }
+
+    /**
+     * A periodic snapshot of the progress of the migration. A final snapshot
+     * is published when the migration completes.
+     *
+     * @param progress the progress so far
+     */
+    default void progress(MigrationProgress progress) {
+    }
+}
@@ -0,0 +1,816 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics for a single run of a {@link Migration}, available from
+ * {@link Migration#getMetrics()} once the run has completed.
+ * <p>
+ * The time of the run is split between the {@link Stage}s. The split is
+ * exclusive: reading a nested archive from its enclosing archive counts as
+ * inflating once, and the time spent writing to a file while deflating counts
+ * as I/O only. The time recorded for each converter is inclusive of the
+ * inflating and deflating done while it reads and writes the entry. Stage
+ * timings are only collected when files are migrated, not by a dry run.
+ * <p>
+ * Each archive is also recorded individually, with the strategy used to
+ * migrate it, along with the {@value #SLOWEST_ENTRY_COUNT} entries that took
+ * the longest to convert.
+ */
+public class MigrationMetrics {
+
+    private static final StringManager sm = StringManager.getManager(MigrationMetrics.class);
+
+    /**
+     * The number of entries kept by {@link #getSlowestEntries()}.
+     */
+    public static final int SLOWEST_ENTRY_COUNT = 20;
+
+    private static final Comparator<EntryMetrics> BY_TIME =
+            Comparator.comparingLong(EntryMetrics::getTimeNanos);
+
+    /**
+     * The stages between which the time of a migration is split.
+     */
+    public enum Stage {
+        /**
+         * Reading and decompressing archive entries.
+         */
+        INFLATE,
+        /**
+         * Converting content and processing archives, everything that is not
+         * one of the other stages.
+         */
+        CONVERT,
+        /**
+         * Compressing and writing archive entries.
+         */
+        DEFLATE,
+        /**
+         * Reading source files and writing destination files.
+         */
+        IO
+    }
+
+    private final LongAdder[] stageTimes = new LongAdder[Stage.values().length];
+    private final Map<String, ConverterMetrics> converterMetrics = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder archives = new LongAdder();
+    private final LongAdder excluded = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder deduplicatedArchives = new LongAdder();
+    private final LongAdder cleanArchives = new LongAdder();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong peakBufferedBytes = new AtomicLong();
+    private volatile long peakHeapUsedBytes;
+    private volatile long elapsedTime;
+
+    // Only used by the thread running the migration
+    private final Deque<Stage> stages = new ArrayDeque<>();
+    private final Deque<ArchiveMetrics> openArchives = new ArrayDeque<>();
+    private final List<ArchiveMetrics> archiveMetrics = new ArrayList<>();
+    private final PriorityQueue<EntryMetrics> slowestEntries = new PriorityQueue<>(BY_TIME);
+    private Stage stage;
+    private long stageStart;
+    private long start;
+
+    MigrationMetrics() {
+        for (int i = 0; i < stageTimes.length; i++) {
+            stageTimes[i] = new LongAdder();
+        }
+    }
+
+    void start() {
+        start = System.nanoTime();
+        stage = Stage.CONVERT;
+        stageStart = start;
+    }
+
+    void stop() {
+        long now = System.nanoTime();
+        if (stage != null) {
+            stageTimes[stage.ordinal()].add(now - stageStart);
+            stage = null;
+        }
+        stages.clear();
+        openArchives.clear();
+        sampleHeap();
+        elapsedTime = now - start;
+    }
+
+    void enter(Stage newStage) {
+        if (stage == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        stageTimes[stage.ordinal()].add(now - stageStart);
+        stages.push(stage);
+        stage = newStage;
+        stageStart = now;
+    }
+
+    void exit() {
+        if (stage == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        stageTimes[stage.ordinal()].add(now - stageStart);
+        stage = stages.pop();
+        stageStart = now;
+    }
+
+    /*
+     * Streams timed as the given stage. Bytes are counted for the IO stage.
+     */
+    InputStream meter(InputStream src, Stage streamStage) {
+        return new MeteredInputStream(src, this, streamStage, streamStage == Stage.IO ? bytesRead : null);
+    }
+
+    OutputStream meter(OutputStream dest, Stage streamStage) {
+        return new MeteredOutputStream(dest, this, streamStage, streamStage == Stage.IO ? bytesWritten : null);
+    }
+
+    /*
+     * Streams that only count the bytes read or written through them.
+     */
+    static MeteredInputStream counting(InputStream src) {
+        return new MeteredInputStream(src, null, null, null);
+    }
+
+    static MeteredOutputStream counting(OutputStream dest) {
+        return new MeteredOutputStream(dest, null, null, null);
+    }
+
+    ConverterMetrics getConverterMetrics(Converter converter) {
+        return converterMetrics.computeIfAbsent(converter.getClass().getName(), k -> new ConverterMetrics());
+    }
+
+    void recordArchive() {
+        archives.increment();
+    }
+
+    /*
+     * Start recording an archive that is converted. Archives that are nested
+     * in it are recorded with the path of this archive.
+     */
+    ArchiveMetrics beginArchive(String name, ArchiveMetrics.Strategy strategy) {
+        ArchiveMetrics archive = new ArchiveMetrics(path(name), strategy);
+        archive.timeNanos = System.nanoTime();
+        openArchives.push(archive);
+        return archive;
+    }
+
+    void endArchive(ArchiveMetrics archive, boolean wasConverted, long bytesIn, long bytesOut) {
+        openArchives.remove(archive);
+        archive.timeNanos = System.nanoTime() - archive.timeNanos;
+        archive.converted = wasConverted;
+        archive.bytesIn = bytesIn;
+        archive.bytesOut = bytesOut;
+        archiveMetrics.add(archive);
+        sampleHeap();
+    }
+
+    /*
+     * Record a nested archive that was written without being converted.
+     */
+    void recordArchive(String name, ArchiveMetrics.Strategy strategy, boolean wasConverted, long bytesIn,
+            long bytesOut, long nanos) {
+        ArchiveMetrics archive = new ArchiveMetrics(path(name), strategy);
+        archive.timeNanos = nanos;
+        archive.converted = wasConverted;
+        archive.bytesIn = bytesIn;
+        archive.bytesOut = bytesOut;
+        archiveMetrics.add(archive);
+    }
+
+    /*
+     * Record an entry handled by a converter. The path of the entry is only
+     * built if it is one of the slowest entries so far.
+     */
+    void recordEntry(String name, Converter converter, boolean wasConverted, long nanos, long bytesIn,
+            long bytesOut) {
+        ArchiveMetrics archive = openArchives.peek();
+        if (archive != null) {
+            archive.entries++;
+            if (wasConverted) {
+                archive.convertedEntries++;
+            }
+        }
+        if (slowestEntries.size() < SLOWEST_ENTRY_COUNT || nanos > slowestEntries.peek().timeNanos) {
+            slowestEntries.add(new EntryMetrics(path(name), converter.getClass().getName(), wasConverted, nanos,
+                    bytesIn, bytesOut));
+            if (slowestEntries.size() > SLOWEST_ENTRY_COUNT) {
+                slowestEntries.poll();
+            }
+        }
+    }
+
+    private String path(String name) {
+        ArchiveMetrics archive = openArchives.peek();
+        if (archive == null) {
+            return name;
+        }
+        return archive.path + MigrationReport.ARCHIVE_SEPARATOR + name;
+    }
+
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        if (used > peakHeapUsedBytes) {
+            peakHeapUsedBytes = used;
+        }
+    }
+
+    void recordExcluded() {
+        excluded.increment();
+    }
+
+    void recordCacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+    }
+
+    void recordDeduplicated() {
+        deduplicatedArchives.increment();
+    }
+
+    void recordCleanArchive() {
+        cleanArchives.increment();
+    }
+
+    void buffered(long bytes) {
+        peakBufferedBytes.accumulateAndGet(bufferedBytes.addAndGet(bytes), Math::max);
+    }
+
+    void released(long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @param timedStage the stage
+     * @return the time spent in the given stage in nanoseconds
+     */
+    public long getTimeNanos(Stage timedStage) {
+        return stageTimes[timedStage.ordinal()].sum();
+    }
+
+    /**
+     * @return the duration of the migration in milliseconds
+     */
+    public long getElapsedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedTime);
+    }
+
+    /**
+     * @return the metrics of each converter that was used, keyed by the class
+     *         name of the converter
+     */
+    public Map<String, ConverterMetrics> getConverterMetrics() {
+        return new TreeMap<>(converterMetrics);
+    }
+
+    /**
+     * @return the number of bytes read from the source files
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return the number of bytes written to the destination files
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return the number of archives that were opened, including nested
+     *         archives
+     */
+    public long getArchiveCount() {
+        return archives.sum();
+    }
+
+    /**
+     * @return the number of files and entries copied unchanged because they
+     *         are excluded
+     */
+    public long getExcludedCount() {
+        return excluded.sum();
+    }
+
+    /**
+     * @return the number of nested archives served from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return the number of nested archives looked up in the cache and not
+     *         found
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the number of nested archives not converted because an
+     *         identical archive was converted earlier in the same run
+     */
+    public long getDeduplicatedArchiveCount() {
+        return deduplicatedArchives.sum();
+    }
+
+    /**
+     * @return the number of nested archives copied unchanged because they are
+     *         in the {@link CleanArchiveRegistry}
+     */
+    public long getCleanArchiveCount() {
+        return cleanArchives.sum();
+    }
+
+    /**
+     * @return the largest number of bytes held in memory at once for archives
+     *         and entries buffered by the migration
+     */
+    public long getPeakBufferedBytes() {
+        return peakBufferedBytes.get();
+    }
+
+    /**
+     * @return the largest amount of heap memory in use, in bytes, sampled
+     *         each time an archive has been converted and at the end of the
+     *         run. The samples include garbage that was not collected yet.
+     */
+    public long getPeakHeapUsedBytes() {
+        return peakHeapUsedBytes;
+    }
+
+    /**
+     * @return the metrics of each archive, in the order in which the archives
+     *         were completed, so nested archives come before the archive that
+     *         contains them
+     */
+    public List<ArchiveMetrics> getArchiveMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(archiveMetrics));
+    }
+
+    /**
+     * @return the entries that took the longest to convert, slowest first, at
+     *         most {@value #SLOWEST_ENTRY_COUNT}
+     */
+    public List<EntryMetrics> getSlowestEntries() {
+        List<EntryMetrics> result = new ArrayList<>(slowestEntries);
+        result.sort(BY_TIME.reversed());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        long entries = 0;
+        for (ConverterMetrics metrics : converterMetrics.values()) {
+            entries += metrics.getEntryCount();
+        }
+        return sm.getString("migrationMetrics.summary", Long.valueOf(getElapsedTimeMillis()), Long.valueOf(entries),
+                Long.valueOf(getArchiveCount()), Long.valueOf(getBytesRead()), Long.valueOf(getBytesWritten()),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(getTimeNanos(Stage.INFLATE))),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(getTimeNanos(Stage.CONVERT))),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(getTimeNanos(Stage.DEFLATE))),
+                Long.valueOf(TimeUnit.NANOSECONDS.toMillis(getTimeNanos(Stage.IO))),
+                Long.valueOf(getCacheHits()), Long.valueOf(getCacheMisses()), Long.valueOf(getPeakBufferedBytes()));
+    }
+
+
+    /**
+     * The metrics for the entries handled by one converter.
+     */
+    public static class ConverterMetrics {
+
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder converted = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder time = new LongAdder();
+
+        ConverterMetrics() {
+        }
+
+        MeteredInputStream meter(InputStream src) {
+            return new MeteredInputStream(src, null, null, bytesIn);
+        }
+
+        MeteredOutputStream meter(OutputStream dest) {
+            return new MeteredOutputStream(dest, null, null, bytesOut);
+        }
+
+        void record(boolean wasConverted, long nanos) {
+            entries.increment();
+            if (wasConverted) {
+                converted.increment();
+            }
+            time.add(nanos);
+        }
+
+        /**
+         * @return the number of entries handled by the converter
+         */
+        public long getEntryCount() {
+            return entries.sum();
+        }
+
+        /**
+         * @return the number of entries the converter converted
+         */
+        public long getConvertedCount() {
+            return converted.sum();
+        }
+
+        /**
+         * @return the number of bytes read by the converter
+         */
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        /**
+         * @return the number of bytes written by the converter, for all
+         *         profiles
+         */
+        public long getBytesOut() {
+            return bytesOut.sum();
+        }
+
+        /**
+         * @return the time spent in the converter in nanoseconds
+         */
+        public long getTimeNanos() {
+            return time.sum();
+        }
+    }
+
+
+    /**
+     * The metrics for one archive.
+     */
+    public static class ArchiveMetrics {
+
+        /**
+         * How an archive was migrated.
+         */
+        public enum Strategy {
+            /**
+             * The entries were read from and written to streams.
+             */
+            STREAMING,
+            /**
+             * The archive was read into memory and its entries were accessed
+             * directly.
+             */
+            IN_MEMORY,
+            /**
+             * The converted archive was copied from the cache.
+             */
+            CACHE_HIT,
+            /**
+             * The archive was identical to an archive converted earlier in
+             * the run, the result of which was copied.
+             */
+            DEDUPLICATED,
+            /**
+             * The archive is in the {@link CleanArchiveRegistry} and was
+             * copied unchanged.
+             */
+            CLEAN
+        }
+
+        private final String path;
+        private final Strategy strategy;
+        private long timeNanos;
+        private boolean converted;
+        private long entries;
+        private long convertedEntries;
+        private long bytesIn;
+        private long bytesOut;
+
+        ArchiveMetrics(String path, Strategy strategy) {
+            this.path = path;
+            this.strategy = strategy;
+        }
+
+        /**
+         * @return the path of the archive, with the paths of nested archives
+         *         separated by {@value MigrationReport#ARCHIVE_SEPARATOR}
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return how the archive was migrated
+         */
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * @return the time spent on the archive in nanoseconds, including the
+         *         archives nested in it
+         */
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        /**
+         * @return {@code true} if the archive was converted
+         */
+        public boolean isConverted() {
+            return converted;
+        }
+
+        /**
+         * @return the number of entries of the archive, excluding those of
+         *         nested archives, that were handled by a converter
+         */
+        public long getEntryCount() {
+            return entries;
+        }
+
+        /**
+         * @return the number of entries of the archive, excluding those of
+         *         nested archives, that were converted
+         */
+        public long getConvertedEntryCount() {
+            return convertedEntries;
+        }
+
+        /**
+         * @return the size of the source archive in bytes
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        /**
+         * @return the number of bytes written for the archive, for all
+         *         profiles
+         */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+    }
+
+
+    /**
+     * The metrics for one entry handled by a converter.
+     */
+    public static class EntryMetrics {
+
+        private final String path;
+        private final String converter;
+        private final boolean converted;
+        private final long timeNanos;
+        private final long bytesIn;
+        private final long bytesOut;
+
+        EntryMetrics(String path, String converter, boolean converted, long timeNanos, long bytesIn,
+                long bytesOut) {
+            this.path = path;
+            this.converter = converter;
+            this.converted = converted;
+            this.timeNanos = timeNanos;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+        }
+
+        /**
+         * @return the path of the entry, with the paths of archives separated
+         *         by {@value MigrationReport#ARCHIVE_SEPARATOR}
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the class name of the converter
+         */
+        public String getConverter() {
+            return converter;
+        }
+
+        /**
+         * @return {@code true} if the entry was converted
+         */
+        public boolean isConverted() {
+            return converted;
+        }
+
+        /**
+         * @return the time spent converting the entry in nanoseconds
+         */
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        /**
+         * @return the number of bytes read by the converter
+         */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        /**
+         * @return the number of bytes written by the converter, for all
+         *         profiles
+         */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+    }
+
+
+    /**
+     * Counts the bytes read, optionally timing the reads as a stage.
+     */
+    static class MeteredInputStream extends FilterInputStream {
+
+        private final MigrationMetrics metrics;
+        private final Stage stage;
+        private final LongAdder total;
+        private long count;
+
+        MeteredInputStream(InputStream in, MigrationMetrics metrics, Stage stage, LongAdder total) {
+            super(in);
+            this.metrics = metrics;
+            this.stage = stage;
+            this.total = total;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            if (metrics == null) {
+                b = in.read();
+            } else {
+                metrics.enter(stage);
+                try {
+                    b = in.read();
+                } finally {
+                    metrics.exit();
+                }
+            }
+            if (b >= 0) {
+                count++;
+                if (total != null) {
+                    total.increment();
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            if (metrics == null) {
+                n = in.read(b, off, len);
+            } else {
+                metrics.enter(stage);
+                try {
+                    n = in.read(b, off, len);
+                } finally {
+                    metrics.exit();
+                }
+            }
+            if (n > 0) {
+                count += n;
+                if (total != null) {
+                    total.add(n);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            if (total != null) {
+                total.add(skipped);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // Re-reading would be counted twice
+            return false;
+        }
+    }
+
+
+    /**
+     * Counts the bytes written, optionally timing the writes as a stage.
+     */
+    static class MeteredOutputStream extends FilterOutputStream {
+
+        private final MigrationMetrics metrics;
+        private final Stage stage;
+        private final LongAdder total;
+        private long count;
+
+        MeteredOutputStream(OutputStream out, MigrationMetrics metrics, Stage stage, LongAdder total) {
+            super(out);
+            this.metrics = metrics;
+            this.stage = stage;
+            this.total = total;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (metrics == null) {
+                out.write(b);
+            } else {
+                metrics.enter(stage);
+                try {
+                    out.write(b);
+                } finally {
+                    metrics.exit();
+                }
+            }
+            count++;
+            if (total != null) {
+                total.increment();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (metrics == null) {
+                out.write(b, off, len);
+            } else {
+                metrics.enter(stage);
+                try {
+                    out.write(b, off, len);
+                } finally {
+                    metrics.exit();
+                }
+            }
+            count += len;
+            if (total != null) {
+                total.add(len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Closing the wrapped stream is up to its owner
+            flush();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the progress of a migration, published to the
+ * {@link MigrationListener}.
+ * <p>
+ * Progress is measured in bytes of the source files read so far, compared
+ * with the total size of the source files. As archives are measured by their
+ * compressed size, the estimate of the remaining time assumes that the
+ * remaining content converts at the same rate as the content read so far.
+ * Nested archives are read before they are converted and, when
+ * {@link Migration#setZipInMemory(boolean)} is enabled, so are top level
+ * archives, so the estimate is less accurate for sources made of a few large
+ * archives.
+ */
+public final class MigrationProgress {
+
+    private static final StringManager sm = StringManager.getManager(MigrationProgress.class);
+
+    private final long bytesProcessed;
+    private final long totalBytes;
+    private final long archiveCount;
+    private final long entryCount;
+    private final long convertedEntryCount;
+    private final long elapsedTimeNanos;
+    private final boolean complete;
+
+    MigrationProgress(long bytesProcessed, long totalBytes, long archiveCount, long entryCount,
+            long convertedEntryCount, long elapsedTimeNanos, boolean complete) {
+        this.bytesProcessed = bytesProcessed;
+        this.totalBytes = totalBytes;
+        this.archiveCount = archiveCount;
+        this.entryCount = entryCount;
+        this.convertedEntryCount = convertedEntryCount;
+        this.elapsedTimeNanos = elapsedTimeNanos;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the number of bytes of the source files read so far
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @return the total size of the source files in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of archives converted so far
+     */
+    public long getArchiveCount() {
+        return archiveCount;
+    }
+
+    /**
+     * @return the number of files and archive entries, other than archives,
+     *         migrated so far
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the number of files and archive entries with content that was
+     *         converted so far
+     */
+    public long getConvertedEntryCount() {
+        return convertedEntryCount;
+    }
+
+    /**
+     * @return the time since the migration started in milliseconds
+     */
+    public long getElapsedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedTimeNanos);
+    }
+
+    /**
+     * @return {@code true} if this is the final snapshot of a completed
+     *         migration
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the percentage of the source processed so far, from 0 to 100
+     */
+    public int getPercentComplete() {
+        if (complete || totalBytes <= 0) {
+            return complete ? 100 : 0;
+        }
+        return (int) Math.min(100, bytesProcessed * 100 / totalBytes);
+    }
+
+    /**
+     * @return the average number of bytes of the source processed per
+     *         second, or {@code 0} if not known yet
+     */
+    public long getThroughput() {
+        if (elapsedTimeNanos <= 0) {
+            return 0;
+        }
+        return (long) (bytesProcessed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedTimeNanos);
+    }
+
+    /**
+     * @return the estimated time until the migration completes in
+     *         milliseconds, or {@code -1} if it cannot be estimated yet
+     */
+    public long getEstimatedTimeRemainingMillis() {
+        if (complete) {
+            return 0;
+        }
+        if (bytesProcessed <= 0) {
+            return -1;
+        }
+        long remainingBytes = Math.max(0, totalBytes - bytesProcessed);
+        return TimeUnit.NANOSECONDS.toMillis((long) (remainingBytes * (double) elapsedTimeNanos / bytesProcessed));
+    }
+
+    @Override
+    public String toString() {
+        long remaining = getEstimatedTimeRemainingMillis();
+        String key;
+        if (complete) {
+            key = "migrationProgress.complete";
+        } else if (remaining < 0) {
+            key = "migrationProgress.noEstimate";
+        } else {
+            key = "migrationProgress.summary";
+        }
+        return sm.getString(key, Integer.valueOf(getPercentComplete()), Long.valueOf(bytesProcessed),
+                Long.valueOf(totalBytes), Long.valueOf(archiveCount), Long.valueOf(convertedEntryCount),
+                Long.valueOf(entryCount), Long.valueOf(getThroughput() / 1024),
+                Long.valueOf(TimeUnit.MILLISECONDS.toSeconds(getElapsedTimeMillis())),
+                Long.valueOf(TimeUnit.MILLISECONDS.toSeconds(remaining)));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The result of a dry run, listing what a migration would change without
+ * writing anything. Entries inside archives are identified by the path of the
+ * archive followed by {@value #ARCHIVE_SEPARATOR} and the name of the entry,
+ * for example {@code app.war!/WEB-INF/lib/lib.jar!/org/example/Filter.class}.
+ * <p>
+ * The report is filled concurrently by the scan and is safe to read once
+ * {@link Migration#execute()} has returned.
+ */
+public class MigrationReport {
+
+    /**
+     * The separator between the path of an archive and the name of an entry
+     * inside it.
+     */
+    public static final String ARCHIVE_SEPARATOR = "!/";
+
+    private static final StringManager sm = StringManager.getManager(MigrationReport.class);
+
+    private final AtomicLong scannedEntries = new AtomicLong();
+    private final Queue<String> convertedEntries = new ConcurrentLinkedQueue<>();
+    private final Queue<String> renamedEntries = new ConcurrentLinkedQueue<>();
+    private final Queue<String> excludedEntries = new ConcurrentLinkedQueue<>();
+    private final Queue<String> signatureFiles = new ConcurrentLinkedQueue<>();
+
+    MigrationReport() {
+    }
+
+    void addScanned() {
+        scannedEntries.incrementAndGet();
+    }
+
+    void addConverted(String path) {
+        convertedEntries.add(path);
+    }
+
+    void addRenamed(String path) {
+        renamedEntries.add(path);
+    }
+
+    void addExcluded(String path) {
+        excludedEntries.add(path);
+    }
+
+    void addSignatureFile(String path) {
+        signatureFiles.add(path);
+    }
+
+    /**
+     * @return the number of files and archive entries that were scanned,
+     *         including the archives themselves
+     */
+    public long getScannedEntryCount() {
+        return scannedEntries.get();
+    }
+
+    /**
+     * @return {@code true} if the migration would convert the content of at
+     *         least one entry
+     */
+    public boolean hasConverted() {
+        return !convertedEntries.isEmpty();
+    }
+
+    /**
+     * @return the entries with content that would be converted, sorted by path
+     */
+    public List<String> getConvertedEntries() {
+        return sorted(convertedEntries);
+    }
+
+    /**
+     * @return the entries that would be written under a different name,
+     *         sorted by path
+     */
+    public List<String> getRenamedEntries() {
+        return sorted(renamedEntries);
+    }
+
+    /**
+     * @return the files and archives that would be copied without conversion
+     *         because they are excluded, sorted by path
+     */
+    public List<String> getExcludedEntries() {
+        return sorted(excludedEntries);
+    }
+
+    /**
+     * @return the signature files that would be removed, sorted by path
+     */
+    public List<String> getSignatureFiles() {
+        return sorted(signatureFiles);
+    }
+
+    /**
+     * The number of entries with content that would be converted in each
+     * archive, including the entries of the archives nested in it.
+     *
+     * @return the counts keyed by the path of the archive, sorted by path
+     */
+    public Map<String, Integer> getConvertedEntryCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String path : convertedEntries) {
+            int index = path.indexOf(ARCHIVE_SEPARATOR);
+            while (index >= 0) {
+                counts.merge(path.substring(0, index), Integer.valueOf(1), Integer::sum);
+                index = path.indexOf(ARCHIVE_SEPARATOR, index + ARCHIVE_SEPARATOR.length());
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return sm.getString("migrationReport.summary", Long.valueOf(getScannedEntryCount()),
+                Integer.valueOf(convertedEntries.size()), Integer.valueOf(renamedEntries.size()),
+                Integer.valueOf(excludedEntries.size()), Integer.valueOf(signatureFiles.size()));
+    }
+
+    private static List<String> sorted(Collection<String> paths) {
+        List<String> result = new ArrayList<>(paths);
+        Collections.sort(result);
+        return result;
+    }
+}
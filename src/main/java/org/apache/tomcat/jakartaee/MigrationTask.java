@@ -43,6 +43,7 @@ public class MigrationTask extends Task {
     private boolean zipInMemory = false;
     private String excludes;
     private boolean matchExcludesAgainstPathName;
+    private boolean progress;
 
     /**
      * Set the source file.
@@ -94,6 +95,15 @@ public class MigrationTask extends Task {
         this.matchExcludesAgainstPathName = matchExcludesAgainstPathName;
     }
 
+    /**
+     * Enable logging of the progress of the migration.
+     * @param progress true to periodically log the progress, throughput and
+     *                 estimated remaining time
+     */
+    public void setProgress(boolean progress) {
+        this.progress = progress;
+    }
+
     @Override
     public void execute() throws BuildException {
 
@@ -117,6 +127,14 @@ public class MigrationTask extends Task {
         migration.setEESpecProfile(profile);
         migration.setZipInMemory(zipInMemory);
         migration.setMatchExcludesAgainstPathName(matchExcludesAgainstPathName);
+        if (progress) {
+            migration.setListener(new MigrationListener() {
+                @Override
+                public void progress(MigrationProgress progress) {
+                    log(progress.toString());
+                }
+            });
+        }
         if (this.excludes != null) {
             String[] excludes = this.excludes.split(",");
             for (String exclude : excludes) {
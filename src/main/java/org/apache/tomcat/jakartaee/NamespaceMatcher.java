@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the source namespace with the target namespace wherever it is
+ * followed by a separator and one of a fixed set of packages, without using
+ * regular expressions.
+ * <p>
+ * The packages are given as strings where {@code '.'} matches either
+ * {@code '.'} or {@code '/'} and an optional {@code '!'} introduces a suffix
+ * that must not follow the package. For example {@code "transaction!.xa"}
+ * matches {@code transaction} unless it is followed by {@code .xa} or
+ * {@code /xa}. Packages are matched as prefixes, the same way as the
+ * equivalent regular expression returned by {@link #getPattern()}:
+ * <pre>
+ * {source}([/\.]({package 1}|{package 2}|...))
+ * </pre>
+ * The packages are held in a trie so each occurrence of the source namespace
+ * is checked in a single pass, and the input is returned unchanged, without
+ * any allocation, if the source namespace does not appear in it. Text may be
+ * converted either as a {@code String} or directly as bytes. Bytes are
+ * searched for the source namespace using the Boyer-Moore-Horspool algorithm.
+ */
+final class NamespaceMatcher {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final String source;
+    private final String target;
+    private final byte[] sourceBytes;
+    private final byte[] targetBytes;
+    private final int[] skip = new int[256];
+    private final Node root = new Node();
+    private final Pattern pattern;
+    private final int maxMatchLength;
+
+    NamespaceMatcher(String source, String target, List<String> packages) {
+        this.source = source;
+        this.target = target;
+        this.sourceBytes = source.getBytes(StandardCharsets.ISO_8859_1);
+        this.targetBytes = target.getBytes(StandardCharsets.ISO_8859_1);
+        // Distance from the last occurrence of each byte to the end of the source
+        int last = sourceBytes.length - 1;
+        Arrays.fill(skip, sourceBytes.length);
+        for (int i = 0; i < last; i++) {
+            skip[sourceBytes[i] & 0xFF] = last - i;
+        }
+        StringBuilder regex = new StringBuilder();
+        regex.append(source).append("([/\\.](");
+        boolean first = true;
+        int maxPackageLength = 0;
+        for (String pkg : packages) {
+            maxPackageLength = Math.max(maxPackageLength, pkg.length());
+            int negation = pkg.indexOf('!');
+            String name = negation < 0 ? pkg : pkg.substring(0, negation);
+            String excluded = negation < 0 ? null : pkg.substring(negation + 1);
+            root.add(name, 0, excluded);
+            if (!first) {
+                regex.append('|');
+            }
+            first = false;
+            appendRegex(regex, name);
+            if (excluded != null) {
+                regex.append("(?!");
+                appendRegex(regex, excluded);
+                regex.append(')');
+            }
+        }
+        regex.append("))");
+        this.pattern = Pattern.compile(regex.toString());
+        // Source, separator and the longest package including any excluded suffix
+        this.maxMatchLength = source.length() + 1 + maxPackageLength;
+    }
+
+    /**
+     * @return a regular expression equivalent to this matcher, with the
+     *         package in the first group
+     */
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Convert the given text.
+     *
+     * @param text the text to convert
+     * @return the converted text or the same instance if nothing was
+     *         converted
+     */
+    String convert(String text) {
+        int index = text.indexOf(source);
+        if (index < 0) {
+            return text;
+        }
+        StringBuilder result = null;
+        int copied = 0;
+        int length = text.length();
+        while (index >= 0) {
+            int end = index + source.length();
+            if (matches(text, end, length)) {
+                if (result == null) {
+                    result = new StringBuilder(length + 16);
+                }
+                result.append(text, copied, index).append(target);
+                copied = end;
+            } else {
+                end = index + 1;
+            }
+            index = text.indexOf(source, end);
+        }
+        if (result == null) {
+            return text;
+        }
+        result.append(text, copied, length);
+        return result.toString();
+    }
+
+    /**
+     * Convert the given bytes. Each byte is treated as an ISO-8859-1
+     * character, which works for any ASCII compatible encoding including
+     * UTF-8 since the namespaces and packages are ASCII.
+     *
+     * @param bytes the bytes to convert
+     * @return the converted bytes or the same instance if nothing was
+     *         converted
+     */
+    byte[] convert(byte[] bytes) {
+        byte[] result = convert(bytes, 0, bytes.length);
+        return result == null ? bytes : result;
+    }
+
+    /**
+     * Convert a range of the given bytes, as for {@link #convert(byte[])}.
+     *
+     * @param bytes the bytes to convert
+     * @param offset the first byte to convert
+     * @param length the number of bytes to convert
+     * @return the converted range or {@code null} if nothing was converted
+     */
+    byte[] convert(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int index = indexOf(bytes, offset, end);
+        if (index < 0) {
+            return null;
+        }
+        CharSequence text = new ByteCharSequence(bytes, end);
+        ByteArrayOutputStream result = null;
+        int copied = offset;
+        while (index >= 0) {
+            int matchEnd = index + sourceBytes.length;
+            if (matches(text, matchEnd, end)) {
+                if (result == null) {
+                    result = new ByteArrayOutputStream(length + 64);
+                }
+                result.write(bytes, copied, index - copied);
+                result.write(targetBytes, 0, targetBytes.length);
+                copied = matchEnd;
+            } else {
+                matchEnd = index + 1;
+            }
+            index = indexOf(bytes, matchEnd, end);
+        }
+        if (result == null) {
+            return null;
+        }
+        result.write(bytes, copied, end - copied);
+        return result.toByteArray();
+    }
+
+    /**
+     * Would {@link #convert(byte[])} change the given bytes? This is much
+     * cheaper than a conversion since nothing is copied, and is used to reject
+     * content with nothing to convert before parsing it.
+     *
+     * @param bytes the bytes to check
+     * @param offset the first byte to check
+     * @param length the number of bytes to check
+     * @return {@code true} if the bytes contain at least one match
+     */
+    boolean containsMatch(byte[] bytes, int offset, int length) {
+        CharSequence text = new ByteCharSequence(bytes, offset + length);
+        int end = offset + length;
+        int index = indexOf(bytes, offset, end);
+        while (index >= 0) {
+            if (matches(text, index + sourceBytes.length, end)) {
+                return true;
+            }
+            index = indexOf(bytes, index + 1, end);
+        }
+        return false;
+    }
+
+    /**
+     * Would {@link #convert(InputStream, OutputStream)} change the given
+     * stream? Reading stops at the first match.
+     *
+     * @param src the stream to check
+     * @return {@code true} if the stream contains at least one match
+     * @throws IOException if an I/O error occurs
+     */
+    boolean containsMatch(InputStream src) throws IOException {
+        byte[] buffer = new byte[Math.max(STREAM_BUFFER_SIZE, 2 * maxMatchLength)];
+        ByteCharSequence text = new ByteCharSequence(buffer, 0);
+        boolean eof = false;
+        int limit = 0;
+        while (!eof) {
+            int read = src.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+            // As for convert(), later matches wait for more input
+            int safeEnd = eof ? limit : limit - maxMatchLength + 1;
+            text.length = limit;
+            int index = indexOf(buffer, 0, limit);
+            while (index >= 0 && index < safeEnd) {
+                if (matches(text, index + sourceBytes.length, limit)) {
+                    return true;
+                }
+                index = indexOf(buffer, index + 1, limit);
+            }
+            if (safeEnd > 0) {
+                System.arraycopy(buffer, safeEnd, buffer, 0, limit - safeEnd);
+                limit -= safeEnd;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Convert a stream, holding at most a fixed size window of it in memory.
+     * The output is identical to converting the whole content at once.
+     *
+     * @param src the stream to convert
+     * @param dest the stream to write the converted content to
+     * @return {@code true} if anything was converted
+     * @throws IOException if an I/O error occurs
+     */
+    boolean convert(InputStream src, OutputStream dest) throws IOException {
+        return convert(src, dest, STREAM_BUFFER_SIZE);
+    }
+
+    /*
+     * Package private so tests can use a small buffer to exercise matches
+     * that span reads.
+     */
+    boolean convert(InputStream src, OutputStream dest, int bufferSize) throws IOException {
+        // The window must hold a complete match after the retained tail
+        byte[] buffer = new byte[Math.max(bufferSize, 2 * maxMatchLength)];
+        ByteCharSequence text = new ByteCharSequence(buffer, 0);
+        boolean converted = false;
+        boolean eof = false;
+        int limit = 0;
+        while (!eof) {
+            int read = src.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+            /*
+             * A match starting before safeEnd can be decided with the bytes
+             * that are available. Later ones wait for more input.
+             */
+            int safeEnd = eof ? limit : limit - maxMatchLength + 1;
+            text.length = limit;
+            int copied = 0;
+            int index = indexOf(buffer, 0, limit);
+            while (index >= 0 && index < safeEnd) {
+                int end = index + sourceBytes.length;
+                if (matches(text, end, limit)) {
+                    dest.write(buffer, copied, index - copied);
+                    dest.write(targetBytes);
+                    copied = end;
+                    converted = true;
+                } else {
+                    end = index + 1;
+                }
+                index = indexOf(buffer, end, limit);
+            }
+            if (copied < safeEnd) {
+                dest.write(buffer, copied, safeEnd - copied);
+                copied = safeEnd;
+            }
+            // Keep the undecided tail for the next pass
+            System.arraycopy(buffer, copied, buffer, 0, limit - copied);
+            limit -= copied;
+        }
+        dest.flush();
+        return converted;
+    }
+
+    private int indexOf(byte[] bytes, int fromIndex, int length) {
+        int last = sourceBytes.length - 1;
+        int i = fromIndex;
+        while (i + last < length) {
+            int j = last;
+            while (bytes[i + j] == sourceBytes[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += skip[bytes[i + last] & 0xFF];
+        }
+        return -1;
+    }
+
+    /*
+     * Is there a separator followed by one of the packages at the given
+     * position?
+     */
+    private boolean matches(CharSequence text, int start, int length) {
+        if (start >= length || !isSeparator(text.charAt(start))) {
+            return false;
+        }
+        Node node = root;
+        for (int i = start + 1; i < length; i++) {
+            node = node.get(text.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal && !node.isExcluded(text, i + 1, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == '/';
+    }
+
+    private static void appendRegex(StringBuilder regex, String name) {
+        int start = 0;
+        int separator;
+        while ((separator = name.indexOf('.', start)) >= 0) {
+            regex.append(name, start, separator).append("[/\\.]");
+            start = separator + 1;
+        }
+        regex.append(name, start, name.length());
+    }
+
+
+    /*
+     * Read only view of bytes as ISO-8859-1 characters, so that the same
+     * matching code is used for text and for bytes.
+     */
+    private static final class ByteCharSequence implements CharSequence {
+
+        private final byte[] bytes;
+        private int length;
+
+        private ByteCharSequence(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+        private boolean unconditional;
+        private List<String> excluded;
+
+        private void add(String name, int offset, String excludedSuffix) {
+            if (offset == name.length()) {
+                terminal = true;
+                if (excludedSuffix == null) {
+                    unconditional = true;
+                } else {
+                    if (excluded == null) {
+                        excluded = new ArrayList<>();
+                    }
+                    excluded.add(excludedSuffix);
+                }
+                return;
+            }
+            char c = name.charAt(offset);
+            Node child = get(c);
+            if (child == null) {
+                child = new Node();
+                int size = keys.length;
+                char[] newKeys = new char[size + 1];
+                Node[] newChildren = new Node[size + 1];
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(children, 0, newChildren, 0, size);
+                newKeys[size] = c;
+                newChildren[size] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            child.add(name, offset + 1, excludedSuffix);
+        }
+
+        private Node get(char c) {
+            // Separators are always stored as '.'
+            if (c == '/') {
+                c = '.';
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /*
+         * As for the equivalent alternation, the match is excluded only if
+         * every suffix that may not follow this package is present.
+         */
+        private boolean isExcluded(CharSequence text, int start, int length) {
+            if (unconditional || excluded == null) {
+                return false;
+            }
+            for (String suffix : excluded) {
+                if (start + suffix.length() > length) {
+                    return false;
+                }
+                for (int i = 0; i < suffix.length(); i++) {
+                    char expected = suffix.charAt(i);
+                    char actual = text.charAt(start + i);
+                    if (expected == '.' ? !isSeparator(actual) : expected != actual) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
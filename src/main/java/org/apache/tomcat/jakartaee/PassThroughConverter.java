@@ -50,4 +50,10 @@ public class PassThroughConverter implements Converter {
         }
         return false;
     }
+
+    @Override
+    public boolean needsConversion(String path, InputStream src, EESpecProfile profile) {
+        // Nothing to read
+        return false;
+    }
 }
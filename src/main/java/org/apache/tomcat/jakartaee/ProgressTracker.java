@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Tracks the progress of a migration for a {@link MigrationListener} and
+ * publishes a {@link MigrationProgress} snapshot at most once per interval.
+ * Without a listener, nothing is tracked. Not thread safe, as the migration
+ * itself runs in a single thread.
+ */
+final class ProgressTracker {
+
+    private final MigrationListener listener;
+    private final long totalBytes;
+    private final long intervalNanos;
+    private final long startNanos;
+    private long nextReportNanos;
+    private long bytesProcessed;
+    private long archiveCount;
+    private long entryCount;
+    private long convertedEntryCount;
+
+    /**
+     * @param listener the listener, may be {@code null}
+     * @param totalBytes the total size of the source files
+     * @param intervalMillis the interval between snapshots
+     */
+    ProgressTracker(MigrationListener listener, long totalBytes, long intervalMillis) {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.startNanos = System.nanoTime();
+        this.nextReportNanos = startNanos + intervalNanos;
+    }
+
+    /**
+     * Count the bytes read from a source file.
+     *
+     * @param src the stream of the source file
+     * @return the stream to read the source file from
+     */
+    InputStream track(InputStream src) {
+        if (listener == null) {
+            return src;
+        }
+        return new TrackingInputStream(src);
+    }
+
+    void archiveStarted(String name) {
+        if (listener == null) {
+            return;
+        }
+        listener.archiveStarted(name);
+        maybeReport();
+    }
+
+    void archiveFinished(String name, boolean converted) {
+        if (listener == null) {
+            return;
+        }
+        archiveCount++;
+        listener.archiveFinished(name, converted);
+        maybeReport();
+    }
+
+    void entryMigrated(String name, boolean converted) {
+        if (listener == null) {
+            return;
+        }
+        entryCount++;
+        if (converted) {
+            convertedEntryCount++;
+            listener.entryConverted(name);
+        }
+        maybeReport();
+    }
+
+    /**
+     * Publish the final snapshot.
+     */
+    void complete() {
+        if (listener == null) {
+            return;
+        }
+        listener.progress(snapshot(System.nanoTime(), true));
+    }
+
+    private void maybeReport() {
+        long now = System.nanoTime();
+        if (now - nextReportNanos >= 0) {
+            nextReportNanos = now + intervalNanos;
+            listener.progress(snapshot(now, false));
+        }
+    }
+
+    private MigrationProgress snapshot(long now, boolean complete) {
+        return new MigrationProgress(bytesProcessed, totalBytes, archiveCount, entryCount, convertedEntryCount,
+                now - startNanos, complete);
+    }
+
+
+    private class TrackingInputStream extends ProxyInputStream {
+
+        TrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                bytesProcessed += n;
+                maybeReport();
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                bytesProcessed += skipped;
+                maybeReport();
+            }
+            return skipped;
+        }
+    }
+}
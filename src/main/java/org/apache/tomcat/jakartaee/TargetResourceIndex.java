@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records which classes in the target namespace are available from a class
+ * loader, so that the transformer looks up each class at most once per class
+ * loader rather than once per reference. The indexes are held weakly and are
+ * discarded along with their class loader.
+ */
+final class TargetResourceIndex {
+
+    private static final Map<ClassLoader, TargetResourceIndex> indexes =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /*
+     * The index must not hold a strong reference to its class loader or the
+     * weak key would never be cleared.
+     */
+    private final WeakReference<ClassLoader> loader;
+    private final Map<String, Boolean> classes = new ConcurrentHashMap<>();
+
+    private TargetResourceIndex(ClassLoader loader) {
+        this.loader = new WeakReference<>(loader);
+    }
+
+    /**
+     * Get the index for a class loader, creating it if necessary.
+     *
+     * @param loader the class loader
+     * @return the index for the class loader
+     */
+    static TargetResourceIndex getIndex(ClassLoader loader) {
+        return indexes.computeIfAbsent(loader, TargetResourceIndex::new);
+    }
+
+    /**
+     * Is the given class available from the class loader?
+     *
+     * @param className the internal name of the class, using {@code '/'} as
+     *        the separator
+     * @return {@code true} if the class file is available
+     */
+    boolean isAvailable(String className) {
+        Boolean available = classes.get(className);
+        if (available == null) {
+            ClassLoader classLoader = loader.get();
+            if (classLoader == null) {
+                return false;
+            }
+            available = Boolean.valueOf(classLoader.getResource(className + ".class") != null);
+            classes.put(className, available);
+        }
+        return available.booleanValue();
+    }
+
+    /**
+     * @return the number of classes that have been looked up
+     */
+    int size() {
+        return classes.size();
+    }
+}
@@ -16,41 +16,44 @@
  */
 package org.apache.tomcat.jakartaee;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
+
 /**
  * Converter for text resources.
  */
-public class TextConverter implements Converter {
+public class TextConverter implements BufferConverter {
 
     private static final Logger logger = Logger.getLogger(TextConverter.class.getCanonicalName());
     private static final StringManager sm = StringManager.getManager(TextConverter.class);
 
-    private static final List<String> supportedExtensions;
+    private static final Set<String> supportedExtensions;
 
     static {
-        supportedExtensions = new ArrayList<>();
-        supportedExtensions.add("java");
-        supportedExtensions.add("jsp");
-        supportedExtensions.add("jspf");
-        supportedExtensions.add("jspx");
-        supportedExtensions.add("tag");
-        supportedExtensions.add("tagf");
-        supportedExtensions.add("tagx");
-        supportedExtensions.add("tld");
-        supportedExtensions.add("txt");
-        supportedExtensions.add("xml");
-        supportedExtensions.add("json");
-        supportedExtensions.add("properties");
-        supportedExtensions.add("groovy");
+        Set<String> extensions = new LinkedHashSet<>();
+        extensions.add("java");
+        extensions.add("jsp");
+        extensions.add("jspf");
+        extensions.add("jspx");
+        extensions.add("tag");
+        extensions.add("tagf");
+        extensions.add("tagx");
+        extensions.add("tld");
+        extensions.add("txt");
+        extensions.add("xml");
+        extensions.add("json");
+        extensions.add("properties");
+        extensions.add("groovy");
+        supportedExtensions = Collections.unmodifiableSet(extensions);
     }
 
     /**
@@ -60,27 +63,79 @@ public class TextConverter implements Converter {
 
     @Override
     public boolean accepts(String filename) {
-        String extension = Util.getExtension(filename);
+        for (String extension : supportedExtensions) {
+            if (Util.hasExtension(filename, extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return supportedExtensions.contains(extension);
+    @Override
+    public Set<String> getExtensions() {
+        return supportedExtensions;
     }
 
 
     /*
-     * This is a bit of a hack so the same Pattern can be used for text files as
-     * for Strings in class files. An approach that worked directly on the
-     * streams would be more efficient - but also require significantly more
-     * code. Since the conversion process is intended to be a one-time process,
-     * this implementation opts for simplicity of code over efficiency of
-     * execution.
+     * The conversion works directly on the bytes, treated as ISO-8859-1, so
+     * that any ASCII compatible encoding is preserved. The built-in profiles
+     * stream the content through a small window, so that memory use does not
+     * depend on the size of the resource. Other profiles convert the whole
+     * content at once and, if nothing needs to be converted, the original
+     * bytes are written out unchanged.
      */
     @Override
     public boolean convert(String path, InputStream src, OutputStream dest, EESpecProfile profile) throws IOException {
-        String srcString = Util.toString(src, StandardCharsets.ISO_8859_1);
-        String destString = profile.convert(srcString);
+        boolean converted;
+        if (profile instanceof EESpecProfiles) {
+            converted = ((EESpecProfiles) profile).convert(src, dest);
+        } else {
+            byte[] srcBytes = IOUtils.toByteArray(src);
+            byte[] destBytes = profile.convert(srcBytes);
+            // Object comparison is deliberate here
+            converted = srcBytes != destBytes;
+            dest.write(destBytes);
+            dest.flush();
+        }
+
+        log(path, converted);
+        return converted;
+    }
+
+
+    @Override
+    public ByteBuffer convert(String path, ByteBuffer src, EESpecProfile profile) {
+        byte[] converted;
+        if (profile instanceof EESpecProfiles && src.hasArray()) {
+            // Reads the content from the backing array without copying it
+            converted = ((EESpecProfiles) profile).getMatcher().convert(src.array(),
+                    src.arrayOffset() + src.position(), src.remaining());
+        } else {
+            byte[] srcBytes = Util.toByteArray(src);
+            byte[] destBytes = profile.convert(srcBytes);
+            // Object comparison is deliberate here
+            converted = srcBytes == destBytes ? null : destBytes;
+        }
+
+        log(path, converted != null);
+        return converted == null ? src : ByteBuffer.wrap(converted);
+    }
+
+
+    @Override
+    public boolean needsConversion(String path, InputStream src, EESpecProfile profile) throws IOException {
+        if (profile instanceof EESpecProfiles) {
+            // Stops reading at the first match
+            return ((EESpecProfiles) profile).getMatcher().containsMatch(src);
+        }
+        byte[] srcBytes = IOUtils.toByteArray(src);
         // Object comparison is deliberate here
-        boolean converted = srcString != destString;
+        return profile.convert(srcBytes) != srcBytes;
+    }
+
 
+    private static void log(String path, boolean converted) {
         if (converted) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.log(Level.FINE, sm.getString("textConverter.converted", path));
@@ -90,10 +145,5 @@ public class TextConverter implements Converter {
                 logger.log(Level.FINEST, sm.getString("textConverter.noConversion", path));
             }
         }
-
-        ByteArrayInputStream bais = new ByteArrayInputStream(destString.getBytes(StandardCharsets.ISO_8859_1));
-        Util.copy(bais, dest);
-
-        return converted;
     }
 }
@@ -20,7 +20,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
 
 /**
@@ -44,6 +47,80 @@ public class Util {
         return filename.substring(lastPeriod + 1).toLowerCase(Locale.ENGLISH);
     }
 
+    /**
+     * Check the extension of a filename, ignoring case, without allocating.
+     *
+     * @param filename the name of the file
+     * @param extension the extension, without the leading '{@code .}'
+     * @return true if the filename has the given extension
+     */
+    public static boolean hasExtension(String filename, String extension) {
+        int start = filename.length() - extension.length();
+        return start > 0 && filename.charAt(start - 1) == '.' &&
+                filename.regionMatches(true, start, extension, 0, extension.length());
+    }
+
+    /**
+     * Get the remaining content of a buffer as an array. The backing array
+     * is returned as is if it holds exactly the remaining content, otherwise
+     * the content is copied. The position of the buffer is not changed.
+     *
+     * @param buffer the buffer
+     * @return the content of the buffer
+     */
+    public static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 &&
+                buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * Compute the SHA-256 hash of the concatenation of some content.
+     *
+     * @param parts the content to hash
+     * @return the hash as a lower case hex string
+     */
+    static String sha256(byte[]... parts) {
+        MessageDigest digest = newSha256Digest();
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Create a SHA-256 digest, for content that is hashed as it is streamed.
+     *
+     * @return the digest
+     */
+    static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be supported by every JVM
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Convert a hash to a lower case hex string.
+     *
+     * @param hash the hash
+     * @return the hex string
+     */
+    static String toHexString(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     /**
      * Buffered copy.
      * @param is the input
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.apache.tomcat.jakartaee.CacheLookup")
+@Label("Cache Lookup")
+@Description("The lookup of a converted archive in the migration cache")
+@Category({ "Apache Tomcat", "Jakarta EE Migration" })
+class CacheLookupEvent extends jdk.jfr.Event {
+
+    @Label("Hash")
+    String hash;
+
+    @Label("Size")
+    @Description("The size of the source archive")
+    @DataAmount
+    long size;
+
+    @Label("Hit")
+    boolean hit;
+
+    @Label("Profile")
+    String profile;
+}
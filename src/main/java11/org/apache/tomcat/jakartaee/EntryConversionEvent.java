@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.apache.tomcat.jakartaee.EntryConversion")
+@Label("Entry Conversion")
+@Description("The conversion of a file, archive entry or class by a converter")
+@Category({ "Apache Tomcat", "Jakarta EE Migration" })
+class EntryConversionEvent extends jdk.jfr.Event {
+
+    @Label("Entry")
+    String entry;
+
+    @Label("Converter")
+    String converter;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @Description("The size of the result, for all profiles")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Converted")
+    boolean converted;
+
+    @Label("Profile")
+    String profile;
+}
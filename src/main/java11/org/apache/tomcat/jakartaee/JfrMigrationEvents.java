@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+/**
+ * The Java Flight Recorder implementation of {@link MigrationEvents}, compiled
+ * for Java 11 and loaded by name when JFR is available.
+ */
+public final class JfrMigrationEvents extends MigrationEvents {
+
+    /**
+     * Create the JFR events. Used by {@link MigrationEvents}.
+     */
+    public JfrMigrationEvents() {
+    }
+
+    @Override
+    Object beginArchive() {
+        ArchiveConversionEvent event = new ArchiveConversionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endArchive(Object event, String name, long size, boolean converted, EESpecProfile... profiles) {
+        if (event == null) {
+            return;
+        }
+        ArchiveConversionEvent archiveEvent = (ArchiveConversionEvent) event;
+        archiveEvent.end();
+        if (archiveEvent.shouldCommit()) {
+            archiveEvent.archive = name;
+            archiveEvent.size = size;
+            archiveEvent.converted = converted;
+            archiveEvent.profile = toString(profiles);
+            archiveEvent.commit();
+        }
+    }
+
+    @Override
+    Object beginEntry() {
+        EntryConversionEvent event = new EntryConversionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endEntry(Object event, String name, Converter converter, long bytesIn, long bytesOut,
+            boolean converted, EESpecProfile... profiles) {
+        if (event == null) {
+            return;
+        }
+        EntryConversionEvent entryEvent = (EntryConversionEvent) event;
+        entryEvent.end();
+        if (entryEvent.shouldCommit()) {
+            entryEvent.entry = name;
+            entryEvent.converter = converter.getClass().getName();
+            entryEvent.bytesIn = bytesIn;
+            entryEvent.bytesOut = bytesOut;
+            entryEvent.converted = converted;
+            entryEvent.profile = toString(profiles);
+            entryEvent.commit();
+        }
+    }
+
+    @Override
+    Object beginCacheLookup() {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endCacheLookup(Object event, String hash, long size, boolean hit, EESpecProfile profile) {
+        if (event == null) {
+            return;
+        }
+        CacheLookupEvent lookupEvent = (CacheLookupEvent) event;
+        lookupEvent.end();
+        if (lookupEvent.shouldCommit()) {
+            lookupEvent.hash = hash;
+            lookupEvent.size = size;
+            lookupEvent.hit = hit;
+            lookupEvent.profile = profile.toString();
+            lookupEvent.commit();
+        }
+    }
+
+    @Override
+    void tempFileSpill(String name, String tempFile, long size) {
+        TempFileSpillEvent event = new TempFileSpillEvent();
+        if (event.shouldCommit()) {
+            event.entry = name;
+            event.tempFile = tempFile;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    private static String toString(EESpecProfile[] profiles) {
+        if (profiles.length == 1) {
+            return profiles[0].toString();
+        }
+        StringBuilder result = new StringBuilder();
+        for (EESpecProfile profile : profiles) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(profile.toString());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class AgentClassCacheTest {
+
+    private static final byte[] ORIGINAL = "original".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNCHANGED = "unchanged".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONVERTED = "converted".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesPersisted() throws Exception {
+        File file = new File(tempFolder.getRoot(), "cache/classes.bin");
+        Map<String, Boolean> lookups = new HashMap<>();
+        lookups.put("jakarta/servlet/CommonGatewayInterface", Boolean.TRUE);
+        lookups.put("jakarta/servlet/DoesNotExist", Boolean.FALSE);
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(ORIGINAL), lookups, CONVERTED);
+            cache.put(cache.getKey(UNCHANGED), Collections.emptyMap(), null);
+            assertArrayEquals(CONVERTED, cache.get(cache.getKey(ORIGINAL)).getConverted());
+        }
+
+        TargetResourceIndex index = TargetResourceIndex.getIndex(getClass().getClassLoader());
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            assertEquals(2, cache.size());
+            AgentClassCache.Entry entry = cache.get(cache.getKey(ORIGINAL));
+            assertTrue(entry.isValid(index));
+            assertArrayEquals(CONVERTED, entry.getConverted());
+            entry = cache.get(cache.getKey(UNCHANGED));
+            assertTrue(entry.isValid(index));
+            assertNull(entry.getConverted());
+        }
+
+        // The profile is part of the key
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.EE, Long.MAX_VALUE)) {
+            assertNull(cache.get(cache.getKey(ORIGINAL)));
+        }
+    }
+
+    @Test
+    public void testEntryDependsOnClassLoader() throws Exception {
+        File file = tempFolder.newFile();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(ORIGINAL),
+                    Collections.singletonMap("jakarta/servlet/DoesNotExist", Boolean.TRUE), CONVERTED);
+            AgentClassCache.Entry entry = cache.get(cache.getKey(ORIGINAL));
+            assertFalse(entry.isValid(TargetResourceIndex.getIndex(getClass().getClassLoader())));
+        }
+    }
+
+    @Test
+    public void testIncompleteEntryReplaced() throws Exception {
+        File file = tempFolder.newFile();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(ORIGINAL), Collections.emptyMap(), CONVERTED);
+        }
+        long validLength = file.length();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(UNCHANGED), Collections.emptyMap(), null);
+        }
+        try (AgentClassCache other = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(file.length() - 1);
+            }
+            long incompleteLength = file.length();
+            File previous = new File(tempFolder.getRoot(), "previous.bin");
+            Files.createLink(previous.toPath(), file.toPath());
+
+            try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+                assertEquals(1, cache.size());
+                assertNotNull(cache.get(cache.getKey(ORIGINAL)));
+                assertNull(cache.get(cache.getKey(UNCHANGED)));
+            }
+            // A new file is written, the one already in use is not modified
+            assertEquals(incompleteLength, previous.length());
+            assertNotNull(other.get(other.getKey(ORIGINAL)));
+        }
+        assertEquals(validLength, file.length());
+    }
+
+    @Test
+    public void testAddedEntriesReadFromFile() throws Exception {
+        File file = tempFolder.newFile();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(ORIGINAL), Collections.emptyMap(), CONVERTED);
+        }
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(UNCHANGED), Collections.singletonMap("jakarta/servlet/DoesNotExist",
+                    Boolean.FALSE), null);
+            cache.put(cache.getKey(CONVERTED), Collections.emptyMap(), ORIGINAL);
+            assertEquals(3, cache.size());
+            assertArrayEquals(CONVERTED, cache.get(cache.getKey(ORIGINAL)).getConverted());
+            AgentClassCache.Entry entry = cache.get(cache.getKey(UNCHANGED));
+            assertNull(entry.getConverted());
+            assertTrue(entry.isValid(TargetResourceIndex.getIndex(getClass().getClassLoader())));
+            assertArrayEquals(ORIGINAL, cache.get(cache.getKey(CONVERTED)).getConverted());
+        }
+    }
+
+    @Test
+    public void testFileLargerThanMaxSizeKept() throws Exception {
+        File file = tempFolder.newFile();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            cache.put(cache.getKey(ORIGINAL), Collections.emptyMap(), CONVERTED);
+            cache.put(cache.getKey(UNCHANGED), Collections.emptyMap(), null);
+        }
+        long length = file.length();
+
+        // Only the entries within the maximum size are used, none is removed
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, length - 1)) {
+            assertEquals(1, cache.size());
+            cache.put(cache.getKey(CONVERTED), Collections.emptyMap(), null);
+            assertNull(cache.get(cache.getKey(CONVERTED)));
+        }
+        assertEquals(length, file.length());
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testOtherVersionDiscarded() throws Exception {
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), "Not a cache file".getBytes(StandardCharsets.UTF_8));
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            assertEquals(0, cache.size());
+            cache.put(cache.getKey(ORIGINAL), Collections.emptyMap(), CONVERTED);
+        }
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, Long.MAX_VALUE)) {
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        File file = tempFolder.newFile();
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, 64)) {
+            cache.put(cache.getKey(ORIGINAL), Collections.emptyMap(), CONVERTED);
+            // Entries are only read back from the file
+            assertNull(cache.get(cache.getKey(ORIGINAL)));
+        }
+        try (AgentClassCache cache = new AgentClassCache(file, EESpecProfiles.TOMCAT, 64)) {
+            assertEquals(0, cache.size());
+        }
+    }
+}
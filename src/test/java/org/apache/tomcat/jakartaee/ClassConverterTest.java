@@ -21,9 +21,14 @@ import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.Constant;
 import org.apache.bcel.classfile.ConstantUtf8;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -31,7 +36,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class ClassConverterTest {
@@ -93,4 +101,125 @@ public class ClassConverterTest {
         assertTrue(strings.contains("jakarta.servlet.CommonGatewayInterface"));
         assertTrue(strings.contains("jakarta/servlet/CommonGatewayInterface"));
     }
+
+
+    @Test
+    public void testTransformKeepsDelimiters() throws Exception {
+        byte[] original = readClass("/org/apache/tomcat/jakartaee/TesterConstants.class");
+
+        ClassConverter converter = new ClassConverter(EESpecProfiles.TOMCAT);
+        byte[] transformed = converter.transform(this.getClass().getClassLoader(),
+                "org.apache.tomcat.jakartaee.TesterConstants", null, null, original);
+
+        // Only the fragments naming an available class are converted and the
+        // ';' and '<' delimiters between the fragments are kept
+        List<String> strings = getStrings(transformed);
+        assertTrue(strings.contains("(Ljavax/servlet/DoesNotExist;Ljakarta/servlet/CommonGatewayInterface;)V"));
+        assertTrue(strings.contains(
+                "Ljava/util/Map<Ljakarta/servlet/CommonGatewayInterface;Ljavax/servlet/DoesNotExist;>;"));
+    }
+
+
+    @Test
+    public void testConvertMatchesConstantPool() throws Exception {
+        byte[] original = readClass("/org/apache/tomcat/jakartaee/TesterConstants.class");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ClassConverter converter = new ClassConverter();
+        assertTrue(converter.convert("TesterConstants.class", new ByteArrayInputStream(original), baos,
+                EESpecProfiles.TOMCAT));
+        byte[] converted = baos.toByteArray();
+
+        // Every string is converted and nothing else changes
+        List<String> expected = new ArrayList<>();
+        for (String s : getStrings(original)) {
+            expected.add(EESpecProfiles.TOMCAT.convert(s));
+        }
+        assertEquals(expected, getStrings(converted));
+        JavaClass originalClass = new ClassParser(new ByteArrayInputStream(original), "unknown").parse();
+        JavaClass convertedClass = new ClassParser(new ByteArrayInputStream(converted), "unknown").parse();
+        assertEquals(originalClass.getMethods().length, convertedClass.getMethods().length);
+        assertEquals(originalClass.getFields().length, convertedClass.getFields().length);
+        assertTrue(getStrings(converted).contains("jakarta/servlet/DoesNotExist"));
+    }
+
+
+    @Test
+    public void testConvertUnchanged() throws Exception {
+        byte[] original = readClass("/org/apache/tomcat/jakartaee/StringManager.class");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ClassConverter converter = new ClassConverter();
+        assertFalse(converter.convert("StringManager.class", new ByteArrayInputStream(original), baos,
+                EESpecProfiles.TOMCAT));
+        assertArrayEquals(original, baos.toByteArray());
+    }
+
+
+    @Test
+    public void testConvertBuffer() throws Exception {
+        ClassConverter converter = new ClassConverter();
+
+        byte[] unchanged = readClass("/org/apache/tomcat/jakartaee/StringManager.class");
+        ByteBuffer unchangedBuffer = ByteBuffer.wrap(unchanged);
+        assertSame(unchangedBuffer, converter.convert("StringManager.class", unchangedBuffer, EESpecProfiles.TOMCAT));
+
+        byte[] original = readClass("/org/apache/tomcat/jakartaee/TesterConstants.class");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        converter.convert("TesterConstants.class", new ByteArrayInputStream(original), baos, EESpecProfiles.TOMCAT);
+
+        // Content in the middle of a larger array
+        byte[] padded = new byte[original.length + 10];
+        System.arraycopy(original, 0, padded, 5, original.length);
+        ByteBuffer src = ByteBuffer.wrap(padded, 5, original.length);
+        ByteBuffer converted = converter.convert("TesterConstants.class", src, EESpecProfiles.TOMCAT);
+        assertNotSame(src, converted);
+        assertEquals(5, src.position());
+        assertArrayEquals(baos.toByteArray(), Util.toByteArray(converted));
+    }
+
+
+    @Test
+    public void testConvertInvalidClass() throws Exception {
+        ClassConverter converter = new ClassConverter();
+        try {
+            converter.convert("Invalid.class", new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }),
+                    new ByteArrayOutputStream(), EESpecProfiles.TOMCAT);
+            fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+
+        // Truncated class
+        byte[] original = readClass("/org/apache/tomcat/jakartaee/TesterConstants.class");
+        byte[] truncated = new byte[original.length / 2];
+        System.arraycopy(original, 0, truncated, 0, truncated.length);
+        try {
+            converter.convert("Truncated.class", new ByteArrayInputStream(truncated),
+                    new ByteArrayOutputStream(), EESpecProfiles.TOMCAT);
+            fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+
+    private byte[] readClass(String name) throws IOException {
+        try (InputStream is = this.getClass().getResourceAsStream(name)) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+
+    private static List<String> getStrings(byte[] classBytes) throws IOException {
+        List<String> strings = new ArrayList<>();
+        ClassParser parser = new ClassParser(new ByteArrayInputStream(classBytes), "unknown");
+        Constant[] constantPool = parser.parse().getConstantPool().getConstantPool();
+        for (Constant constant : constantPool) {
+            if (constant instanceof ConstantUtf8) {
+                strings.add(((ConstantUtf8) constant).getBytes());
+            }
+        }
+        return strings;
+    }
 }
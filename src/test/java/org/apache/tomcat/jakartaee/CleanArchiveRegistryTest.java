@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CleanArchiveRegistryTest {
+
+    private static final String HASH_A = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String HASH_B = "fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testAnyProfile() {
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.add(HASH_A.toUpperCase(Locale.ENGLISH));
+        assertTrue(registry.isClean(HASH_A, EESpecProfiles.TOMCAT));
+        assertTrue(registry.isClean(HASH_A, EESpecProfiles.EE));
+        assertFalse(registry.isClean(HASH_B, EESpecProfiles.TOMCAT));
+        assertTrue(registry.isModified());
+    }
+
+    @Test
+    public void testSingleProfile() {
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.add(HASH_A, EESpecProfiles.TOMCAT);
+        assertTrue(registry.isClean(HASH_A, EESpecProfiles.TOMCAT));
+        assertFalse(registry.isClean(HASH_A, EESpecProfiles.EE));
+        assertEquals(1, registry.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHash() {
+        new CleanArchiveRegistry().add("not-a-hash");
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.load(new StringReader("# Known libraries\n" +
+                "\n" +
+                HASH_A + "   # some-library-1.0.jar\n" +
+                HASH_B + "|EE\n" +
+                "invalid\n" +
+                HASH_B + "|\n"));
+        assertEquals(2, registry.size());
+        assertFalse(registry.isModified());
+        assertTrue(registry.isClean(HASH_A, EESpecProfiles.SERVLET));
+        assertTrue(registry.isClean(HASH_B, EESpecProfiles.EE));
+        assertFalse(registry.isClean(HASH_B, EESpecProfiles.TOMCAT));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.add(HASH_B, EESpecProfiles.TOMCAT);
+        registry.add(HASH_B, EESpecProfiles.EE);
+        registry.add(HASH_A);
+
+        StringWriter writer = new StringWriter();
+        registry.save(writer);
+        assertFalse(registry.isModified());
+        assertEquals("# Archives that need no migration - hash[|profile]\n" +
+                HASH_A + "\n" +
+                HASH_B + "|EE\n" +
+                HASH_B + "|TOMCAT\n", writer.toString());
+
+        File file = tempFolder.newFile("clean-archives.txt");
+        registry.save(file);
+        CleanArchiveRegistry loaded = new CleanArchiveRegistry();
+        loaded.load(file);
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.isClean(HASH_A, EESpecProfiles.JEE8));
+        assertTrue(loaded.isClean(HASH_B, EESpecProfiles.EE));
+        assertFalse(loaded.isClean(HASH_B, EESpecProfiles.SERVLET));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConverterRegistryTest {
+
+    private final TextConverter textConverter = new TextConverter();
+    private final ClassConverter classConverter = new ClassConverter();
+    private final ManifestConverter manifestConverter = new ManifestConverter();
+    private final PassThroughConverter passThroughConverter = new PassThroughConverter();
+
+    private final ConverterRegistry registry = new ConverterRegistry(
+            Arrays.asList(textConverter, classConverter, manifestConverter, passThroughConverter));
+
+    @Test
+    public void testDeclaredExtensions() {
+        assertSame(textConverter, registry.getConverter("WEB-INF/web.xml"));
+        assertSame(textConverter, registry.getConverter("index.JSP"));
+        assertSame(classConverter, registry.getConverter("org/example/Filter.class"));
+        assertSame(classConverter, registry.getConverter("org/example/Filter.Class"));
+    }
+
+    @Test
+    public void testUndeclaredExtensions() {
+        assertSame(manifestConverter, registry.getConverter("META-INF/MANIFEST.MF"));
+        assertSame(manifestConverter, registry.getConverter("WEB-INF/classes/META-INF/MANIFEST.MF"));
+        assertSame(passThroughConverter, registry.getConverter("META-INF/OTHER.MF"));
+        assertSame(passThroughConverter, registry.getConverter("images/logo.png"));
+        assertSame(passThroughConverter, registry.getConverter("LICENSE"));
+        assertSame(passThroughConverter, registry.getConverter("org.example/README"));
+        assertSame(passThroughConverter, registry.getConverter("file.classes"));
+    }
+
+    @Test
+    public void testMatchesAccepts() {
+        String[] names = { "a.java", "a.JSPX", "a.class", "a.tld", "a.txt.bak", "a.", ".xml", "xml", "a.properties",
+                "META-INF/MANIFEST.MF", "a/b.c/d" };
+        for (String name : names) {
+            Converter expected = null;
+            for (Converter converter : Arrays.asList(textConverter, classConverter, manifestConverter,
+                    passThroughConverter)) {
+                if (converter.accepts(name)) {
+                    expected = converter;
+                    break;
+                }
+            }
+            assertSame(name, expected, registry.getConverter(name));
+        }
+    }
+
+    @Test
+    public void testPrecedence() {
+        // Earlier converters win for the same extension
+        ConverterRegistry classFirst = new ConverterRegistry(Arrays.asList(classConverter, new TextConverter() {
+            @Override
+            public Set<String> getExtensions() {
+                return Collections.singleton("class");
+            }
+        }));
+        assertSame(classConverter, classFirst.getConverter("Filter.class"));
+
+        // Converters that do not declare extensions are asked in order
+        ConverterRegistry passThroughFirst = new ConverterRegistry(Arrays.asList(passThroughConverter, textConverter));
+        assertSame(passThroughConverter, passThroughFirst.getConverter("web.xml"));
+    }
+
+    @Test
+    public void testNoConverter() {
+        ConverterRegistry empty = new ConverterRegistry(Collections.<Converter>singletonList(classConverter));
+        assertNull(empty.getConverter("web.xml"));
+        assertNull(empty.getConverter("README"));
+    }
+}
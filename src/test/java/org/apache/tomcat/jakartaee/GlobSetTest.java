@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GlobSetTest {
+
+    @Test
+    public void testEmpty() {
+        GlobSet set = new GlobSet(Collections.<String>emptySet(), true);
+        assertFalse(set.matches("", 0, 0));
+        assertFalse(set.matches("file.jar", 0, 8));
+    }
+
+    @Test
+    public void testPrefixSuffixAndOthers() {
+        GlobSet set = new GlobSet(Arrays.asList("commons-*.jar", "*.war", "*test*", "exact.txt"), true);
+        assertTrue(set.matches("commons-io-2.0.jar", 0, 18));
+        assertTrue(set.matches("app.war", 0, 7));
+        assertTrue(set.matches("mytests.zip", 0, 11));
+        assertTrue(set.matches("exact.txt", 0, 9));
+        assertFalse(set.matches("commons-io-2.0.war2", 0, 19));
+        assertFalse(set.matches("exact.txt2", 0, 10));
+        assertFalse(set.matches("commons.jar", 0, 11));
+    }
+
+    @Test
+    public void testRegion() {
+        GlobSet set = new GlobSet(Collections.singleton("lib-?.jar"), true);
+        String path = "WEB-INF/lib/lib-1.jar";
+        assertTrue(set.matches(path, 12, path.length()));
+        assertFalse(set.matches(path, 0, path.length()));
+        assertFalse(set.matches(path, 12, path.length() - 1));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        GlobSet set = new GlobSet(Arrays.asList("File?.TXT", "*.Jar"), false);
+        assertTrue(set.matches("fileA.txt", 0, 9));
+        assertTrue(set.matches("LIB.JAR", 0, 7));
+        assertFalse(new GlobSet(Arrays.asList("File?.TXT", "*.Jar"), true).matches("LIB.JAR", 0, 7));
+    }
+
+    @Test
+    public void testSameResultsAsGlobMatcher() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            Set<String> patterns = new HashSet<>();
+            int count = 1 + random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                patterns.add(randomString(random, "ab.*?", 6));
+            }
+            for (int i = 0; i < 50; i++) {
+                String name = randomString(random, "abAB.", 7);
+                for (boolean caseSensitive : new boolean[] { true, false }) {
+                    GlobSet set = new GlobSet(patterns, caseSensitive);
+                    assertEquals(patterns + " " + name + " " + caseSensitive,
+                            Boolean.valueOf(GlobMatcher.matchName(patterns, name, caseSensitive)),
+                            Boolean.valueOf(set.matches(name, 0, name.length())));
+                }
+            }
+        }
+    }
+
+    private static String randomString(Random random, String chars, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class HttpCacheStorageTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private TesterHttpCacheServer server;
+    private HttpCacheStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TesterHttpCacheServer();
+        storage = new HttpCacheStorage(server.getUrl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.close();
+        server.close();
+    }
+
+    @Test
+    public void testStoreLookupOpenRemove() throws Exception {
+        byte[] content = "converted content".getBytes(StandardCharsets.UTF_8);
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), content);
+
+        assertEquals(-1, storage.lookup("abcd").get().longValue());
+
+        storage.store("abcd", file).get();
+        assertFalse("Storage should delete the stored file", file.exists());
+        assertArrayEquals(content, server.getBlobs().get("abcd"));
+
+        assertEquals(content.length, storage.lookup("abcd").get().longValue());
+        try (InputStream is = storage.open("abcd")) {
+            assertArrayEquals(content, IOUtils.toByteArray(is));
+        }
+
+        assertTrue(storage.remove("abcd"));
+        assertFalse(storage.remove("abcd"));
+        assertEquals(-1, storage.lookup("abcd").get().longValue());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testOpenMissing() throws Exception {
+        storage.open("missing");
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        server.getBlobs().put("abcd", new byte[1]);
+        storage.clear();
+        assertTrue(server.getBlobs().isEmpty());
+        assertTrue(storage.isShared());
+        assertTrue(storage.keys().isEmpty());
+    }
+
+    @Test
+    public void testMigrationCacheWithHttpStorage() throws Exception {
+        File cacheDir = tempFolder.newFolder("http-cache");
+        byte[] sourceData = "test source content".getBytes(StandardCharsets.UTF_8);
+        byte[] convertedData = "converted content".getBytes(StandardCharsets.UTF_8);
+
+        try (MigrationCache cache = new MigrationCache(cacheDir, 30, storage)) {
+            CacheEntry entry1 = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+            assertFalse(entry1.exists());
+            try (OutputStream os = entry1.beginStore()) {
+                os.write(convertedData);
+            }
+            entry1.commitStore();
+            cache.awaitPendingStores();
+            assertEquals(1, server.getBlobs().size());
+            assertEquals(1, cache.getStatistics().getStores());
+
+            CacheEntry entry2 = cache.getCacheEntryAsync(sourceData, EESpecProfiles.TOMCAT).get();
+            assertTrue(entry2.exists());
+            assertEquals(convertedData.length, entry2.getFileSize());
+            ByteArrayOutputStream dest = new ByteArrayOutputStream();
+            entry2.copyToDestination(dest);
+            assertArrayEquals(convertedData, dest.toByteArray());
+
+            // Shared entries are not removed when they expire locally
+            cache.pruneCache();
+            assertEquals(1, server.getBlobs().size());
+        }
+
+        // A second cache, e.g. on another machine, sees the entry
+        File otherCacheDir = tempFolder.newFolder("http-cache-other");
+        try (MigrationCache cache = new MigrationCache(otherCacheDir, 30, new HttpCacheStorage(server.getUrl()))) {
+            assertTrue(cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT).exists());
+        }
+    }
+
+    @Test
+    public void testMigrationCacheWithMemoryStorage() throws Exception {
+        File cacheDir = tempFolder.newFolder("memory-cache");
+        MemoryCacheStorage memoryStorage = new MemoryCacheStorage();
+        byte[] sourceData = "test source content".getBytes(StandardCharsets.UTF_8);
+        byte[] convertedData = "converted content".getBytes(StandardCharsets.UTF_8);
+
+        MigrationCache cache = new MigrationCache(cacheDir, 30, memoryStorage);
+        CacheEntry entry1 = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry1.beginStore()) {
+            os.write(convertedData);
+        }
+        entry1.commitStore();
+        assertEquals(1, memoryStorage.keys().size());
+
+        CacheEntry entry2 = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        assertTrue(entry2.exists());
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        entry2.copyToDestination(dest);
+        assertArrayEquals(convertedData, dest.toByteArray());
+        assertTrue(cache.getStats().contains("1"));
+
+        cache.clear();
+        assertTrue(memoryStorage.keys().isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonReportWriterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testReport() throws Exception {
+        File source = new File("target/test-classes/hellocgi.jar");
+        File destination = new File(tempFolder.getRoot(), "hellocgi-report.jar");
+        MigrationCLI.main(new String[] { "-report=" + new File(tempFolder.getRoot(), "report.json"),
+                source.getAbsolutePath(), destination.getAbsolutePath() });
+
+        String report = FileUtils.readFileToString(new File(tempFolder.getRoot(), "report.json"),
+                StandardCharsets.UTF_8);
+        assertTrue(report, report.startsWith("{\n  \"source\": \"" + source.getAbsolutePath() + "\",\n"));
+        assertTrue(report, report.contains("\"outputs\": [\n    {\n      \"destination\": \"" +
+                destination.getAbsolutePath() + "\",\n      \"profile\": \"TOMCAT\"\n    }\n  ],\n"));
+        assertTrue(report, report.contains("\"converted\": true"));
+        assertTrue(report, report.contains("\"bytesRead\": " + source.length() + ","));
+        assertTrue(report, report.contains("\"peakHeapUsedBytes\": "));
+        assertTrue(report, report.contains("\"converter\": \"" + ClassConverter.class.getName() + "\""));
+        assertTrue(report, report.contains("\"path\": \"" + source.getAbsolutePath() + "\",\n" +
+                "      \"strategy\": \"STREAMING\""));
+        assertTrue(report, report.contains("\"path\": \"" + source.getAbsolutePath() +
+                "!/org/apache/tomcat/jakartaee/HelloCGI.class\""));
+        assertTrue(report, report.endsWith("\n}\n"));
+        assertBalanced(report);
+    }
+
+    @Test
+    public void testReportAdditionalProfile() throws Exception {
+        File source = new File("target/test-classes/hellocgi.jar");
+        File destination = new File(tempFolder.getRoot(), "hellocgi-tomcat.jar");
+        File additional = new File(tempFolder.getRoot(), "hellocgi-ee.jar");
+        MigrationCLI.main(new String[] { "-report=" + new File(tempFolder.getRoot(), "report.json"),
+                "-additionalProfile=ee:" + additional.getAbsolutePath(),
+                source.getAbsolutePath(), destination.getAbsolutePath() });
+
+        String report = FileUtils.readFileToString(new File(tempFolder.getRoot(), "report.json"),
+                StandardCharsets.UTF_8);
+        assertTrue(report, report.contains("\"outputs\": [\n" +
+                "    {\n      \"destination\": \"" + destination.getAbsolutePath() + "\",\n" +
+                "      \"profile\": \"TOMCAT\"\n    },\n" +
+                "    {\n      \"destination\": \"" + additional.getAbsolutePath() + "\",\n" +
+                "      \"profile\": \"EE\"\n    }\n  ],\n"));
+        assertBalanced(report);
+    }
+
+    @Test
+    public void testEmptyReport() throws Exception {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.start();
+        metrics.stop();
+        StringWriter writer = new StringWriter();
+        JsonReportWriter.write(writer, new File("a \"quoted\"\\path"),
+                Collections.singletonMap(new File("dest\tfile\u0001"), EESpecProfiles.EE), false, metrics);
+
+        String report = writer.toString();
+        assertTrue(report, report.contains("a \\\"quoted\\\"\\\\path\""));
+        assertTrue(report, report.contains("dest\\tfile\\u0001\""));
+        assertTrue(report, report.contains("\"archives\": [],\n"));
+        assertTrue(report, report.contains("\"slowestEntries\": []\n}"));
+        assertBalanced(report);
+    }
+
+    /*
+     * Brackets outside of strings must match.
+     */
+    private static void assertBalanced(String json) {
+        StringBuilder open = new StringBuilder();
+        boolean inString = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                open.append(c);
+            } else if (c == '}' || c == ']') {
+                char expected = c == '}' ? '{' : '[';
+                assertEquals(expected, open.charAt(open.length() - 1));
+                open.setLength(open.length() - 1);
+            }
+        }
+        assertEquals(0, open.length());
+    }
+}
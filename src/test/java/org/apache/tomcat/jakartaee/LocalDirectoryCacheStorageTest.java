@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class LocalDirectoryCacheStorageTest {
+
+    private static final String KEY = "abcdef0123456789";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = tempFolder.newFolder("cache");
+    }
+
+    @Test
+    public void testRebuildCreatesShardsAndIndex() throws Exception {
+        File shard = new File(cacheDir, "ab");
+        assertTrue(shard.mkdir());
+        Files.write(new File(shard, KEY + ".jar").toPath(), new byte[3]);
+
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(3, storage.lookup(KEY).get().longValue());
+
+        assertTrue("Index should be written", new File(cacheDir, "cache-index.txt").isFile());
+        assertTrue("Shard directories should be created", new File(cacheDir, "00").isDirectory());
+        assertTrue("Shard directories should be created", new File(cacheDir, "ff").isDirectory());
+    }
+
+    @Test
+    public void testIndexUsedInsteadOfScan() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        store(storage, KEY, "converted");
+
+        // A file the index does not know about is not found without a scan
+        Files.write(new File(new File(cacheDir, "12"), "1234.jar").toPath(), new byte[1]);
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(9, reloaded.lookup(KEY).get().longValue());
+        assertEquals(-1, reloaded.lookup("1234").get().longValue());
+        assertEquals(1, reloaded.keys().size());
+        try (InputStream is = reloaded.open(KEY)) {
+            assertEquals("converted", IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRemoveIsJournaled() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        store(storage, KEY, "converted");
+        assertTrue(storage.remove(KEY));
+        assertFalse(storage.getFile(KEY).exists());
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(-1, reloaded.lookup(KEY).get().longValue());
+        assertTrue(reloaded.keys().isEmpty());
+    }
+
+    @Test
+    public void testMissingEntryVerifiedLazily() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        store(storage, KEY, "converted");
+        assertTrue(storage.getFile(KEY).delete());
+
+        // Lookups only use the index
+        assertEquals(9, storage.lookup(KEY).get().longValue());
+        try {
+            storage.open(KEY).close();
+            fail("Opening a deleted entry should fail");
+        } catch (FileNotFoundException e) {
+            // Expected
+        }
+        assertEquals(-1, storage.lookup(KEY).get().longValue());
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(-1, reloaded.lookup(KEY).get().longValue());
+    }
+
+    @Test
+    public void testStoreRecreatesMissingShard() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        storage.keys();
+        File shard = new File(cacheDir, "ab");
+        assertTrue(shard.delete());
+
+        store(storage, KEY, "converted");
+        assertTrue(storage.getFile(KEY).isFile());
+    }
+
+    @Test
+    public void testJournalCompacted() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        for (int i = 0; i < 10; i++) {
+            store(storage, KEY, "converted");
+            storage.remove(KEY);
+        }
+        store(storage, KEY, "converted");
+        File index = new File(cacheDir, "cache-index.txt");
+        assertTrue(Files.readAllLines(index.toPath()).size() > 20);
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(9, reloaded.lookup(KEY).get().longValue());
+        List<String> lines = Files.readAllLines(index.toPath());
+        assertEquals(2, lines.size());
+        assertEquals(KEY + "|9", lines.get(1));
+    }
+
+    @Test
+    public void testJournalRewrittenAfterFailedAppend() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        storage.keys();
+        File index = new File(cacheDir, "cache-index.txt");
+        assertTrue(index.delete());
+        // Appending to the journal fails while it is a directory
+        assertTrue(index.mkdir());
+        store(storage, KEY, "converted");
+        assertEquals(9, storage.lookup(KEY).get().longValue());
+
+        assertTrue(index.delete());
+        storage.close();
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(9, reloaded.lookup(KEY).get().longValue());
+        reloaded.close();
+    }
+
+    @Test
+    public void testJournalKeptOpen() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        store(storage, KEY, "converted");
+        storage.remove(KEY);
+        store(storage, KEY, "converted");
+
+        // Each change is visible to another instance before the storage is closed
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertEquals(9, reloaded.lookup(KEY).get().longValue());
+        storage.close();
+        reloaded.close();
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        LocalDirectoryCacheStorage storage = new LocalDirectoryCacheStorage(cacheDir);
+        store(storage, KEY, "converted");
+        storage.clear();
+        assertFalse(storage.getFile(KEY).exists());
+        assertTrue(storage.keys().isEmpty());
+
+        LocalDirectoryCacheStorage reloaded = new LocalDirectoryCacheStorage(cacheDir);
+        assertTrue(reloaded.keys().isEmpty());
+        store(reloaded, KEY, "converted");
+        assertEquals(9, reloaded.lookup(KEY).get().longValue());
+    }
+
+    private void store(CacheStorage storage, String key, String content) throws Exception {
+        File file = tempFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        storage.store(key, file).get();
+    }
+}
@@ -16,12 +16,15 @@
  */
 package org.apache.tomcat.jakartaee;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -115,6 +118,26 @@ public class ManifestConverterTest {
         assertFalse("Should not convert manifest with no javax packages", converted);
     }
 
+    @Test
+    public void testConvertWrappedImport() throws IOException {
+        ManifestConverter converter = new ManifestConverter();
+
+        // javax.servlet.http is split across a continuation line
+        String manifest = "Manifest-Version: 1.0\r\n" +
+                "Import-Package: org.example.aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa,javax.se\r\n" +
+                " rvlet.http;version=\"[4.0,5)\"\r\n\r\n";
+
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        boolean converted = converter.convert("META-INF/MANIFEST.MF",
+                new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)), dest, EESpecProfiles.TOMCAT);
+
+        assertTrue(converted);
+        String importPackage = new Manifest(new ByteArrayInputStream(dest.toByteArray())).getMainAttributes()
+                .getValue("Import-Package");
+        assertTrue(importPackage, importPackage.contains("jakarta.servlet.http"));
+        assertFalse(importPackage, importPackage.contains("javax.servlet"));
+    }
+
     @Test
     public void testConvertWithImplementationVersion() throws IOException {
         ManifestConverter converter = new ManifestConverter();
@@ -219,4 +242,96 @@ public class ManifestConverterTest {
         // Should not throw and should handle gracefully
         assertTrue("Conversion should complete", !converted);
     }
+
+    @Test
+    public void testConvertPreservesLayout() throws IOException {
+        String original = "Manifest-Version: 1.0\n" +
+                "Z-Custom: first\n" +
+                "Servlet-Class: javax.servlet.http.\n" +
+                " HttpServlet\n" +
+                "A-Custom: a very long value that was wrapped by hand rather than at seve\n" +
+                " nty two bytes\n" +
+                "\n" +
+                "Name: org/example/\n" +
+                "Sealed: true\n" +
+                "\n";
+        String expected = original.replace("Servlet-Class: javax.servlet.http.\n HttpServlet\n",
+                "Servlet-Class: jakarta.servlet.http.HttpServlet\n");
+
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        assertTrue(new ManifestConverter().convert("META-INF/MANIFEST.MF",
+                new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)), dest, EESpecProfiles.TOMCAT));
+        assertEquals(expected, dest.toString("UTF-8"));
+    }
+
+    @Test
+    public void testConvertUnchangedKeepsBytes() throws IOException {
+        byte[] original = ("Manifest-Version: 1.0\r\n" +
+                "Created-By: a value that is\r\n" +
+                "  continued\r\n" +
+                "\r\n" +
+                "Name: a\r\n" +
+                "Sealed: true\r\n").getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        assertFalse(new ManifestConverter().convert("META-INF/MANIFEST.MF", new ByteArrayInputStream(original),
+                dest, EESpecProfiles.TOMCAT));
+        assertArrayEquals(original, dest.toByteArray());
+    }
+
+    @Test
+    public void testConvertRemovesDigestSections() throws IOException {
+        String original = "Manifest-Version: 1.0\r\n" +
+                "Signature-Version: 1.0\r\n" +
+                "\r\n" +
+                "Name: org/example/A.class\r\n" +
+                "SHA-256-Digest: abc=\r\n" +
+                "\r\n" +
+                "Name: org/example/\r\n" +
+                "Sealed: true\r\n" +
+                "\r\n" +
+                "Name: org/example/B.class\r\n" +
+                "SHA-256-Digest: def=\r\n" +
+                "\r\n";
+
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        assertFalse(new ManifestConverter().convert("META-INF/MANIFEST.MF",
+                new ByteArrayInputStream(original.getBytes(StandardCharsets.UTF_8)), dest, EESpecProfiles.TOMCAT));
+        assertEquals("Manifest-Version: 1.0\r\n" +
+                "\r\n" +
+                "Name: org/example/\r\n" +
+                "Sealed: true\r\n" +
+                "\r\n", dest.toString("UTF-8"));
+    }
+
+    @Test
+    public void testConvertWrapsLongValues() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            value.append("javax.servlet.été").append(i).append(',');
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Custom-Header", value.toString());
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        manifest.write(manifestBytes);
+
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        assertTrue(new ManifestConverter().convert("META-INF/MANIFEST.MF",
+                new ByteArrayInputStream(manifestBytes.toByteArray()), dest, EESpecProfiles.TOMCAT));
+
+        for (String line : dest.toString("UTF-8").split("\r\n")) {
+            assertTrue(line, line.getBytes(StandardCharsets.UTF_8).length <= 72);
+        }
+        Manifest converted = new Manifest(new ByteArrayInputStream(dest.toByteArray()));
+        assertEquals(value.toString().replace("javax.", "jakarta."),
+                converted.getMainAttributes().getValue("Custom-Header"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testConvertInvalidLine() throws IOException {
+        byte[] original = "Manifest-Version: 1.0\nnot a header javax.servlet\n".getBytes(StandardCharsets.UTF_8);
+        new ManifestConverter().convert("META-INF/MANIFEST.MF", new ByteArrayInputStream(original),
+                new ByteArrayOutputStream(), EESpecProfiles.TOMCAT);
+    }
 }
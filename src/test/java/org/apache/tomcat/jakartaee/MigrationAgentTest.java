@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class MigrationAgentTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static final String CLASS_NAME = "org/apache/tomcat/jakartaee/TesterConstants";
+
+    @Test
+    public void testDefaults() {
+        MigrationAgent agent = new MigrationAgent(null);
+        assertEquals(EESpecProfiles.TOMCAT, agent.getEESpecProfile());
+        ClassLoader loader = getClass().getClassLoader();
+        assertTrue(agent.accepts(loader, "com/example/Foo"));
+        assertFalse(agent.accepts(null, "com/example/Foo"));
+        assertFalse(agent.accepts(loader, CLASS_NAME));
+    }
+
+    @Test
+    public void testOptions() {
+        MigrationAgent agent = new MigrationAgent("profile=ee, package=com.example,package=org.foo/,loader=java.net.");
+        assertEquals(EESpecProfiles.EE, agent.getEESpecProfile());
+        ClassLoader loader = new URLClassLoader(new URL[0]);
+        assertTrue(agent.accepts(loader, "com/example/Foo"));
+        assertTrue(agent.accepts(loader, "org/foo/bar/Baz"));
+        assertFalse(agent.accepts(loader, "com/examples/Foo"));
+        assertFalse(agent.accepts(new ClassLoader() {
+        }, "com/example/Foo"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOption() {
+        new MigrationAgent("profile=tomcat,unknown=true");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProfile() {
+        new MigrationAgent("profile=unknown");
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/" + CLASS_NAME + ".class")) {
+            original = IOUtils.toByteArray(is);
+        }
+        MigrationAgent agent = new MigrationAgent("package=org.apache.tomcat.jakartaee");
+        ClassLoader loader = getClass().getClassLoader();
+
+        // The classes of the migration tool itself are never converted
+        assertNull(agent.transform(loader, CLASS_NAME, null, null, original));
+        assertEquals(1, agent.getStatistics().getFilteredCount());
+
+        ClassConverter converter = new ClassConverter();
+        assertNotNull(converter.transform(loader, CLASS_NAME, null, null, original));
+        // Unchanged classes are not redefined
+        try (InputStream is = getClass().getResourceAsStream("/org/apache/tomcat/jakartaee/StringManager.class")) {
+            assertNull(converter.transform(loader, "org/apache/tomcat/jakartaee/StringManager", null, null,
+                    IOUtils.toByteArray(is)));
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/" + CLASS_NAME + ".class")) {
+            original = IOUtils.toByteArray(is);
+        }
+        MigrationAgent agent = new MigrationAgent("package=com.example");
+        ClassLoader loader = getClass().getClassLoader();
+
+        assertNotNull(agent.transform(loader, "com/example/Converted", null, null, original));
+        assertNull(agent.transform(loader, "com/example/Invalid", null, null, new byte[] { 1, 2, 3 }));
+        assertNull(agent.transform(loader, "org/example/Filtered", null, null, original));
+
+        AgentStatistics statistics = agent.getStatistics();
+        assertEquals(1, statistics.getConvertedCount());
+        assertEquals(0, statistics.getUnchangedCount());
+        assertEquals(1, statistics.getFailureCount());
+        assertEquals(1, statistics.getFilteredCount());
+        assertNotNull(statistics.getSlowestClassName());
+        statistics.reset();
+        assertEquals(0, statistics.getConvertedCount());
+        assertNull(statistics.getSlowestClassName());
+    }
+
+    @Test
+    public void testPersistentCache() throws Exception {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/" + CLASS_NAME + ".class")) {
+            original = IOUtils.toByteArray(is);
+        }
+        ClassLoader loader = getClass().getClassLoader();
+        String options = "package=com.example,cache=" + tempFolder.getRoot().getAbsolutePath() + "/agent.bin";
+
+        MigrationAgent agent = new MigrationAgent(options);
+        byte[] converted = agent.transform(loader, "com/example/Converted", null, null, original);
+        assertNotNull(converted);
+        assertEquals(0, agent.getStatistics().getCacheHits());
+        assertEquals(1, agent.getStatistics().getCacheMisses());
+
+        // As after a restart
+        agent = new MigrationAgent(options);
+        assertArrayEquals(converted, agent.transform(loader, "com/example/Converted", null, null, original));
+        assertEquals(1, agent.getStatistics().getCacheHits());
+        assertEquals(0, agent.getStatistics().getCacheMisses());
+        assertEquals(1, agent.getStatistics().getConvertedCount());
+    }
+
+    @Test
+    public void testJmxOptIn() throws Exception {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/" + CLASS_NAME + ".class")) {
+            original = IOUtils.toByteArray(is);
+        }
+        ClassLoader loader = getClass().getClassLoader();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.apache.tomcat.jakartaee:type=MigrationAgent");
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+
+        MigrationAgent agent = new MigrationAgent("package=com.example");
+        assertNotNull(agent.transform(loader, "com/example/Converted", null, null, original));
+        assertFalse(server.isRegistered(name));
+
+        // Registration is deferred until the first class is transformed
+        agent = new MigrationAgent("package=com.example,jmx=true");
+        assertFalse(server.isRegistered(name));
+        assertNotNull(agent.transform(loader, "com/example/Converted", null, null, original));
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(Long.valueOf(1), server.getAttribute(name, "ConvertedCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -21,10 +21,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.LocalDate;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -328,6 +332,41 @@ public class MigrationCacheTest {
         assertTrue("Should still be cached after prune of non-expired entry", entry2.exists());
     }
 
+    @Test
+    public void testCacheMetadataFollowsStorage() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+
+        // A miss that is never stored is not tracked
+        CacheEntry miss = cache.getCacheEntry("missing".getBytes(StandardCharsets.UTF_8), EESpecProfiles.TOMCAT);
+        assertFalse(miss.exists());
+
+        byte[] sourceData = "test content".getBytes(StandardCharsets.UTF_8);
+        CacheEntry entry = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry.beginStore()) {
+            os.write("converted content".getBytes(StandardCharsets.UTF_8));
+        }
+        entry.commitStore();
+        cache.close();
+
+        // Metadata for an entry that is no longer stored is dropped and a
+        // stored entry without metadata is tracked
+        File metadataFile = new File(tempCacheDir, "cache-metadata.txt");
+        String stale = "00" + entry.getHash().substring(2);
+        try (FileWriter writer = new FileWriter(metadataFile)) {
+            writer.write(stale + "|" + LocalDate.now().minusDays(60).toString() + "|1234\n");
+        }
+
+        cache = new MigrationCache(tempCacheDir, 30);
+        cache.pruneCache();
+        cache.close();
+        assertEquals(0, cache.getStatistics().getEvictions());
+
+        String metadata = new String(Files.readAllBytes(metadataFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(metadata.contains(entry.getHash() + "|"));
+        assertFalse(metadata.contains(stale));
+        assertFalse(metadata.contains(miss.getHash()));
+    }
+
     @Test
     public void testCacheTempFileCleanup() throws Exception {
         // Create a temp file that should be cleaned up
@@ -385,6 +424,47 @@ public class MigrationCacheTest {
         assertTrue("Should be cache hit for same profile", entry3.exists());
     }
 
+    @Test
+    public void testCacheKeyFromSourceHash() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+
+        byte[] sourceData = "test source content".getBytes(StandardCharsets.UTF_8);
+        String sourceHash = Util.sha256(sourceData);
+
+        // The key is derived from the hash of the content, not the content
+        CacheEntry entry = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        assertEquals(MigrationCache.computeHash(sourceHash, EESpecProfiles.TOMCAT), entry.getHash());
+        assertEquals(entry.getHash(),
+                cache.getCacheEntryAsync(sourceHash, EESpecProfiles.TOMCAT).get().getHash());
+        assertNotEquals(entry.getHash(),
+                cache.getCacheEntryAsync(sourceHash, EESpecProfiles.EE).get().getHash());
+    }
+
+    @Test
+    public void testCacheKeyVersionChanged() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+
+        byte[] sourceData = "test source content".getBytes(StandardCharsets.UTF_8);
+        CacheEntry entry = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry.beginStore()) {
+            os.write("converted content".getBytes(StandardCharsets.UTF_8));
+        }
+        entry.commitStore();
+        cache.close();
+
+        // Entries of the same version are kept
+        cache = new MigrationCache(tempCacheDir, 30);
+        assertTrue(cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT).exists());
+        cache.close();
+
+        // Entries stored before the key format was versioned are removed
+        assertTrue(new File(tempCacheDir, "cache-version.txt").delete());
+        cache = new MigrationCache(tempCacheDir, 30);
+        assertFalse(cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT).exists());
+        assertFalse(new File(tempCacheDir, "cache-metadata.txt").exists());
+        cache.close();
+    }
+
     @Test
     public void testCacheCorruptMetadata() throws Exception {
         // Create a corrupt metadata file
@@ -431,6 +511,31 @@ public class MigrationCacheTest {
         assertFalse("Entry should not exist after rollback", entry2.exists());
     }
 
+    @Test
+    public void testCacheRollbackCountedOnce() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+        CacheStatistics statistics = cache.getStatistics();
+
+        CacheEntry rolledBack = cache.getCacheEntry("rolled back".getBytes(StandardCharsets.UTF_8),
+                EESpecProfiles.TOMCAT);
+        rolledBack.beginStore().close();
+        rolledBack.rollbackStore();
+        rolledBack.rollbackStore();
+
+        CacheEntry committed = cache.getCacheEntry("committed".getBytes(StandardCharsets.UTF_8),
+                EESpecProfiles.TOMCAT);
+        try (OutputStream os = committed.beginStore()) {
+            os.write("converted".getBytes(StandardCharsets.UTF_8));
+        }
+        committed.commitStore();
+        // Rolling back a committed entry does not remove it
+        committed.rollbackStore();
+
+        assertEquals(1, statistics.getRollbacks());
+        assertEquals(1, statistics.getStores());
+        assertTrue(cache.getCacheEntry("committed".getBytes(StandardCharsets.UTF_8), EESpecProfiles.TOMCAT).exists());
+    }
+
     @Test
     public void testCacheCopyToDestinationThrowsWhenNotExists() throws Exception {
         MigrationCache cache = new MigrationCache(tempCacheDir, 30);
@@ -495,6 +600,8 @@ public class MigrationCacheTest {
         subdir.mkdirs();
         File cachedFile = new File(subdir, "abcdef1234567890.jar");
         Files.createFile(cachedFile.toPath());
+        // Created with the current key format
+        Files.write(new File(tempCacheDir, "cache-version.txt").toPath(), "2".getBytes(StandardCharsets.UTF_8));
 
         MigrationCache cache = new MigrationCache(tempCacheDir, 30);
         String stats = cache.getStats();
@@ -540,4 +647,99 @@ public class MigrationCacheTest {
         // Instead, test that commit works normally after writing
         entry.commitStore();
     }
+
+    @Test
+    public void testCacheStatistics() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+        CacheStatistics statistics = cache.getStatistics();
+
+        byte[] sourceData = "test source content".getBytes(StandardCharsets.UTF_8);
+        byte[] convertedData = "converted content".getBytes(StandardCharsets.UTF_8);
+
+        CacheEntry entry1 = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry1.beginStore()) {
+            os.write(convertedData);
+        }
+        entry1.commitStore();
+
+        CacheEntry entry2 = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        entry2.copyToDestination(new ByteArrayOutputStream());
+
+        CacheEntry entry3 = cache.getCacheEntry("other".getBytes(StandardCharsets.UTF_8), EESpecProfiles.TOMCAT);
+        entry3.beginStore().close();
+        entry3.rollbackStore();
+
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(3, statistics.getLookupCount());
+        assertEquals(1.0 / 3, statistics.getHitRatio(), 0.0001);
+        assertEquals(1, statistics.getStores());
+        assertEquals(1, statistics.getRollbacks());
+        assertEquals(convertedData.length, statistics.getBytesStored());
+        assertEquals(convertedData.length, statistics.getBytesServed());
+        assertTrue(statistics.getMaxLookupTimeMicros() >= statistics.getAverageLookupTimeMicros());
+
+        statistics.reset();
+        assertEquals(0, statistics.getLookupCount());
+        assertEquals(0, statistics.getHitRatio(), 0);
+    }
+
+    @Test
+    public void testCacheStatisticsEvictions() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+
+        byte[] sourceData = "test content".getBytes(StandardCharsets.UTF_8);
+        CacheEntry entry = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry.beginStore()) {
+            os.write("converted content".getBytes(StandardCharsets.UTF_8));
+        }
+        entry.commitStore();
+
+        // Expire the entry, keeping the recorded conversion time
+        File metadataFile = new File(tempCacheDir, "cache-metadata.txt");
+        try (FileWriter writer = new FileWriter(metadataFile)) {
+            writer.write(entry.getHash() + "|" + LocalDate.now().minusDays(60).toString() + "|1234\n");
+        }
+
+        cache = new MigrationCache(tempCacheDir, 30);
+        cache.pruneCache();
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void testCacheStatisticsConversionTimeSaved() throws Exception {
+        byte[] sourceData = "test content".getBytes(StandardCharsets.UTF_8);
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+        CacheEntry entry = cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT);
+        try (OutputStream os = entry.beginStore()) {
+            os.write("converted content".getBytes(StandardCharsets.UTF_8));
+        }
+        entry.commitStore();
+
+        // Record a known conversion time for the entry
+        File metadataFile = new File(tempCacheDir, "cache-metadata.txt");
+        try (FileWriter writer = new FileWriter(metadataFile)) {
+            writer.write(entry.getHash() + "|" + LocalDate.now().toString() + "|1234\n");
+        }
+
+        cache = new MigrationCache(tempCacheDir, 30);
+        cache.getCacheEntry(sourceData, EESpecProfiles.TOMCAT).copyToDestination(new ByteArrayOutputStream());
+        assertEquals(1234, cache.getStatistics().getConversionTimeSavedMillis());
+    }
+
+    @Test
+    public void testCacheStatisticsMBean() throws Exception {
+        MigrationCache cache = new MigrationCache(tempCacheDir, 30);
+        ObjectName name = cache.registerMBean();
+        assertNotNull(name);
+        try {
+            cache.getCacheEntry("test".getBytes(StandardCharsets.UTF_8), EESpecProfiles.TOMCAT);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(Long.valueOf(1), server.getAttribute(name, "Misses"));
+            assertEquals(Long.valueOf(0), server.getAttribute(name, "Hits"));
+        } finally {
+            cache.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
 }
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class MigrationClassLoaderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testLoadClass() throws Exception {
+        // The parent only provides the Servlet API
+        try (URLClassLoader parent = new URLClassLoader(
+                new URL[] { new File("target/test-classes/cgi-api.jar").toURI().toURL() }, null);
+                MigrationClassLoader loader = new MigrationClassLoader(
+                        new URL[] { new File("target/test-classes/hellocgi.jar").toURI().toURL() }, parent)) {
+            Class<?> cls = loader.loadClass("org.apache.tomcat.jakartaee.HelloCGI");
+            assertSame(loader, cls.getClassLoader());
+            assertEquals("jakarta.servlet.CommonGatewayInterface", cls.getSuperclass().getName());
+            assertNotNull(cls.getPackage());
+            assertTrue(cls.getProtectionDomain().getCodeSource().getLocation().toString().endsWith("hellocgi.jar"));
+
+            // The class file is converted when read as a resource too
+            try (InputStream is = loader.getResourceAsStream("org/apache/tomcat/jakartaee/HelloCGI.class")) {
+                String content = new String(IOUtils.toByteArray(is), StandardCharsets.ISO_8859_1);
+                assertTrue(content.contains("jakarta/servlet/CommonGatewayInterface"));
+                assertFalse(content.contains("javax/servlet/CommonGatewayInterface"));
+            }
+        }
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        File dir = tempFolder.newFolder("webapp");
+        File services = new File(dir, "META-INF/services");
+        assertTrue(services.mkdirs());
+        Files.write(new File(services, "javax.servlet.ServletContainerInitializer").toPath(),
+                "com.example.Initializer".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "web.xml").toPath(),
+                "<listener>javax.servlet.ServletContextListener</listener>".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "image.bin").toPath(), "javax.servlet".getBytes(StandardCharsets.UTF_8));
+
+        try (MigrationClassLoader loader = new MigrationClassLoader(new URL[] { dir.toURI().toURL() }, null)) {
+            URL url = loader.getResource("web.xml");
+            assertEquals(new File(dir, "web.xml").toURI().toURL().toExternalForm(), url.toExternalForm());
+            assertEquals("<listener>jakarta.servlet.ServletContextListener</listener>", read(url));
+            // Served from the cache
+            assertEquals("<listener>jakarta.servlet.ServletContextListener</listener>", read(url));
+
+            // Not a text resource
+            assertEquals("javax.servlet", read(loader.getResource("image.bin")));
+
+            // Renamed resources are found with their converted name
+            List<URL> urls = Collections.list(
+                    loader.getResources("META-INF/services/jakarta.servlet.ServletContainerInitializer"));
+            assertEquals(1, urls.size());
+            assertNull(loader.getResource("META-INF/services/jakarta.servlet.DoesNotExist"));
+        }
+    }
+
+    @Test
+    public void testLoadRenamedClass() throws Exception {
+        File dir = tempFolder.newFolder("classes");
+        File cls = new File(dir, "javax/servlet/CommonGatewayInterface.class");
+        assertTrue(cls.getParentFile().mkdirs());
+        Files.copy(new File("target/test-classes/javax/servlet/CommonGatewayInterface.class").toPath(), cls.toPath());
+
+        try (MigrationClassLoader loader = new MigrationClassLoader(new URL[] { dir.toURI().toURL() }, null)) {
+            // The class is found with its converted name, as a resource is
+            assertNotNull(loader.getResource("jakarta/servlet/CommonGatewayInterface.class"));
+            Class<?> converted = loader.loadClass("jakarta.servlet.CommonGatewayInterface");
+            assertSame(loader, converted.getClassLoader());
+            assertEquals("jakarta.servlet.CommonGatewayInterface", converted.getName());
+        }
+    }
+
+    @Test
+    public void testPackageDefinedFromManifest() throws Exception {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.SPECIFICATION_TITLE, "Tester");
+        attributes.put(Attributes.Name.IMPLEMENTATION_VERSION, "1.2.3");
+        attributes.put(Attributes.Name.SEALED, "true");
+        File jar = new File(tempFolder.getRoot(), "sealed.jar");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            jos.putNextEntry(new JarEntry("org/apache/tomcat/jakartaee/TesterConstants.class"));
+            Files.copy(new File("target/test-classes/org/apache/tomcat/jakartaee/TesterConstants.class").toPath(),
+                    jos);
+        }
+        File dir = tempFolder.newFolder("unsealed");
+        File other = new File(dir, "org/apache/tomcat/jakartaee/StringManager.class");
+        assertTrue(other.getParentFile().mkdirs());
+        Files.copy(new File("target/classes/org/apache/tomcat/jakartaee/StringManager.class").toPath(),
+                other.toPath());
+
+        try (MigrationClassLoader loader = new MigrationClassLoader(
+                new URL[] { jar.toURI().toURL(), dir.toURI().toURL() }, null)) {
+            Package pkg = loader.loadClass("org.apache.tomcat.jakartaee.TesterConstants").getPackage();
+            assertEquals("Tester", pkg.getSpecificationTitle());
+            assertEquals("1.2.3", pkg.getImplementationVersion());
+            assertTrue(pkg.isSealed(jar.toURI().toURL()));
+            try {
+                loader.loadClass("org.apache.tomcat.jakartaee.StringManager");
+                fail("A class of a sealed package should not be loaded from another location");
+            } catch (SecurityException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testJarReleasedOnClose() throws Exception {
+        File jar = new File(tempFolder.getRoot(), "release.jar");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+            jos.putNextEntry(new JarEntry("org/apache/tomcat/jakartaee/TesterConstants.class"));
+            Files.copy(new File("target/test-classes/org/apache/tomcat/jakartaee/TesterConstants.class").toPath(),
+                    jos);
+            jos.putNextEntry(new JarEntry("web.xml"));
+            jos.write("javax.servlet".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (MigrationClassLoader loader = new MigrationClassLoader(new URL[] { jar.toURI().toURL() }, null)) {
+            assertNotNull(loader.loadClass("org.apache.tomcat.jakartaee.TesterConstants"));
+            assertEquals("jakarta.servlet", read(loader.getResource("web.xml")));
+        }
+
+        assertEquals(0, countOpenDescriptors(jar));
+        assertTrue(jar.delete());
+    }
+
+    /*
+     * Only supported where the open file descriptors are listed in /proc.
+     */
+    private static int countOpenDescriptors(File file) throws Exception {
+        File[] fds = new File("/proc/self/fd").listFiles();
+        if (fds == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File fd : fds) {
+            try {
+                if (Files.readSymbolicLink(fd.toPath()).equals(file.toPath().toAbsolutePath())) {
+                    count++;
+                }
+            } catch (java.io.IOException e) {
+                // Closed while listing
+            }
+        }
+        return count;
+    }
+
+    private static String read(URL url) throws Exception {
+        try (InputStream is = url.openStream()) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+}
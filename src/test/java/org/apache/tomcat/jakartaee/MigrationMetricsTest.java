@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class MigrationMetricsTest {
+
+    @Test
+    public void testStagesAreExclusive() throws Exception {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.start();
+        metrics.enter(MigrationMetrics.Stage.INFLATE);
+        Thread.sleep(20);
+        metrics.enter(MigrationMetrics.Stage.IO);
+        Thread.sleep(20);
+        metrics.exit();
+        metrics.exit();
+        metrics.stop();
+
+        long total = 0;
+        for (MigrationMetrics.Stage stage : MigrationMetrics.Stage.values()) {
+            total += metrics.getTimeNanos(stage);
+        }
+        assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.INFLATE) >= 20_000_000L);
+        assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.IO) >= 20_000_000L);
+        assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.INFLATE) < total);
+        assertTrue(metrics.getElapsedTimeMillis() >= total / 1_000_000L);
+    }
+
+    @Test
+    public void testMeteredStreams() throws Exception {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.start();
+        byte[] bytes = new byte[10000];
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        try (InputStream in = metrics.meter(new ByteArrayInputStream(bytes), MigrationMetrics.Stage.IO);
+                OutputStream out = metrics.meter(dest, MigrationMetrics.Stage.IO)) {
+            IOUtils.copy(in, out);
+        }
+        // Not counted as I/O
+        IOUtils.copy(metrics.meter(new ByteArrayInputStream(bytes), MigrationMetrics.Stage.INFLATE),
+                new ByteArrayOutputStream());
+        metrics.stop();
+
+        assertEquals(bytes.length, metrics.getBytesRead());
+        assertEquals(bytes.length, metrics.getBytesWritten());
+        assertEquals(bytes.length, dest.size());
+    }
+
+    @Test
+    public void testConverterMetrics() throws Exception {
+        MigrationMetrics metrics = new MigrationMetrics();
+        MigrationMetrics.ConverterMetrics converterMetrics = metrics.getConverterMetrics(new TextConverter());
+        IOUtils.copy(converterMetrics.meter(new ByteArrayInputStream(new byte[100])),
+                converterMetrics.meter(new ByteArrayOutputStream()));
+        converterMetrics.record(true, 1000);
+        converterMetrics.record(false, 500);
+
+        MigrationMetrics.ConverterMetrics result = metrics.getConverterMetrics().get(TextConverter.class.getName());
+        assertEquals(2, result.getEntryCount());
+        assertEquals(1, result.getConvertedCount());
+        assertEquals(100, result.getBytesIn());
+        assertEquals(100, result.getBytesOut());
+        assertEquals(1500, result.getTimeNanos());
+    }
+
+    @Test
+    public void testPeakBufferedBytes() {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.buffered(100);
+        metrics.buffered(50);
+        metrics.released(50);
+        metrics.buffered(20);
+        metrics.released(120);
+        assertEquals(150, metrics.getPeakBufferedBytes());
+    }
+
+    @Test
+    public void testSlowestEntries() {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.start();
+        MigrationMetrics.ArchiveMetrics archive =
+                metrics.beginArchive("/app.war", MigrationMetrics.ArchiveMetrics.Strategy.STREAMING);
+        Converter converter = new TextConverter();
+        for (int i = 1; i <= MigrationMetrics.SLOWEST_ENTRY_COUNT * 2; i++) {
+            metrics.recordEntry("entry" + i + ".txt", converter, i % 2 == 0, i * 1000, i, i);
+        }
+        metrics.endArchive(archive, true, 100, 200);
+        metrics.stop();
+
+        List<MigrationMetrics.EntryMetrics> slowest = metrics.getSlowestEntries();
+        assertEquals(MigrationMetrics.SLOWEST_ENTRY_COUNT, slowest.size());
+        assertEquals("/app.war!/entry40.txt", slowest.get(0).getPath());
+        assertEquals(40000, slowest.get(0).getTimeNanos());
+        assertEquals("/app.war!/entry21.txt", slowest.get(slowest.size() - 1).getPath());
+
+        assertEquals(1, metrics.getArchiveMetrics().size());
+        assertEquals(MigrationMetrics.SLOWEST_ENTRY_COUNT * 2, archive.getEntryCount());
+        assertEquals(MigrationMetrics.SLOWEST_ENTRY_COUNT, archive.getConvertedEntryCount());
+        assertEquals(100, archive.getBytesIn());
+        assertEquals(200, archive.getBytesOut());
+    }
+
+    @Test
+    public void testNestedArchivePaths() {
+        MigrationMetrics metrics = new MigrationMetrics();
+        metrics.start();
+        MigrationMetrics.ArchiveMetrics ear =
+                metrics.beginArchive("/app.ear", MigrationMetrics.ArchiveMetrics.Strategy.STREAMING);
+        MigrationMetrics.ArchiveMetrics war =
+                metrics.beginArchive("app.war", MigrationMetrics.ArchiveMetrics.Strategy.STREAMING);
+        metrics.recordArchive("WEB-INF/lib/lib.jar", MigrationMetrics.ArchiveMetrics.Strategy.CACHE_HIT, true, 10,
+                20, 5);
+        metrics.endArchive(war, true, 30, 40);
+        metrics.endArchive(ear, true, 50, 60);
+        metrics.stop();
+
+        List<MigrationMetrics.ArchiveMetrics> archives = metrics.getArchiveMetrics();
+        assertEquals(3, archives.size());
+        assertEquals("/app.ear!/app.war!/WEB-INF/lib/lib.jar", archives.get(0).getPath());
+        assertEquals(MigrationMetrics.ArchiveMetrics.Strategy.CACHE_HIT, archives.get(0).getStrategy());
+        assertEquals(5, archives.get(0).getTimeNanos());
+        assertEquals("/app.ear!/app.war", archives.get(1).getPath());
+        assertEquals("/app.ear", archives.get(2).getPath());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MigrationProgressTest {
+
+    @Test
+    public void testEstimate() {
+        // A quarter of the source in 10 seconds
+        MigrationProgress progress = new MigrationProgress(1024 * 1024, 4 * 1024 * 1024, 2, 100, 10,
+                TimeUnit.SECONDS.toNanos(10), false);
+        assertEquals(25, progress.getPercentComplete());
+        assertEquals(1024 * 1024 / 10, progress.getThroughput());
+        assertEquals(30000, progress.getEstimatedTimeRemainingMillis());
+        assertEquals(10000, progress.getElapsedTimeMillis());
+        assertTrue(progress.toString(), progress.toString().contains("about [30] s remaining"));
+    }
+
+    @Test
+    public void testNoEstimateBeforeFirstBytes() {
+        MigrationProgress progress = new MigrationProgress(0, 1000, 0, 0, 0, TimeUnit.SECONDS.toNanos(1), false);
+        assertEquals(0, progress.getPercentComplete());
+        assertEquals(0, progress.getThroughput());
+        assertEquals(-1, progress.getEstimatedTimeRemainingMillis());
+        assertTrue(progress.toString(), !progress.toString().contains("remaining"));
+    }
+
+    @Test
+    public void testComplete() {
+        // Sizes may change while the migration runs
+        MigrationProgress progress = new MigrationProgress(1200, 1000, 1, 7, 2, TimeUnit.SECONDS.toNanos(2), true);
+        assertEquals(100, progress.getPercentComplete());
+        assertEquals(600, progress.getThroughput());
+        assertEquals(0, progress.getEstimatedTimeRemainingMillis());
+    }
+
+    @Test
+    public void testTrackerWithoutListener() {
+        ProgressTracker tracker = new ProgressTracker(null, 1000, 0);
+        InputStream src = new ByteArrayInputStream(new byte[10]);
+        assertSame(src, tracker.track(src));
+    }
+
+    @Test
+    public void testTracker() throws Exception {
+        List<MigrationProgress> snapshots = new ArrayList<>();
+        ProgressTracker tracker = new ProgressTracker(new MigrationListener() {
+            @Override
+            public void progress(MigrationProgress progress) {
+                snapshots.add(progress);
+            }
+        }, 100, 0);
+        try (InputStream src = tracker.track(new ByteArrayInputStream(new byte[100]))) {
+            assertEquals(40, src.skip(40));
+            tracker.entryMigrated("a.txt", true);
+            IOUtils.toByteArray(src);
+            tracker.entryMigrated("b.txt", false);
+        }
+        tracker.complete();
+
+        // One snapshot after skipping, one after the first entry
+        assertEquals(40, snapshots.get(0).getBytesProcessed());
+        assertEquals(0, snapshots.get(0).getConvertedEntryCount());
+        assertEquals(40, snapshots.get(1).getBytesProcessed());
+        assertEquals(1, snapshots.get(1).getConvertedEntryCount());
+        MigrationProgress last = snapshots.get(snapshots.size() - 1);
+        assertTrue(last.isComplete());
+        assertEquals(100, last.getBytesProcessed());
+        assertEquals(2, last.getEntryCount());
+        assertEquals(1, last.getConvertedEntryCount());
+    }
+}
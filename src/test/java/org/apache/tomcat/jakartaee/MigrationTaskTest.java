@@ -17,6 +17,7 @@
 
 package org.apache.tomcat.jakartaee;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -147,6 +148,18 @@ public class MigrationTaskTest {
         assertTrue("Imports should be migrated", migratedSource.contains("import jakarta.servlet"));
     }
 
+    @Test
+    public void testMigrationTaskWithProgress() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        redirectOutput(out);
+        project.executeTarget("migrate-with-progress");
+
+        File migratedFile = new File("target/test-classes/hellocgi.migrated-by-ant.jar");
+        assertTrue("Migrated file not found", migratedFile.exists());
+        String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue("Progress not logged", output.contains("[1] archives and [7] entries, [1] entries converted"));
+    }
+
     @Test
     public void testMigrationTaskWithExcludes() throws Exception {
         MigrationTask task = new MigrationTask();
@@ -25,6 +25,10 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.zip.CRC32;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -91,6 +95,20 @@ public class MigrationTest {
         assertTrue("Migrated imports not found", migratedSource.contains("import jakarta.servlet"));
     }
 
+    @Test
+    public void testMigrateSingleSourceFileWithAdditionalProfile() throws Exception {
+        File migratedFile = new File(tempFolder.getRoot(), "HelloServlet.tomcat.java");
+        File additionalFile = new File(tempFolder.getRoot(), "HelloServlet.jee8.java");
+        MigrationCLI.main(new String[] {"-additionalProfile=jee8:" + additionalFile.getAbsolutePath(),
+                "target/test-classes/HelloServlet.java", migratedFile.getAbsolutePath()});
+
+        String migratedSource = FileUtils.readFileToString(migratedFile, StandardCharsets.UTF_8);
+        assertTrue("Migrated imports not found", migratedSource.contains("import jakarta.servlet"));
+        // The JEE8 profile converts from jakarta so the source is unchanged
+        String additionalSource = FileUtils.readFileToString(additionalFile, StandardCharsets.UTF_8);
+        assertTrue("Source imports not found", additionalSource.contains("import javax.servlet"));
+    }
+
     @Test
     public void testMigrateSingleSourceFileInPlace() throws Exception {
         File sourceFile = new File("target/test-classes/HelloServlet.java");
@@ -224,6 +242,102 @@ public class MigrationTest {
         testMigrateJarFileInternal(true);
     }
 
+    @Test
+    public void testMetrics() throws Exception {
+        for (boolean zipInMemory : new boolean[] { false, true }) {
+            File jarFile = new File("target/test-classes/hellocgi.jar");
+            File jarFileTarget = new File(tempFolder.getRoot(), "hellocgi-metrics-" + zipInMemory + ".jar");
+
+            Migration migration = new Migration();
+            migration.setSource(jarFile);
+            migration.setDestination(jarFileTarget);
+            migration.setZipInMemory(zipInMemory);
+            migration.execute();
+
+            MigrationMetrics metrics = migration.getMetrics();
+            assertEquals(jarFile.length(), metrics.getBytesRead());
+            assertEquals(jarFileTarget.length(), metrics.getBytesWritten());
+            assertEquals(1, metrics.getArchiveCount());
+            assertEquals(0, metrics.getCacheHits());
+            assertTrue(metrics.getPeakBufferedBytes() >= (zipInMemory ? jarFile.length() : 0));
+            assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.IO) > 0);
+            assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.INFLATE) > 0);
+            assertTrue(metrics.getTimeNanos(MigrationMetrics.Stage.DEFLATE) > 0);
+
+            MigrationMetrics.ConverterMetrics classMetrics =
+                    metrics.getConverterMetrics().get(ClassConverter.class.getName());
+            assertNotNull(classMetrics);
+            assertEquals(1, classMetrics.getEntryCount());
+            assertEquals(1, classMetrics.getConvertedCount());
+            assertTrue(classMetrics.getBytesIn() > 0);
+            assertTrue(classMetrics.getBytesOut() > 0);
+            assertNotNull(metrics.getConverterMetrics().get(ManifestConverter.class.getName()));
+        }
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        for (boolean zipInMemory : new boolean[] { false, true }) {
+            File jarFile = new File("target/test-classes/hellocgi.jar");
+            File jarFileTarget = new File(tempFolder.getRoot(), "hellocgi-listener-" + zipInMemory + ".jar");
+
+            List<String> archives = new ArrayList<>();
+            List<String> convertedEntries = new ArrayList<>();
+            List<MigrationProgress> snapshots = new ArrayList<>();
+            Migration migration = new Migration();
+            migration.setSource(jarFile);
+            migration.setDestination(jarFileTarget);
+            migration.setZipInMemory(zipInMemory);
+            migration.setProgressInterval(0);
+            migration.setListener(new MigrationListener() {
+                @Override
+                public void archiveStarted(String name) {
+                    archives.add("started " + name);
+                }
+
+                @Override
+                public void archiveFinished(String name, boolean converted) {
+                    archives.add("finished " + name + " " + converted);
+                }
+
+                @Override
+                public void entryConverted(String name) {
+                    convertedEntries.add(name);
+                }
+
+                @Override
+                public void progress(MigrationProgress progress) {
+                    snapshots.add(progress);
+                }
+            });
+            migration.execute();
+
+            assertEquals(Arrays.asList("started " + jarFile.getAbsolutePath(),
+                    "finished " + jarFile.getAbsolutePath() + " true"), archives);
+            assertTrue(convertedEntries.contains("org/apache/tomcat/jakartaee/HelloCGI.class"));
+
+            long bytesProcessed = 0;
+            for (MigrationProgress progress : snapshots) {
+                assertTrue(progress.getBytesProcessed() >= bytesProcessed);
+                bytesProcessed = progress.getBytesProcessed();
+            }
+            MigrationProgress last = snapshots.get(snapshots.size() - 1);
+            assertTrue(last.isComplete());
+            assertEquals(100, last.getPercentComplete());
+            assertEquals(0, last.getEstimatedTimeRemainingMillis());
+            assertEquals(jarFile.length(), last.getTotalBytes());
+            assertEquals(jarFile.length(), last.getBytesProcessed());
+            assertEquals(1, last.getArchiveCount());
+            assertEquals(7, last.getEntryCount());
+            assertEquals(convertedEntries.size(), last.getConvertedEntryCount());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMetricsThrowsWhenNotComplete() {
+        new Migration().getMetrics();
+    }
+
     @Test
     public void testHasConversionsThrowsWhenNotComplete() {
         Migration migration = new Migration();
@@ -712,6 +826,48 @@ public class MigrationTest {
         verifyNestedJarContentMigrated(warTarget, "WEB-INF/lib/nested.jar", "jakarta.servlet");
     }
 
+    @Test
+    public void testMigrateNestedArchiveWithCacheFailures() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-failure.jar", "nested.txt",
+                "javax.servlet.http.HttpServlet");
+        File warFile = createWarWithNestedJar(nestedJar, "failure.war");
+
+        // Neither a failed lookup nor a failed store prevents the migration
+        CacheStorage failingLookups = new MemoryCacheStorage() {
+            @Override
+            public java.util.concurrent.CompletableFuture<Long> lookup(String key) {
+                java.util.concurrent.CompletableFuture<Long> result = new java.util.concurrent.CompletableFuture<>();
+                result.completeExceptionally(new IOException());
+                return result;
+            }
+        };
+        CacheStorage failingStores = new MemoryCacheStorage() {
+            @Override
+            public java.util.concurrent.CompletableFuture<Void> store(String key, File content) {
+                content.delete();
+                java.util.concurrent.CompletableFuture<Void> result = new java.util.concurrent.CompletableFuture<>();
+                result.completeExceptionally(new IOException());
+                return result;
+            }
+        };
+        for (CacheStorage storage : new CacheStorage[] { failingLookups, failingStores }) {
+            File warTarget = tempFolder.newFile();
+            try (MigrationCache cache = new MigrationCache(tempFolder.newFolder(), 30, storage)) {
+                Migration migration = new Migration();
+                migration.setSource(warFile);
+                migration.setDestination(warTarget);
+                migration.setCache(cache);
+                migration.execute();
+
+                assertTrue(migration.hasConverted());
+                assertEquals(1, migration.getMetrics().getCacheMisses());
+                assertEquals(0, cache.getStatistics().getStores());
+                assertEquals(storage == failingStores ? 1 : 0, cache.getStatistics().getRollbacks());
+            }
+            verifyNestedJarContentMigrated(warTarget, "WEB-INF/lib/nested.jar", "jakarta.servlet");
+        }
+    }
+
     @Test
     public void testMigrateNestedArchiveWithCacheHit() throws Exception {
         // Create a nested JAR with javax.servlet references
@@ -753,6 +909,502 @@ public class MigrationTest {
         }
     }
 
+    @Test
+    public void testMigrateNestedArchiveWithMissingCacheEntry() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-missing.jar", "nested.txt", "javax.servlet.http.HttpServlet");
+        File warFile = createWarWithNestedJar(nestedJar, "app-missing.war");
+        File cacheDir = tempFolder.newFolder("nested-missing-cache");
+
+        MigrationCache cache = new MigrationCache(cacheDir, 30);
+        Migration migration1 = new Migration();
+        migration1.setSource(warFile);
+        migration1.setDestination(tempFolder.newFile("app-missing-1.war"));
+        migration1.setCache(cache);
+        migration1.execute();
+
+        // Remove the cached archives without going through the cache
+        for (File shard : cacheDir.listFiles(File::isDirectory)) {
+            for (File cached : shard.listFiles()) {
+                assertTrue(cached.delete());
+            }
+        }
+
+        // The entry is still indexed but the archive should be converted again
+        File warTarget = tempFolder.newFile("app-missing-2.war");
+        Migration migration2 = new Migration();
+        migration2.setSource(warFile);
+        migration2.setDestination(warTarget);
+        migration2.setCache(cache);
+        migration2.execute();
+
+        verifyNestedJarContentMigrated(warTarget, "WEB-INF/lib/nested.jar", "jakarta.servlet");
+        assertTrue("Archive should be stored again", cache.getCacheEntry(Files.readAllBytes(nestedJar.toPath()),
+                EESpecProfiles.TOMCAT).exists());
+    }
+
+    @Test
+    public void testArchiveMetrics() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-metrics.jar", "nested.txt",
+                "javax.servlet.http.HttpServlet");
+        File warFile = createWarWithNestedJar(nestedJar, "metrics.war");
+        File earFile = tempFolder.newFile("metrics.ear");
+        try (FileOutputStream fos = new FileOutputStream(earFile);
+                org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream zos =
+                        new org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream(fos)) {
+            for (String name : new String[] { "one.war", "two.war" }) {
+                zos.putArchiveEntry(new org.apache.commons.compress.archivers.zip.ZipArchiveEntry(name));
+                zos.write(Files.readAllBytes(warFile.toPath()));
+                zos.closeArchiveEntry();
+            }
+        }
+
+        for (boolean zipInMemory : new boolean[] { false, true }) {
+            File earTarget = tempFolder.newFile("metrics-migrated-" + zipInMemory + ".ear");
+            Migration migration = new Migration();
+            migration.setSource(earFile);
+            migration.setDestination(earTarget);
+            migration.setZipInMemory(zipInMemory);
+            // Nested archives are hashed from the start, so that the second WAR is deduplicated
+            migration.setCleanArchiveRegistry(new CleanArchiveRegistry());
+            migration.execute();
+
+            MigrationMetrics.ArchiveMetrics.Strategy converted = zipInMemory ?
+                    MigrationMetrics.ArchiveMetrics.Strategy.IN_MEMORY :
+                    MigrationMetrics.ArchiveMetrics.Strategy.STREAMING;
+            String ear = earFile.getAbsolutePath();
+            List<MigrationMetrics.ArchiveMetrics> archives = migration.getMetrics().getArchiveMetrics();
+            assertEquals(4, archives.size());
+            assertEquals(ear + "!/one.war!/WEB-INF/lib/nested.jar", archives.get(0).getPath());
+            assertEquals(converted, archives.get(0).getStrategy());
+            assertEquals(1, archives.get(0).getConvertedEntryCount());
+            assertEquals(nestedJar.length(), archives.get(0).getBytesIn());
+            assertEquals(ear + "!/one.war", archives.get(1).getPath());
+            assertEquals(converted, archives.get(1).getStrategy());
+            assertEquals(ear + "!/two.war", archives.get(2).getPath());
+            assertEquals(MigrationMetrics.ArchiveMetrics.Strategy.DEDUPLICATED, archives.get(2).getStrategy());
+            assertEquals(archives.get(1).getBytesOut(), archives.get(2).getBytesOut());
+            assertEquals(ear, archives.get(3).getPath());
+            assertEquals(converted, archives.get(3).getStrategy());
+            assertEquals(earFile.length(), archives.get(3).getBytesIn());
+            assertEquals(earTarget.length(), archives.get(3).getBytesOut());
+            assertTrue(archives.get(3).getTimeNanos() >= archives.get(1).getTimeNanos());
+
+            boolean found = false;
+            for (MigrationMetrics.EntryMetrics entry : migration.getMetrics().getSlowestEntries()) {
+                if (entry.getPath().equals(ear + "!/one.war!/WEB-INF/lib/nested.jar!/nested.txt")) {
+                    assertTrue(entry.isConverted());
+                    assertEquals(TextConverter.class.getName(), entry.getConverter());
+                    found = true;
+                }
+            }
+            assertTrue(found);
+            assertTrue(migration.getMetrics().getPeakHeapUsedBytes() > 0);
+        }
+    }
+
+    @Test
+    public void testMigrateDuplicateNestedArchives() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-dup.jar", "nested.txt", "javax.servlet.http.HttpServlet");
+        File warFile = createWarWithNestedJar(nestedJar, "dup.war");
+
+        // An EAR holding the same WAR twice as well as a copy of the JAR it contains
+        File earFile = tempFolder.newFile("dup.ear");
+        String[] names = { "one.war", "two.war", "lib/nested.jar" };
+        File[] sources = { warFile, warFile, nestedJar };
+        try (FileOutputStream fos = new FileOutputStream(earFile);
+                org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream zos =
+                        new org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream(fos)) {
+            for (int i = 0; i < names.length; i++) {
+                zos.putArchiveEntry(new org.apache.commons.compress.archivers.zip.ZipArchiveEntry(names[i]));
+                zos.write(Files.readAllBytes(sources[i].toPath()));
+                zos.closeArchiveEntry();
+            }
+        }
+
+        for (boolean zipInMemory : new boolean[] { false, true }) {
+            for (boolean registry : new boolean[] { false, true }) {
+                File earTarget = tempFolder.newFile("dup-migrated-" + zipInMemory + "-" + registry + ".ear");
+                Migration migration = new Migration();
+                migration.setSource(earFile);
+                migration.setDestination(earTarget);
+                migration.setZipInMemory(zipInMemory);
+                if (registry) {
+                    migration.setCleanArchiveRegistry(new CleanArchiveRegistry());
+                }
+                migration.execute();
+
+                assertTrue(migration.hasConverted());
+                // The second WAR and the copy of the JAR are not converted again, with or without a registry
+                assertEquals(2, migration.getDeduplicatedArchiveCount());
+                assertEquals(MigrationMetrics.ArchiveMetrics.Strategy.DEDUPLICATED,
+                        getArchiveStrategy(migration, "two.war"));
+                try (ZipFile ear = ZipFile.builder().setFile(earTarget).get()) {
+                    for (String name : new String[] { "one.war", "two.war" }) {
+                        File warTarget = tempFolder.newFile(zipInMemory + "-" + registry + "-" + name);
+                        try (InputStream is = ear.getInputStream(ear.getEntry(name))) {
+                            Files.copy(is, warTarget.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        verifyNestedJarContentMigrated(warTarget, "WEB-INF/lib/nested.jar", "jakarta.servlet");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMigrateMultipleProfiles() throws Exception {
+        // javax.jms is only migrated by the EE profile
+        File nestedJar = createNestedJarWithContent("nested-multi.jar", "nested.txt",
+                "javax.servlet.http.HttpServlet javax.jms.Queue");
+        File warFile = createWarWithNestedJar(nestedJar, "multi.war");
+        File cacheDir = tempFolder.newFolder("multi-cache");
+
+        try (MigrationCache cache = new MigrationCache(cacheDir, 30)) {
+            for (int run = 0; run < 2; run++) {
+                File tomcatTarget = tempFolder.newFile("multi-tomcat-" + run + ".war");
+                File eeTarget = tempFolder.newFile("multi-ee-" + run + ".war");
+                Migration migration = new Migration();
+                migration.setSource(warFile);
+                migration.setDestination(tomcatTarget);
+                migration.addAdditionalProfile(EESpecProfiles.EE, eeTarget);
+                migration.setCache(cache);
+                migration.execute();
+
+                assertTrue(migration.hasConverted());
+                assertTrue(migration.hasConverted(tomcatTarget));
+                assertTrue(migration.hasConverted(eeTarget));
+                verifyNestedJarContentMigrated(tomcatTarget, "WEB-INF/lib/nested.jar",
+                        "jakarta.servlet.http.HttpServlet javax.jms.Queue");
+                verifyNestedJarContentMigrated(eeTarget, "WEB-INF/lib/nested.jar",
+                        "jakarta.servlet.http.HttpServlet jakarta.jms.Queue");
+            }
+            // The second run is served from the cache for both profiles
+            assertEquals(2, cache.getStatistics().getHits());
+            assertEquals(2, cache.getStatistics().getMisses());
+        }
+    }
+
+    @Test
+    public void testMigrateMultipleProfilesMatchesSingleProfile() throws Exception {
+        File source = new File("target/test-classes/hellocgi.jar");
+        File multiTomcat = tempFolder.newFile("hellocgi-multi-tomcat.jar");
+        File multiEe = tempFolder.newFile("hellocgi-multi-ee.jar");
+        Migration migration = new Migration();
+        migration.setSource(source);
+        migration.setDestination(multiTomcat);
+        migration.addAdditionalProfile(EESpecProfiles.EE, multiEe);
+        migration.execute();
+
+        File[] targets = { multiTomcat, multiEe };
+        EESpecProfile[] profiles = { EESpecProfiles.TOMCAT, EESpecProfiles.EE };
+        for (int i = 0; i < targets.length; i++) {
+            File single = tempFolder.newFile("hellocgi-single-" + i + ".jar");
+            Migration singleMigration = new Migration();
+            singleMigration.setSource(source);
+            singleMigration.setDestination(single);
+            singleMigration.setEESpecProfile(profiles[i]);
+            singleMigration.execute();
+
+            try (JarFile expected = new JarFile(single); JarFile actual = new JarFile(targets[i])) {
+                assertEquals(expected.size(), actual.size());
+                for (JarEntry entry : java.util.Collections.list(expected.entries())) {
+                    JarEntry actualEntry = actual.getJarEntry(entry.getName());
+                    assertNotNull(entry.getName(), actualEntry);
+                    try (InputStream expectedIs = expected.getInputStream(entry);
+                            InputStream actualIs = actual.getInputStream(actualEntry)) {
+                        assertArrayEquals(entry.getName(), org.apache.commons.io.IOUtils.toByteArray(expectedIs),
+                                org.apache.commons.io.IOUtils.toByteArray(actualIs));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMigrateMultipleProfilesDirectory() throws Exception {
+        File sourceDir = tempFolder.newFolder("multi-src");
+        File services = new File(sourceDir, "META-INF/services");
+        assertTrue(services.mkdirs());
+        FileUtils.writeStringToFile(new File(services, "javax.jms.Foo"), "javax.jms.Queue", StandardCharsets.UTF_8);
+        File tomcatDir = new File(tempFolder.getRoot(), "multi-dest-tomcat");
+        File eeDir = new File(tempFolder.getRoot(), "multi-dest-ee");
+
+        Migration migration = new Migration();
+        migration.setSource(sourceDir);
+        migration.setDestination(tomcatDir);
+        migration.addAdditionalProfile(EESpecProfiles.EE, eeDir);
+        migration.execute();
+
+        assertTrue(new File(tomcatDir, "META-INF/services/javax.jms.Foo").isFile());
+        assertTrue(new File(eeDir, "META-INF/services/jakarta.jms.Foo").isFile());
+        assertFalse(migration.hasConverted(tomcatDir));
+        assertFalse(migration.hasConverted(eeDir));
+    }
+
+    @Test
+    public void testMigrateMultipleProfilesDuplicateNestedArchives() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-multi-dup.jar", "nested.txt",
+                "javax.servlet.http.HttpServlet javax.jms.Queue");
+        File warFile = createWarWithNestedJar(nestedJar, "multi-dup.war");
+        File earFile = tempFolder.newFile("multi-dup.ear");
+        try (FileOutputStream fos = new FileOutputStream(earFile);
+                org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream zos =
+                        new org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream(fos)) {
+            for (String name : new String[] { "one/app.war", "two/app.war", "three/app.war" }) {
+                zos.putArchiveEntry(new org.apache.commons.compress.archivers.zip.ZipArchiveEntry(name));
+                zos.write(Files.readAllBytes(warFile.toPath()));
+                zos.closeArchiveEntry();
+            }
+        }
+
+        for (boolean zipInMemory : new boolean[] { false, true }) {
+            File tomcatTarget = tempFolder.newFile("multi-dup-tomcat-" + zipInMemory + ".ear");
+            File eeTarget = tempFolder.newFile("multi-dup-ee-" + zipInMemory + ".ear");
+            Migration migration = new Migration();
+            migration.setSource(earFile);
+            migration.setDestination(tomcatTarget);
+            migration.addAdditionalProfile(EESpecProfiles.EE, eeTarget);
+            migration.setZipInMemory(zipInMemory);
+            migration.execute();
+
+            assertTrue(migration.getDeduplicatedArchiveCount() > 0);
+            assertEquals(zipInMemory ? MigrationMetrics.ArchiveMetrics.Strategy.IN_MEMORY :
+                    MigrationMetrics.ArchiveMetrics.Strategy.STREAMING,
+                    migration.getMetrics().getArchiveMetrics().get(0).getStrategy());
+            File[] targets = { tomcatTarget, eeTarget };
+            String[] expected = { "jakarta.servlet.http.HttpServlet javax.jms.Queue",
+                    "jakarta.servlet.http.HttpServlet jakarta.jms.Queue" };
+            for (int i = 0; i < targets.length; i++) {
+                try (ZipFile ear = ZipFile.builder().setFile(targets[i]).get()) {
+                    for (String name : new String[] { "one/app.war", "two/app.war", "three/app.war" }) {
+                        File warTarget = tempFolder.newFile(zipInMemory + "-" + i + "-" + name.replace('/', '-'));
+                        try (InputStream is = ear.getInputStream(ear.getEntry(name))) {
+                            Files.copy(is, warTarget.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        verifyNestedJarContentMigrated(warTarget, "WEB-INF/lib/nested.jar", expected[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMigrateMultipleProfilesLargeText() throws Exception {
+        // Larger than the content held in memory when converting for several profiles
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 2 * 1024 * 1024) {
+            content.append("import javax.servlet.http.HttpServlet;\nimport javax.jms.Queue;\n");
+        }
+        File source = tempFolder.newFile("large.txt");
+        FileUtils.writeStringToFile(source, content.toString(), StandardCharsets.ISO_8859_1);
+        File tomcatTarget = tempFolder.newFile("large-tomcat.txt");
+        File eeTarget = tempFolder.newFile("large-ee.txt");
+
+        Migration migration = new Migration();
+        migration.setSource(source);
+        migration.setDestination(tomcatTarget);
+        migration.addAdditionalProfile(EESpecProfiles.EE, eeTarget);
+        migration.execute();
+
+        assertTrue(migration.hasConverted(tomcatTarget));
+        assertTrue(migration.hasConverted(eeTarget));
+        assertEquals(content.toString().replace("javax.servlet", "jakarta.servlet"),
+                FileUtils.readFileToString(tomcatTarget, StandardCharsets.ISO_8859_1));
+        assertEquals(content.toString().replace("javax.", "jakarta."),
+                FileUtils.readFileToString(eeTarget, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testDryRunArchive() throws Exception {
+        File warFile = createWarWithNestedJar(new File("target/test-classes/hellocgi.jar"), "dryrun.war");
+        long modified = warFile.lastModified();
+
+        Migration migration = new Migration();
+        migration.setSource(warFile);
+        migration.setDryRun(true);
+        migration.execute();
+
+        MigrationReport report = migration.getReport();
+        assertTrue(migration.hasConverted());
+        assertEquals(Collections.singletonList("dryrun.war!/WEB-INF/lib/nested.jar!/org/apache/tomcat/jakartaee/HelloCGI.class"),
+                report.getConvertedEntries());
+        assertEquals(Integer.valueOf(1), report.getConvertedEntryCounts().get("dryrun.war"));
+        assertEquals(Integer.valueOf(1), report.getConvertedEntryCounts().get("dryrun.war!/WEB-INF/lib/nested.jar"));
+        assertTrue(report.getRenamedEntries().isEmpty());
+        assertEquals(modified, warFile.lastModified());
+        assertEquals(1, tempFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void testDryRunSignedJarFile() throws Exception {
+        for (EESpecProfile profile : new EESpecProfile[] { EESpecProfiles.TOMCAT, EESpecProfiles.JEE8 }) {
+            Migration migration = new Migration();
+            migration.setEESpecProfile(profile);
+            migration.setSource(new File("target/test-classes/hellocgi-signed-rsa.jar"));
+            migration.setDryRun(true);
+            migration.execute();
+
+            MigrationReport report = migration.getReport();
+            assertEquals(Arrays.asList("hellocgi-signed-rsa.jar!/META-INF/RSA.RSA", "hellocgi-signed-rsa.jar!/META-INF/RSA.SF"),
+                    report.getSignatureFiles());
+            // As for the migration of the same JAR
+            assertEquals(profile == EESpecProfiles.TOMCAT, migration.hasConverted());
+        }
+    }
+
+    @Test
+    public void testDryRunDirectory() throws Exception {
+        Migration migration = new Migration();
+        migration.setEESpecProfile(EESpecProfiles.EE);
+        migration.setSource(new File("src/test/resources"));
+        migration.setDryRun(true);
+        migration.execute();
+
+        MigrationReport report = migration.getReport();
+        assertTrue(report.getConvertedEntries().contains("HelloServlet.java"));
+        assertTrue(report.getRenamedEntries().contains("javax.enterprise.inject.spi.Extension"));
+        assertFalse(report.getConvertedEntries().contains("javax.enterprise.inject.spi.Extension"));
+        assertTrue(report.getScannedEntryCount() > report.getConvertedEntries().size());
+    }
+
+    @Test
+    public void testDryRunCLI() throws Exception {
+        MigrationCLI.main(new String[] {"-dryRun", "target/test-classes/hellocgi.jar"});
+    }
+
+    @Test
+    public void testServiceLoaderConverter() throws Exception {
+        File sourceFile = tempFolder.newFile("custom." + TesterConverter.EXTENSION);
+        FileUtils.writeStringToFile(sourceFile, "javax.servlet", StandardCharsets.UTF_8);
+        File migratedFile = new File(tempFolder.getRoot(), "custom-migrated." + TesterConverter.EXTENSION);
+
+        Migration migration = new Migration();
+        migration.setSource(sourceFile);
+        migration.setDestination(migratedFile);
+        migration.execute();
+
+        assertTrue(migration.hasConverted());
+        assertEquals(TesterConverter.PREFIX + "javax.servlet",
+                FileUtils.readFileToString(migratedFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMigrateWithCleanArchiveRegistry() throws Exception {
+        File nestedJar = createNestedJarWithContent("nested-clean.jar", "nested.txt", "javax.servlet.http.HttpServlet");
+        byte[] nestedJarBytes = Files.readAllBytes(nestedJar.toPath());
+        File warFile = createWarWithNestedJar(nestedJar, "clean.war");
+
+        // Registered as clean so copied as is, even though it would be converted
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.add(sha256(nestedJarBytes), EESpecProfiles.TOMCAT);
+        File warTarget = new File(tempFolder.getRoot(), "clean-migrated.war");
+        Migration migration = new Migration();
+        migration.setSource(warFile);
+        migration.setDestination(warTarget);
+        migration.setCleanArchiveRegistry(registry);
+        migration.execute();
+
+        assertFalse(migration.hasConverted());
+        try (ZipFile war = ZipFile.builder().setFile(warTarget).get();
+                InputStream is = war.getInputStream(war.getEntry("WEB-INF/lib/nested.jar"))) {
+            assertArrayEquals(nestedJarBytes, org.apache.commons.io.IOUtils.toByteArray(is));
+        }
+
+        // Not for another profile
+        File warTargetEe = new File(tempFolder.getRoot(), "clean-migrated-ee.war");
+        migration = new Migration();
+        migration.setSource(warFile);
+        migration.setDestination(warTargetEe);
+        migration.setEESpecProfile(EESpecProfiles.EE);
+        migration.setCleanArchiveRegistry(registry);
+        migration.execute();
+
+        assertTrue(migration.hasConverted());
+        verifyNestedJarContentMigrated(warTargetEe, "WEB-INF/lib/nested.jar", "jakarta.servlet");
+    }
+
+    @Test
+    public void testMigrateLearnsCleanArchives() throws Exception {
+        File cleanJar = createNestedJarWithContent("learn-clean.jar", "nested.txt", "org.example.Library");
+        File versionedJar = createNestedJarWithContent("learn-versioned.jar", "META-INF/MANIFEST.MF",
+                "Manifest-Version: 1.0\r\nImplementation-Version: 1.0\r\n\r\n");
+        File convertedJar = createNestedJarWithContent("learn-converted.jar", "nested.txt", "javax.servlet.Filter");
+        File earFile = tempFolder.newFile("learn.ear");
+        File[] jars = { cleanJar, versionedJar, convertedJar };
+        try (FileOutputStream fos = new FileOutputStream(earFile);
+                org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream zos =
+                        new org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream(fos)) {
+            for (File jar : jars) {
+                zos.putArchiveEntry(new org.apache.commons.compress.archivers.zip.ZipArchiveEntry("lib/" + jar.getName()));
+                zos.write(Files.readAllBytes(jar.toPath()));
+                zos.closeArchiveEntry();
+            }
+        }
+
+        File registryFile = new File(tempFolder.getRoot(), "clean-archives.txt");
+        MigrationCLI.main(new String[] { "-cleanArchives=" + registryFile.getAbsolutePath(), earFile.getAbsolutePath(),
+                new File(tempFolder.getRoot(), "learn-migrated.ear").getAbsolutePath() });
+
+        // Only the archive that would be written unchanged is learned
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        registry.load(registryFile);
+        assertEquals(1, registry.size());
+        assertTrue(registry.isClean(sha256(Files.readAllBytes(cleanJar.toPath())), EESpecProfiles.TOMCAT));
+        assertFalse(registry.isClean(sha256(Files.readAllBytes(cleanJar.toPath())), EESpecProfiles.EE));
+    }
+
+    @Test
+    public void testMigrateLearnsLargeCleanArchives() throws Exception {
+        // Larger than the archives buffered in memory when there is no cache
+        byte[] data = new byte[11 * 1024 * 1024];
+        new java.util.Random(42).nextBytes(data);
+        File largeJar = tempFolder.newFile("large-clean.jar");
+        try (FileOutputStream fos = new FileOutputStream(largeJar);
+                org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream zos =
+                        new org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream(fos)) {
+            zos.putArchiveEntry(new org.apache.commons.compress.archivers.zip.ZipArchiveEntry("data.bin"));
+            zos.write(data);
+            zos.closeArchiveEntry();
+        }
+        File warFile = createWarWithNestedJar(largeJar, "large-clean.war");
+
+        CleanArchiveRegistry registry = new CleanArchiveRegistry();
+        Migration migration = new Migration();
+        migration.setSource(warFile);
+        migration.setDestination(new File(tempFolder.getRoot(), "large-clean-migrated.war"));
+        migration.setCleanArchiveRegistry(registry);
+        migration.execute();
+        assertTrue(registry.isClean(sha256(Files.readAllBytes(largeJar.toPath())), EESpecProfiles.TOMCAT));
+
+        // Copied as is on the next run
+        File warTarget = new File(tempFolder.getRoot(), "large-clean-migrated-again.war");
+        migration.setDestination(warTarget);
+        migration.execute();
+        assertEquals(MigrationMetrics.ArchiveMetrics.Strategy.CLEAN, getArchiveStrategy(migration, "nested.jar"));
+        try (ZipFile war = ZipFile.builder().setFile(warTarget).get();
+                InputStream is = war.getInputStream(war.getEntry("WEB-INF/lib/nested.jar"))) {
+            assertArrayEquals(Files.readAllBytes(largeJar.toPath()), org.apache.commons.io.IOUtils.toByteArray(is));
+        }
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        byte[] hash = java.security.MessageDigest.getInstance("SHA-256").digest(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(String.format("%02x", Integer.valueOf(b & 0xFF)));
+        }
+        return sb.toString();
+    }
+
+    private static MigrationMetrics.ArchiveMetrics.Strategy getArchiveStrategy(Migration migration, String name) {
+        for (MigrationMetrics.ArchiveMetrics archive : migration.getMetrics().getArchiveMetrics()) {
+            if (archive.getPath().endsWith(name)) {
+                return archive.getStrategy();
+            }
+        }
+        return null;
+    }
+
     private File createWarWithNestedJar(File nestedJar, String warName) throws Exception {
         File warFile = tempFolder.newFile(warName);
         byte[] nestedJarBytes = Files.readAllBytes(nestedJar.toPath());
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NamespaceMatcherTest {
+
+    /*
+     * The regular expressions used by the profiles before they were converted
+     * to use NamespaceMatcher.
+     */
+    private static final String ANNOTATION_CLASSES = "Generated|ManagedBean|PostConstruct|PreDestroy|Priority|" +
+            "Resource|Resources|security[/\\.]DeclareRoles|security[/\\.]DenyAll|security[/\\.]PermitAll|" +
+            "security[/\\.]RolesAllowed|security[/\\.]RunAs|sql[/\\.]DataSourceDefinition";
+    private static final String EE = "([/\\.](activation|annotation[/\\.](" + ANNOTATION_CLASSES + ")|batch|" +
+            "decorator|ejb|el|enterprise|faces|jms|json|jws|interceptor|inject|mail|management[/\\.]j2ee|" +
+            "persistence|resource|security[/\\.](auth[/\\.]message|enterprise|jacc)|servlet|" +
+            "transaction(?![/\\.]xa)|validation|websocket|ws[/\\.]rs|xml[/\\.](bind|soap|ws)))";
+    private static final String TOMCAT = "javax([/\\.](annotation[/\\.](" + ANNOTATION_CLASSES + ")|ejb|el|mail|" +
+            "persistence|security[/\\.]auth[/\\.]message|servlet|transaction(?![/\\.]xa)|websocket))";
+
+    private static final String[] FRAGMENTS = { "javax", "jakarta", ".", "/", ";", "L", "x", "xa", "servlet",
+            "transaction", "annotation", "Resource", "s", "security", "auth", "message", "xml", "bind", "ws", "rs",
+            "el", "elephant", "sql", "DataSourceDefinition", "activation", "management", "j2ee", "swing", " " };
+
+    @Test
+    public void testMatchesOriginalRegex() {
+        assertMatchesRegex(EESpecProfiles.SERVLET, "javax([/\\.](servlet))");
+        assertMatchesRegex(EESpecProfiles.TOMCAT, TOMCAT);
+        assertMatchesRegex(EESpecProfiles.EE, "javax" + EE);
+        assertMatchesRegex(EESpecProfiles.JEE8, "jakarta" + EE);
+    }
+
+    @Test
+    public void testUnchangedReturnsSameInstance() {
+        String text = "javax.swing.JButton and javax/transaction/xa/XAResource";
+        assertSame(text, EESpecProfiles.EE.convert(text));
+        String noSource = "org.apache.catalina.Context";
+        assertSame(noSource, EESpecProfiles.TOMCAT.convert(noSource));
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        assertSame(bytes, EESpecProfiles.EE.convert(bytes));
+    }
+
+    @Test
+    public void testMultipleMatches() {
+        assertEquals("(Ljakarta/servlet/ServletRequest;Ljavax/swing/JButton;Ljakarta/el/ELContext;)V",
+                EESpecProfiles.TOMCAT.convert(
+                        "(Ljavax/servlet/ServletRequest;Ljavax/swing/JButton;Ljavax/el/ELContext;)V"));
+        assertEquals("jakarta.transaction.Transactional javax.transaction.xa.Xid jakarta.transaction",
+                EESpecProfiles.EE.convert("javax.transaction.Transactional javax.transaction.xa.Xid javax.transaction"));
+    }
+
+    @Test
+    public void testExcludedSuffixes() {
+        // Only excluded if every alternative is excluded, as for the regular expression
+        NamespaceMatcher matcher = new NamespaceMatcher("a", "b", Arrays.asList("c!.x", "c!.y"));
+        assertEquals("b.c.x", matcher.convert("a.c.x"));
+        assertEquals("b.c.y", matcher.convert("a.c.y"));
+        assertEquals("b.cc", matcher.convert("a.cc"));
+
+        matcher = new NamespaceMatcher("a", "b", Arrays.asList("c!.x", "c"));
+        assertEquals("b.c.x", matcher.convert("a.c.x"));
+
+        matcher = new NamespaceMatcher("a", "b", Arrays.asList("c!.x"));
+        assertEquals("a.c.x", matcher.convert("a.c.x"));
+        assertEquals("b.c.", matcher.convert("a.c."));
+        assertEquals("b/c/y", matcher.convert("a/c/y"));
+    }
+
+    @Test
+    public void testContainsMatchInRange() {
+        byte[] bytes = "xxjavax/servlet/Filter;javax/swing/JButton".getBytes(StandardCharsets.ISO_8859_1);
+        NamespaceMatcher matcher = EESpecProfiles.TOMCAT.getMatcher();
+        assertTrue(matcher.containsMatch(bytes, 0, bytes.length));
+        assertTrue(matcher.containsMatch(bytes, 2, 13));
+        assertFalse(matcher.containsMatch(bytes, 2, 12));
+        assertFalse(matcher.containsMatch(bytes, 3, bytes.length - 3));
+    }
+
+    @Test
+    public void testStreamLargeContent() throws IOException {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024 * 1024) {
+            sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        String text = sb.toString();
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        for (EESpecProfiles profile : EESpecProfiles.values()) {
+            String expected = profile.convert(text);
+            for (int bufferSize : new int[] { 1, 100, 8192, 64 * 1024 }) {
+                assertEquals(expected, convertStream(profile, bytes, bufferSize));
+            }
+        }
+    }
+
+    private static String convertStream(EESpecProfile profile, byte[] bytes, int bufferSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Return at most a few bytes per read so that matches span reads
+        InputStream in = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        try {
+            boolean converted = ((EESpecProfiles) profile).getMatcher().convert(in, out, bufferSize);
+            String result = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+            assertEquals(converted, !result.equals(new String(bytes, StandardCharsets.ISO_8859_1)));
+            in.reset();
+            assertEquals(converted, ((EESpecProfiles) profile).getMatcher().containsMatch(in));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void assertMatchesRegex(EESpecProfile profile, String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.setLength(0);
+            int count = 1 + random.nextInt(12);
+            for (int j = 0; j < count; j++) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            String text = sb.toString();
+            String expected = pattern.matcher(text).replaceAll(profile.getTarget() + "$1");
+            assertEquals(text, expected, profile.convert(text));
+            byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] convertedBytes = profile.convert(bytes);
+            assertEquals(text, expected, new String(convertedBytes, StandardCharsets.ISO_8859_1));
+            assertEquals(text, expected.equals(text), convertedBytes == bytes);
+            assertEquals(text, !expected.equals(text),
+                    ((EESpecProfiles) profile).getMatcher().containsMatch(bytes, 0, bytes.length));
+            assertEquals(text, expected, convertStream(profile, bytes, 1));
+            // The generated pattern must behave the same way
+            assertEquals(text, expected, profile.getPattern().matcher(text).replaceAll(profile.getTarget() + "$1"));
+        }
+    }
+}
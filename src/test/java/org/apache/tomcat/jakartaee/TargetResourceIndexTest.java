@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TargetResourceIndexTest {
+
+    @Test
+    public void testLookupsAreMemoized() {
+        CountingClassLoader loader = new CountingClassLoader();
+        TargetResourceIndex index = TargetResourceIndex.getIndex(loader);
+        assertSame(index, TargetResourceIndex.getIndex(loader));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(index.isAvailable("jakarta/servlet/CommonGatewayInterface"));
+            assertFalse(index.isAvailable("jakarta/servlet/DoesNotExist"));
+        }
+        assertEquals(2, loader.count.get());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testTransformUsesIndex() throws Exception {
+        byte[] original;
+        try (InputStream is = getClass().getResourceAsStream("/org/apache/tomcat/jakartaee/TesterConstants.class")) {
+            original = IOUtils.toByteArray(is);
+        }
+        CountingClassLoader loader = new CountingClassLoader();
+        ClassConverter converter = new ClassConverter(EESpecProfiles.TOMCAT);
+        byte[] first = converter.transform(loader, "org/apache/tomcat/jakartaee/TesterConstants", null, null, original);
+        int lookups = loader.count.get();
+        assertTrue(lookups > 0);
+
+        // The second transformation only uses the index
+        byte[] second = converter.transform(loader, "org/apache/tomcat/jakartaee/TesterConstants", null, null, original);
+        assertEquals(lookups, loader.count.get());
+        assertArrayEquals(first, second);
+    }
+
+    private static class CountingClassLoader extends ClassLoader {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingClassLoader() {
+            super(TargetResourceIndexTest.class.getClassLoader());
+        }
+
+        @Override
+        public URL getResource(String name) {
+            count.incrementAndGet();
+            return super.getResource(name);
+        }
+    }
+}
@@ -6,4 +6,8 @@ public class TesterConstants {
     public static final String JAVA_PRESENT_PATH = "javax/servlet/CommonGatewayInterface";
     public static final String JAVA_NOT_PRESENT_DOT = "javax.servlet.DoesNotExist";
     public static final String JAVA_NOT_PRESENT_PATH = "javax/servlet/DoesNotExist";
+    public static final String JAVA_MIXED_DESCRIPTOR =
+            "(Ljavax/servlet/DoesNotExist;Ljavax/servlet/CommonGatewayInterface;)V";
+    public static final String JAVA_MIXED_SIGNATURE =
+            "Ljava/util/Map<Ljavax/servlet/CommonGatewayInterface;Ljavax/servlet/DoesNotExist;>;";
 }
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Converter registered with {@link java.util.ServiceLoader} for tests. It
+ * prefixes the content of the files with the {@link #EXTENSION} extension.
+ */
+public class TesterConverter implements Converter {
+
+    public static final String EXTENSION = "testerconverter";
+    public static final String PREFIX = "Converted by TesterConverter\n";
+
+    @Override
+    public boolean accepts(String filename) {
+        return Util.hasExtension(filename, EXTENSION);
+    }
+
+    @Override
+    public Set<String> getExtensions() {
+        return Collections.singleton(EXTENSION);
+    }
+
+    @Override
+    public boolean convert(String path, InputStream src, OutputStream dest, EESpecProfile profile)
+            throws IOException {
+        dest.write(PREFIX.getBytes(StandardCharsets.UTF_8));
+        Util.copy(src, dest);
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Minimal in-memory HTTP blob store implementing the protocol expected by
+ * {@link HttpCacheStorage}, for use in tests.
+ */
+public class TesterHttpCacheServer implements AutoCloseable {
+
+    private static final String CONTEXT = "/cache/";
+
+    private final HttpServer server;
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    public TesterHttpCacheServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.start();
+    }
+
+    public URL getUrl() throws MalformedURLException {
+        return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), CONTEXT);
+    }
+
+    public Map<String, byte[]> getBlobs() {
+        return blobs;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            String key = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+            String method = exchange.getRequestMethod();
+            byte[] blob = blobs.get(key);
+            // The JDK server does not always leave the connection in a usable
+            // state after a response without a body so avoid keep-alive
+            exchange.getResponseHeaders().set("Connection", "close");
+            if ("HEAD".equals(method)) {
+                if (blob == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Length", Integer.toString(blob.length));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            } else if ("GET".equals(method)) {
+                if (blob == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, blob.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(blob);
+                    }
+                }
+            } else if ("PUT".equals(method)) {
+                blobs.put(key, IOUtils.toByteArray(exchange.getRequestBody()));
+                exchange.sendResponseHeaders(201, -1);
+            } else if ("DELETE".equals(method)) {
+                if (key.isEmpty()) {
+                    blobs.clear();
+                    exchange.sendResponseHeaders(204, -1);
+                } else {
+                    exchange.sendResponseHeaders(blobs.remove(key) == null ? 404 : 204, -1);
+                }
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -2,11 +2,13 @@ package org.apache.tomcat.jakartaee;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import org.junit.Test;
 
@@ -223,4 +225,39 @@ public class TextConverterTest {
         String result = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
         assertTrue(result.contains("import jakarta.servlet.http.HttpServletRequest"));
     }
+
+    @Test
+    public void testConvertPreservesUtf8() throws IOException {
+        TextConverter converter = new TextConverter();
+        String content = "// Caf\u00e9 \u2013 javax.servlet.Filter \u00fcber javax.swing";
+        ByteArrayInputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        boolean converted = converter.convert("Test.java", in, out, EESpecProfiles.TOMCAT);
+
+        assertTrue(converted);
+        assertEquals(content.replace("javax.servlet", "jakarta.servlet"),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testConvertBuffer() throws IOException {
+        TextConverter converter = new TextConverter();
+        byte[] bytes = ("xx" + INPUT + "xx").getBytes(StandardCharsets.ISO_8859_1);
+
+        // Only the remaining content is converted
+        ByteBuffer src = ByteBuffer.wrap(bytes, 2, INPUT.length());
+        ByteBuffer converted = converter.convert(TEST_FILENAME, src, EESpecProfiles.EE);
+        assertEquals(OUTPUT, new String(Util.toByteArray(converted), StandardCharsets.ISO_8859_1));
+        assertEquals(2, src.position());
+
+        ByteBuffer unchanged = ByteBuffer.wrap(bytes, 0, 7);
+        assertSame(unchanged, converter.convert(TEST_FILENAME, unchanged, EESpecProfiles.EE));
+
+        // Not backed by an array
+        ByteBuffer direct = ByteBuffer.allocateDirect(INPUT.length());
+        direct.put(INPUT.getBytes(StandardCharsets.ISO_8859_1)).flip();
+        converted = converter.convert(TEST_FILENAME, direct, EESpecProfiles.EE);
+        assertEquals(OUTPUT, new String(Util.toByteArray(converted), StandardCharsets.ISO_8859_1));
+    }
 }
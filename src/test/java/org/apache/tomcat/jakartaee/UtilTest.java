@@ -20,6 +20,7 @@ package org.apache.tomcat.jakartaee;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
@@ -65,6 +66,28 @@ public class UtilTest {
         assertEquals("java", Util.getExtension("File.JaVa"));
     }
 
+    @Test
+    public void testHasExtension() {
+        assertTrue(Util.hasExtension("HelloServlet.java", "java"));
+        assertTrue(Util.hasExtension("File.JaVa", "java"));
+        assertTrue(Util.hasExtension(".gitignore", "gitignore"));
+        assertFalse(Util.hasExtension("HelloServlet.javax", "java"));
+        assertFalse(Util.hasExtension("HelloServletjava", "java"));
+        assertFalse(Util.hasExtension("java", "java"));
+        assertFalse(Util.hasExtension("file.tar.gz", "tar"));
+    }
+
+    @Test
+    public void testToByteArray() {
+        byte[] bytes = "Hello, World!".getBytes(StandardCharsets.UTF_8);
+        assertSame(bytes, Util.toByteArray(ByteBuffer.wrap(bytes)));
+
+        ByteBuffer slice = ByteBuffer.wrap(bytes, 7, 5);
+        assertArrayEquals("World".getBytes(StandardCharsets.UTF_8), Util.toByteArray(slice));
+        assertEquals(7, slice.position());
+        assertArrayEquals("World".getBytes(StandardCharsets.UTF_8), Util.toByteArray(slice.slice()));
+    }
+
     @Test
     public void testCopy() throws IOException {
         byte[] source = "Hello, World!".getBytes(StandardCharsets.UTF_8);
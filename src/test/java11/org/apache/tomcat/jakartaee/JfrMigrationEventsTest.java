@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.jakartaee;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JfrMigrationEventsTest {
+
+    private static final String PREFIX = "org.apache.tomcat.jakartaee.";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testJfrEventsAreUsed() {
+        assertTrue(MigrationEvents.get() instanceof JfrMigrationEvents);
+    }
+
+    @Test
+    public void testDisabledEvents() {
+        // Not enabled in any recording
+        MigrationEvents events = new JfrMigrationEvents();
+        assertEquals(null, events.beginArchive());
+        assertEquals(null, events.beginEntry());
+        assertEquals(null, events.beginCacheLookup());
+    }
+
+    @Test
+    public void testMigrationEvents() throws Exception {
+        File jarFile = new File("target/test-classes/hellocgi.jar");
+        File warFile = tempFolder.newFile("events.war");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new FileOutputStream(warFile))) {
+            zos.putArchiveEntry(new ZipArchiveEntry("WEB-INF/lib/hellocgi.jar"));
+            zos.write(Files.readAllBytes(jarFile.toPath()));
+            zos.closeArchiveEntry();
+        }
+
+        List<RecordedEvent> recorded;
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "ArchiveConversion", "EntryConversion", "CacheLookup" }) {
+                recording.enable(PREFIX + name).withoutThreshold();
+            }
+            recording.start();
+
+            Migration migration = new Migration();
+            migration.setSource(warFile);
+            migration.setDestination(new File(tempFolder.getRoot(), "events-migrated.war"));
+            try (MigrationCache cache = new MigrationCache(tempFolder.newFolder("cache"), 1)) {
+                migration.setCache(cache);
+                migration.execute();
+            }
+
+            recording.stop();
+            Path dump = tempFolder.getRoot().toPath().resolve("events.jfr");
+            recording.dump(dump);
+            recorded = RecordingFile.readAllEvents(dump);
+        }
+
+        List<RecordedEvent> archives = ofType(recorded, "ArchiveConversion");
+        assertEquals(2, archives.size());
+        for (RecordedEvent archive : archives) {
+            assertTrue(archive.getBoolean("converted"));
+            assertEquals("TOMCAT", archive.getString("profile"));
+            if (archive.getString("archive").equals("WEB-INF/lib/hellocgi.jar")) {
+                assertEquals(jarFile.length(), archive.getLong("size"));
+            } else {
+                assertEquals(warFile.length(), archive.getLong("size"));
+            }
+        }
+
+        List<RecordedEvent> classEntries = ofType(recorded, "EntryConversion").stream()
+                .filter(e -> e.getString("converter").equals(ClassConverter.class.getName()))
+                .collect(Collectors.toList());
+        assertEquals(1, classEntries.size());
+        RecordedEvent classEntry = classEntries.get(0);
+        assertTrue(classEntry.getBoolean("converted"));
+        assertTrue(classEntry.getLong("bytesIn") > 0);
+        assertTrue(classEntry.getLong("bytesOut") > 0);
+        assertEquals("TOMCAT", classEntry.getString("profile"));
+
+        List<RecordedEvent> lookups = ofType(recorded, "CacheLookup");
+        assertEquals(1, lookups.size());
+        assertFalse(lookups.get(0).getBoolean("hit"));
+        assertEquals(jarFile.length(), lookups.get(0).getLong("size"));
+        // Recorded by the migration thread rather than by the storage
+        assertEquals(Thread.currentThread().getId(), lookups.get(0).getThread().getJavaThreadId());
+    }
+
+    @Test
+    public void testTempFileSpillEvent() throws Exception {
+        List<RecordedEvent> recorded;
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "TempFileSpill");
+            recording.start();
+            MigrationEvents.get().tempFileSpill("large.bin", "/tmp/spill.tmp", 12345);
+            recording.stop();
+            Path dump = tempFolder.getRoot().toPath().resolve("spill.jfr");
+            recording.dump(dump);
+            recorded = RecordingFile.readAllEvents(dump);
+        }
+        List<RecordedEvent> spills = ofType(recorded, "TempFileSpill");
+        assertEquals(1, spills.size());
+        assertEquals("large.bin", spills.get(0).getString("entry"));
+        assertEquals(12345, spills.get(0).getLong("size"));
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(PREFIX + name))
+                .collect(Collectors.toList());
+    }
+}